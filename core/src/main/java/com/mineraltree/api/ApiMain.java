@@ -3,19 +3,36 @@ package com.mineraltree.api;
 import static com.mineraltree.utils.Ensure.verify;
 import static com.mineraltree.utils.Ensure.verifyNotNull;
 
-import akka.NotUsed;
 import akka.actor.ActorSystem;
+import akka.dispatch.Dispatchers;
 import akka.http.javadsl.ConnectHttp;
 import akka.http.javadsl.Http;
 import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.UseHttp2;
 import akka.http.javadsl.model.HttpRequest;
 import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.server.RejectionHandler;
+import akka.http.javadsl.server.Route;
+import akka.http.javadsl.settings.ServerSettings;
+import akka.http.scaladsl.server.RoutingLog;
+import akka.http.scaladsl.settings.ParserSettings;
+import akka.http.scaladsl.settings.RoutingSettings;
+import akka.io.Inet;
+import akka.io.TcpSO;
+import akka.japi.Function;
 import akka.stream.ActorMaterializer;
-import akka.stream.javadsl.Flow;
+import akka.stream.ActorMaterializerSettings;
 import com.mineraltree.api.rest.ApiRouter;
 import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import scala.compat.java8.FutureConverters;
+import scala.concurrent.Future;
+import scala.concurrent.duration.FiniteDuration;
 
 /**
  * Initializes the API handler service. The API module accepts incoming HTTP requests, and sends
@@ -30,9 +47,20 @@ public class ApiMain {
   /** The actor system that the routes execute within */
   private final ActorSystem system;
 
+  /** Requests answered concurrently per connection unless 'handler-parallelism' says otherwise */
+  private static final int DEFAULT_HANDLER_PARALLELISM = 16;
+
+  /** The dispatcher that runs the routes and the HTTP streams */
+  private final String dispatcherId;
+
   public ApiMain(ApiRouter apiRouter, ActorSystem system) {
+    this(apiRouter, system, Dispatchers.DefaultDispatcherId());
+  }
+
+  public ApiMain(ApiRouter apiRouter, ActorSystem system, String dispatcherId) {
     this.router = verifyNotNull(apiRouter, "apiRouter");
     this.system = verifyNotNull(system, "actorSystem");
+    this.dispatcherId = verifyNotNull(dispatcherId, "dispatcherId");
   }
 
   /**
@@ -42,9 +70,11 @@ public class ApiMain {
    * @param onError a callback function to invoke if an error occurs trying to bind to the listening
    *     port
    * @param serverConfig a configuration object containing 'listen' and 'port' fields indicating
-   *     what interface:port this server should listen on.
+   *     what interface:port this server should listen on, and optionally the connection tuning
+   *     settings read by {@link #serverSettings(Config)}, 'handler-parallelism' and 'h2c-port'.
+   * @return the binding of the main port, complete once it is listening
    */
-  public void startApi(Consumer<Throwable> onError, Config serverConfig) {
+  public CompletionStage<ServerBinding> startApi(Consumer<Throwable> onError, Config serverConfig) {
     verifyNotNull(system, "actorSystem");
     verify(
         serverConfig,
@@ -56,27 +86,145 @@ public class ApiMain {
         c -> c.hasPath("port"),
         "serverConfig",
         "Configuration is missing property 'port'");
-    final ActorMaterializer materializer = ActorMaterializer.create(system);
+    final ActorMaterializer materializer =
+        ActorMaterializer.create(
+            ActorMaterializerSettings.create(system).withDispatcher(dispatcherId), system);
+
+    final ServerSettings settings = serverSettings(serverConfig);
+    final int parallelism =
+        serverConfig.hasPath("handler-parallelism")
+            ? serverConfig.getInt("handler-parallelism")
+            : DEFAULT_HANDLER_PARALLELISM;
+    verify(parallelism, p -> p > 0, "handler-parallelism", "Must be positive");
+    final Function<HttpRequest, CompletionStage<HttpResponse>> handler =
+        asyncHandler(router.getRouter(), materializer);
 
-    final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow =
-        router.getRouter().flow(system, materializer);
-    final Http http = Http.get(system);
     final CompletionStage<ServerBinding> binding =
-        http.bindAndHandle(
-            routeFlow,
+        bind(
+            handler,
             ConnectHttp.toHost(serverConfig.getString("listen"), serverConfig.getInt("port")),
-            materializer);
+            settings,
+            parallelism,
+            materializer,
+            onError);
 
-    binding.exceptionally(
+    if (serverConfig.hasPath("h2c-port")) {
+      // Clients must use HTTP/2 "prior knowledge" on this port; without TLS there is no
+      // negotiation, so HTTP/1.1 clients keep using the main port
+      bind(
+          handler,
+          ConnectHttp.toHost(
+              serverConfig.getString("listen"), serverConfig.getInt("h2c-port"), UseHttp2.always()),
+          settings.withPreviewServerSettings(
+              settings.getPreviewServerSettings().withEnableHttp2(true)),
+          parallelism,
+          materializer,
+          onError);
+    }
+    return binding;
+  }
+
+  private CompletionStage<ServerBinding> bind(
+      Function<HttpRequest, CompletionStage<HttpResponse>> handler,
+      ConnectHttp connect,
+      ServerSettings settings,
+      int parallelism,
+      ActorMaterializer materializer,
+      Consumer<Throwable> onError) {
+    final CompletionStage<ServerBinding> binding =
+        Http.get(system)
+            .bindAndHandleAsync(
+                handler, connect, settings, parallelism, system.log(), materializer);
+
+    return binding.exceptionally(
         throwable -> {
           onError.accept(throwable);
           throw new RuntimeException(
-              "Port binding to ip:port '"
-                  + serverConfig.getString("listen")
-                  + ":"
-                  + serverConfig.getInt("port")
-                  + "' failed",
+              "Port binding to ip:port '" + connect.host() + ":" + connect.port() + "' failed",
               throwable);
         });
   }
+
+  /**
+   * Builds the server settings from the {@code akka.http.server} defaults, overridden by any of
+   * these {@code serverConfig} properties: 'max-connections', 'pipelining-limit', 'idle-timeout',
+   * 'request-timeout', 'backlog' and 'socket-options' (with 'tcp-no-delay', 'tcp-keep-alive',
+   * 'so-reuse-address', 'so-receive-buffer-size' and 'so-send-buffer-size').
+   */
+  ServerSettings serverSettings(Config serverConfig) {
+    ServerSettings settings = ServerSettings.create(system);
+    if (serverConfig.hasPath("max-connections")) {
+      settings = settings.withMaxConnections(serverConfig.getInt("max-connections"));
+    }
+    if (serverConfig.hasPath("pipelining-limit")) {
+      settings = settings.withPipeliningLimit(serverConfig.getInt("pipelining-limit"));
+    }
+    if (serverConfig.hasPath("backlog")) {
+      settings = settings.withBacklog(serverConfig.getInt("backlog"));
+    }
+    ServerSettings.Timeouts timeouts = settings.getTimeouts();
+    if (serverConfig.hasPath("idle-timeout")) {
+      timeouts = timeouts.withIdleTimeout(toScala(serverConfig.getDuration("idle-timeout")));
+    }
+    if (serverConfig.hasPath("request-timeout")) {
+      timeouts = timeouts.withRequestTimeout(toScala(serverConfig.getDuration("request-timeout")));
+    }
+    settings = settings.withTimeouts(timeouts);
+    if (serverConfig.hasPath("socket-options")) {
+      settings =
+          settings.withSocketOptions(socketOptions(serverConfig.getConfig("socket-options")));
+    }
+    return settings;
+  }
+
+  private static List<Inet.SocketOption> socketOptions(Config options) {
+    List<Inet.SocketOption> result = new ArrayList<>();
+    if (options.hasPath("tcp-no-delay")) {
+      result.add(TcpSO.tcpNoDelay(options.getBoolean("tcp-no-delay")));
+    }
+    if (options.hasPath("tcp-keep-alive")) {
+      result.add(TcpSO.keepAlive(options.getBoolean("tcp-keep-alive")));
+    }
+    if (options.hasPath("so-reuse-address")) {
+      result.add(TcpSO.reuseAddress(options.getBoolean("so-reuse-address")));
+    }
+    if (options.hasPath("so-receive-buffer-size")) {
+      result.add(TcpSO.receiveBufferSize(options.getBytes("so-receive-buffer-size").intValue()));
+    }
+    if (options.hasPath("so-send-buffer-size")) {
+      result.add(TcpSO.sendBufferSize(options.getBytes("so-send-buffer-size").intValue()));
+    }
+    return result;
+  }
+
+  private static FiniteDuration toScala(Duration duration) {
+    return FiniteDuration.create(duration.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Turns the route into a function answering one request at a time, as {@code bindAndHandleAsync}
+   * (and HTTP/2) needs. Like {@code Route.flow} the route is sealed, so rejections and exceptions
+   * become error responses.
+   */
+  private Function<HttpRequest, CompletionStage<HttpResponse>> asyncHandler(
+      Route route, ActorMaterializer materializer) {
+    Config config = system.settings().config();
+    scala.Function1<
+            akka.http.scaladsl.model.HttpRequest, Future<akka.http.scaladsl.model.HttpResponse>>
+        handler =
+            akka.http.scaladsl.server.Route$.MODULE$.asyncHandler(
+                route.asScala(),
+                RoutingSettings.apply(config),
+                ParserSettings.apply(config),
+                materializer,
+                RoutingLog.fromActorSystem(system),
+                system.dispatchers().lookup(dispatcherId),
+                RejectionHandler.defaultHandler().asScala(),
+                // null selects the default exception handler when the route is sealed
+                null);
+    // The javadsl model classes are implemented by the scaladsl ones
+    return request ->
+        FutureConverters.toJava(handler.apply((akka.http.scaladsl.model.HttpRequest) request))
+            .thenApply(response -> response);
+  }
 }
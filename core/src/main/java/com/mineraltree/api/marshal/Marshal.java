@@ -3,9 +3,12 @@ package com.mineraltree.api.marshal;
 import akka.http.javadsl.marshallers.jackson.Jackson;
 import akka.http.javadsl.marshalling.Marshaller;
 import akka.http.javadsl.model.HttpEntity;
+import akka.http.javadsl.model.MediaType;
 import akka.http.javadsl.model.MediaTypes;
 import akka.http.javadsl.model.RequestEntity;
 import akka.http.javadsl.unmarshalling.Unmarshaller;
+import akka.util.ByteString;
+import akka.util.ByteStringBuilder;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonParser;
@@ -14,7 +17,11 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.introspect.VisibilityChecker;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.mineraltree.api.dto.ApiDto;
 import java.io.IOException;
@@ -22,31 +29,69 @@ import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Handles JSON serialization and deserialization for API needs */
+/**
+ * Handles JSON serialization and deserialization for API needs. API objects can also be exchanged
+ * as Smile or CBOR, binary encodings of the same data model which are much cheaper to parse
+ * (numbers in particular need no decimal conversion); a client gets them by sending an {@code
+ * Accept} (or {@code Content-Type}) of {@link #APPLICATION_SMILE} or {@link #APPLICATION_CBOR}.
+ * Without one it gets JSON.
+ */
 public class Marshal {
   /** Configures Jackson to parse JSON as we need for the API requirements */
-  public static final ObjectMapper MAPPER =
-      new ObjectMapper()
-          .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
-          .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
-          .enable(JsonParser.Feature.ALLOW_MISSING_VALUES)
-          .registerModule(new GuavaModule())
-          .setSerializationInclusion(JsonInclude.Include.NON_NULL)
-          .setVisibility(
-              VisibilityChecker.Std.defaultInstance()
-                  .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
-                  .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
-                  .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
-                  .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+  public static final ObjectMapper MAPPER = configure(new ObjectMapper());
+
+  /** Same as {@link #MAPPER}, producing Smile */
+  public static final ObjectMapper SMILE_MAPPER = configure(new ObjectMapper(new SmileFactory()));
+
+  /** Same as {@link #MAPPER}, producing CBOR */
+  public static final ObjectMapper CBOR_MAPPER = configure(new ObjectMapper(new CBORFactory()));
+
+  public static final MediaType.Binary APPLICATION_SMILE =
+      MediaTypes.applicationBinary("x-jackson-smile", true, "sml");
+
+  public static final MediaType.Binary APPLICATION_CBOR =
+      MediaTypes.applicationBinary("cbor", true, "cbor");
 
   private static final Logger log = LoggerFactory.getLogger(Marshal.class);
 
+  private static ObjectMapper configure(ObjectMapper mapper) {
+    return mapper
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+        .enable(JsonParser.Feature.ALLOW_MISSING_VALUES)
+        .registerModule(new GuavaModule())
+        .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+        .setVisibility(
+            VisibilityChecker.Std.defaultInstance()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+  }
+
+  // Readers and writers are immutable and thread safe; building them once saves resolving the
+  // mapper configuration on every request
+  private static final ObjectWriter JSON_WRITER = MAPPER.writer();
+  private static final ObjectWriter SMILE_WRITER = SMILE_MAPPER.writer();
+  private static final ObjectWriter CBOR_WRITER = CBOR_MAPPER.writer();
+  private static final ObjectReader MAP_READER =
+      MAPPER.readerFor(new TypeReference<Map<String, Object>>() {});
+
   /**
-   * Returns an unmarshaller used by Akka HTTP to convert incoming JSON strings into java objects.
+   * Returns an unmarshaller used by Akka HTTP to convert incoming JSON (or Smile or CBOR) entities
+   * into java objects. The entity bytes are parsed directly, without decoding them to a String.
    */
   public static <T extends ApiDto> Unmarshaller<HttpEntity, T> unmarshaller(Class<T> clazz) {
-    return Unmarshaller.forMediaType(MediaTypes.APPLICATION_JSON, Unmarshaller.entityToString())
-        .thenApply(s -> fromJSON(s, clazz));
+    ObjectReader jsonReader = MAPPER.readerFor(clazz);
+    ObjectReader smileReader = SMILE_MAPPER.readerFor(clazz);
+    ObjectReader cborReader = CBOR_MAPPER.readerFor(clazz);
+    return Unmarshaller.firstOf(
+        Unmarshaller.forMediaType(MediaTypes.APPLICATION_JSON, Unmarshaller.entityToByteString())
+            .thenApply(b -> fromBytes(jsonReader, b, clazz)),
+        Unmarshaller.forMediaType(APPLICATION_SMILE, Unmarshaller.entityToByteString())
+            .thenApply(b -> fromBytes(smileReader, b, clazz)),
+        Unmarshaller.forMediaType(APPLICATION_CBOR, Unmarshaller.entityToByteString())
+            .thenApply(b -> fromBytes(cborReader, b, clazz)));
   }
 
   public static <T> Unmarshaller<HttpEntity, T> jacksonUnmarshaller(Class<T> clazz) {
@@ -54,11 +99,11 @@ public class Marshal {
   }
 
   public static Unmarshaller<HttpEntity, Map<String, Object>> mapUnmarshaller() {
-    return Unmarshaller.forMediaType(MediaTypes.APPLICATION_JSON, Unmarshaller.entityToString())
+    return Unmarshaller.forMediaType(MediaTypes.APPLICATION_JSON, Unmarshaller.entityToByteString())
         .thenApply(
-            s -> {
+            b -> {
               try {
-                return MAPPER.readValue(s, new TypeReference<Map<String, Object>>() {});
+                return MAP_READER.readValue(b.iterator().asInputStream());
               } catch (IOException e) {
                 throw new IllegalArgumentException("Exception mapping JSON to map", e);
               }
@@ -66,49 +111,80 @@ public class Marshal {
   }
 
   /**
-   * Returns a marshaller used by Akka HTTP to convert java objects into JSON string
-   * representations.
+   * Returns a marshaller used by Akka HTTP to convert java objects into JSON representations, or
+   * into Smile or CBOR for requests which accept only those. Objects are written straight into the
+   * entity's bytes.
    */
   public static <T extends ApiDto> Marshaller<T, RequestEntity> marshaller() {
-    return Marshaller.wrapEntity(
-        u -> toJSON(MAPPER, u), Marshaller.stringToEntity(), MediaTypes.APPLICATION_JSON);
+    return Marshaller.oneOf(
+        Marshaller.wrapEntity(
+            u -> toBytes(JSON_WRITER, u),
+            Marshaller.byteStringToEntity(),
+            MediaTypes.APPLICATION_JSON),
+        Marshaller.wrapEntity(
+            u -> toBytes(SMILE_WRITER, u), Marshaller.byteStringToEntity(), APPLICATION_SMILE),
+        Marshaller.wrapEntity(
+            u -> toBytes(CBOR_WRITER, u), Marshaller.byteStringToEntity(), APPLICATION_CBOR));
   }
 
   public static <T> Marshaller<T, RequestEntity> jacksonMarshaller() {
     return Jackson.marshaller();
   }
 
+  /** Converts an object into the same JSON representation {@link #marshaller()} produces */
+  public static String toJSON(Object object) {
+    try {
+      return JSON_WRITER.writeValueAsString(object);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Cannot marshal to JSON: " + object, e);
+    }
+  }
+
+  /** As {@link #toJSON(Object)}, returning the UTF-8 encoded JSON */
+  public static ByteString toJSONBytes(Object object) {
+    return toBytes(JSON_WRITER, object);
+  }
+
   /**
-   * Performs the actual conversion of an object into a string
+   * Performs the actual conversion of an object, writing it straight into a ByteString
    *
-   * @param mapper the Jackson object mapper definition to use
+   * @param writer the Jackson writer of the format to produce
    * @param object the java object to convert
-   * @return the JSON representation of {@code object}
+   * @return the encoded representation of {@code object}
    */
-  private static String toJSON(ObjectMapper mapper, Object object) {
+  private static ByteString toBytes(ObjectWriter writer, Object object) {
+    ByteStringBuilder builder = ByteString.createBuilder();
     try {
-      return mapper.writeValueAsString(object);
-    } catch (JsonProcessingException e) {
-      throw new IllegalArgumentException("Cannot marshal to JSON: " + object, e);
+      writer.writeValue(builder.asOutputStream(), object);
+    } catch (IOException e) {
+      throw new IllegalArgumentException(
+          "Cannot marshal to " + writer.getFactory().getFormatName() + ": " + object, e);
     }
+    return builder.result();
   }
 
   /**
-   * Performs the actual conversion of a JSON string into the corresponding java object.
+   * Performs the actual conversion of an encoded document into the corresponding java object.
    *
-   * @param json the string containing the JSON to convert
-   * @param expectedType the class declaring the java object type to convert the json into
+   * @param reader the Jackson reader for the format and the expected type
+   * @param document the bytes to convert
+   * @param expectedType the class declaring the java object type to convert the document into
    * @param <T> the class used to convert into
    * @return the converted object
    */
-  private static <T extends ApiDto> T fromJSON(String json, Class<T> expectedType) {
+  private static <T extends ApiDto> T fromBytes(
+      ObjectReader reader, ByteString document, Class<T> expectedType) {
     try {
-      T parsed = Marshal.MAPPER.readerFor(expectedType).readValue(json);
+      T parsed = reader.readValue(document.iterator().asInputStream());
       parsed.validate();
       return parsed;
     } catch (IOException e) {
       throw new IllegalArgumentException(
-          "Cannot unmarshal JSON as " + expectedType.getSimpleName(), e);
+          "Cannot unmarshal "
+              + reader.getFactory().getFormatName()
+              + " as "
+              + expectedType.getSimpleName(),
+          e);
     }
   }
 }
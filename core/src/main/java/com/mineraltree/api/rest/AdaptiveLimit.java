@@ -0,0 +1,85 @@
+package com.mineraltree.api.rest;
+
+import static com.mineraltree.utils.Ensure.verify;
+
+/**
+ * A limit on concurrent requests which adapts to how fast they are answered (additive increase,
+ * multiplicative decrease). While requests complete within the latency target and the limit is in
+ * use, it grows by about one for every limit's worth of requests. When a request is slower, or
+ * fails from overload, the limit is cut by the backoff ratio. Only requests started after the last
+ * cut can cut it again, so a burst of slow requests counts as one signal.
+ */
+public class AdaptiveLimit {
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final long latencyTargetNanos;
+  private final double backoffRatio;
+
+  private double limit;
+  private int inFlight;
+  private long lastDecreaseNanos = Long.MIN_VALUE;
+
+  /**
+   * @param initialLimit the limit to start with
+   * @param minLimit the limit is never cut below this
+   * @param maxLimit the limit never grows beyond this
+   * @param latencyTargetNanos requests answered slower than this reduce the limit
+   * @param backoffRatio the factor (between 0 and 1) the limit is multiplied by to reduce it
+   */
+  public AdaptiveLimit(
+      int initialLimit, int minLimit, int maxLimit, long latencyTargetNanos, double backoffRatio) {
+    verify(minLimit, m -> m > 0, "minLimit", "Must be positive");
+    verify(maxLimit, m -> m >= minLimit, "maxLimit", "Must not be less than minLimit");
+    verify(initialLimit, i -> i >= minLimit && i <= maxLimit, "initialLimit", "Must be min..max");
+    verify(backoffRatio, b -> b > 0.0 && b < 1.0, "backoffRatio", "Must be between 0 and 1");
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.latencyTargetNanos = latencyTargetNanos;
+    this.backoffRatio = backoffRatio;
+    this.limit = initialLimit;
+  }
+
+  /**
+   * Admits a request if the limit allows it. Every admitted request must be {@link #release
+   * released}.
+   *
+   * @return whether the request was admitted
+   */
+  public synchronized boolean tryAcquire() {
+    if (inFlight >= (int) limit) {
+      return false;
+    }
+    inFlight++;
+    return true;
+  }
+
+  /**
+   * Records that an admitted request has been answered, adapting the limit to how it went.
+   *
+   * @param startNanos the {@link System#nanoTime()} at which the request was admitted
+   * @param endNanos the {@link System#nanoTime()} at which it was answered
+   * @param overloaded whether the request failed because the service was overloaded
+   */
+  public synchronized void release(long startNanos, long endNanos, boolean overloaded) {
+    // Usage at its peak while this request was in flight
+    boolean limitInUse = inFlight * 2 >= (int) limit;
+    inFlight--;
+    if (overloaded || endNanos - startNanos > latencyTargetNanos) {
+      if (startNanos >= lastDecreaseNanos) {
+        limit = Math.max(minLimit, limit * backoffRatio);
+        lastDecreaseNanos = endNanos;
+      }
+    } else if (limitInUse) {
+      limit = Math.min(maxLimit, limit + 1.0 / limit);
+    }
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+
+  public synchronized int getInFlight() {
+    return inFlight;
+  }
+}
@@ -0,0 +1,149 @@
+package com.mineraltree.api.rest;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.mapRouteResultFuture;
+import static akka.http.javadsl.server.Directives.optionalHeaderValueByName;
+
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCode;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.server.Complete;
+import akka.http.javadsl.server.Route;
+import akka.http.javadsl.server.RouteResult;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.typesafe.config.Config;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rejects requests the service cannot answer in good time, instead of letting them queue up until
+ * they time out. Requests beyond an {@link AdaptiveLimit} on concurrent requests are answered with
+ * 503, and requests from a client (identified by a header) beyond its share are answered with 429;
+ * both tell the client when to retry.
+ */
+public class AdmissionControl {
+
+  private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+  private final AdaptiveLimit limit;
+  private final String clientHeader;
+  private final double clientRate;
+  private final double clientBurst;
+  private final Cache<String, TokenBucket> clientBuckets;
+
+  /**
+   * @param config the settings: 'limit' with 'initial', 'min', 'max', 'latency-target' and
+   *     'backoff-ratio'; and 'clients' with 'header' (empty to not limit clients), 'rate' per
+   *     second, 'burst' and 'max-clients'
+   */
+  public AdmissionControl(Config config) {
+    Config limitConfig = config.getConfig("limit");
+    this.limit =
+        new AdaptiveLimit(
+            limitConfig.getInt("initial"),
+            limitConfig.getInt("min"),
+            limitConfig.getInt("max"),
+            limitConfig.getDuration("latency-target").toNanos(),
+            limitConfig.getDouble("backoff-ratio"));
+
+    Config clients = config.getConfig("clients");
+    String header = clients.getString("header");
+    this.clientHeader = header.isEmpty() ? null : header;
+    this.clientRate = clients.getDouble("rate");
+    this.clientBurst = clients.getDouble("burst");
+    this.clientBuckets =
+        CacheBuilder.newBuilder()
+            .maximumSize(clients.getLong("max-clients"))
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .build();
+  }
+
+  /** Runs {@code inner} if the request is admitted, otherwise rejects the request */
+  public Route admit(Supplier<Route> inner) {
+    if (clientHeader == null) {
+      return admitToLimit(inner);
+    }
+    return optionalHeaderValueByName(
+        clientHeader,
+        client -> {
+          if (client.isPresent()) {
+            long waitNanos = bucketFor(client.get()).tryTake(System.nanoTime());
+            if (waitNanos > 0) {
+              return reject(
+                  StatusCodes.TOO_MANY_REQUESTS, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1);
+            }
+          }
+          return admitToLimit(inner);
+        });
+  }
+
+  private Route admitToLimit(Supplier<Route> inner) {
+    if (!limit.tryAcquire()) {
+      log.debug("Request rejected; {} requests in flight", limit.getInFlight());
+      return reject(StatusCodes.SERVICE_UNAVAILABLE, 1);
+    }
+    long start = System.nanoTime();
+    return mapRouteResultFuture(
+        result -> {
+          result.whenComplete(
+              (routeResult, error) ->
+                  limit.release(start, System.nanoTime(), isOverload(routeResult, error)));
+          // Not the stage whenComplete returns, which would wrap a failure in a
+          // CompletionException and hide it from the exception handler
+          return result;
+        },
+        inner);
+  }
+
+  private TokenBucket bucketFor(String client) {
+    try {
+      return clientBuckets.get(
+          client, () -> new TokenBucket(clientRate, clientBurst, System.nanoTime()));
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Cannot create token bucket", e);
+    }
+  }
+
+  /**
+   * Timeouts, work turned away, and responses saying the service or what it depends on is
+   * unavailable. Not a 504: that answers a request which ran out of the time its caller gave it,
+   * which a caller can make as short as it likes.
+   */
+  private static boolean isOverload(RouteResult result, Throwable error) {
+    if (error != null) {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      return cause instanceof TimeoutException || cause instanceof RejectedExecutionException;
+    }
+    if (result instanceof Complete) {
+      StatusCode status = ((Complete) result).getResponse().status();
+      return status.equals(StatusCodes.SERVICE_UNAVAILABLE);
+    }
+    return false;
+  }
+
+  private static Route reject(StatusCode status, long retryAfterSeconds) {
+    return complete(
+        HttpResponse.create()
+            .withStatus(status)
+            .addHeader(RetryAfter.create(retryAfterSeconds))
+            .withEntity(status.reason()));
+  }
+
+  /** The current limit on concurrent requests */
+  public int getLimit() {
+    return limit.getLimit();
+  }
+
+  /** The number of requests being handled */
+  public int getInFlight() {
+    return limit.getInFlight();
+  }
+}
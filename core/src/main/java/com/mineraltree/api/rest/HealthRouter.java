@@ -0,0 +1,56 @@
+package com.mineraltree.api.rest;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.extractRequest;
+import static akka.http.javadsl.server.Directives.get;
+import static akka.http.javadsl.server.Directives.path;
+import static akka.http.javadsl.server.Directives.pathPrefix;
+import static akka.http.javadsl.server.Directives.route;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.Route;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Probe endpoints for the orchestrator: {@code /health/live} and {@code /health/ready} answer 200
+ * or 503 from state flags, without asking any actor or marshalling anything, so probes cost next to
+ * nothing and aren't held up by a busy service.
+ */
+public class HealthRouter implements ApiRouter {
+
+  private static final HttpResponse OK = HttpResponse.create().withEntity("OK");
+  private static final HttpResponse NOT_LIVE =
+      HttpResponse.create().withStatus(StatusCodes.SERVICE_UNAVAILABLE).withEntity("Not Live");
+  private static final HttpResponse NOT_READY =
+      HttpResponse.create().withStatus(StatusCodes.SERVICE_UNAVAILABLE).withEntity("Not Ready");
+
+  private final BooleanSupplier live;
+  private final BooleanSupplier ready;
+
+  /**
+   * @param live whether the service is working at all; if not, it should be restarted
+   * @param ready whether the service can take requests
+   */
+  public HealthRouter(BooleanSupplier live, BooleanSupplier ready) {
+    this.live = verifyNotNull(live, "live");
+    this.ready = verifyNotNull(ready, "ready");
+  }
+
+  @Override
+  public Route getRouter() {
+    return get(
+        () ->
+            pathPrefix(
+                "health",
+                () ->
+                    route(
+                        path("live", () -> probe(live, NOT_LIVE)),
+                        path("ready", () -> probe(ready, NOT_READY)))));
+  }
+
+  private static Route probe(BooleanSupplier check, HttpResponse failed) {
+    return extractRequest(request -> complete(check.getAsBoolean() ? OK : failed));
+  }
+}
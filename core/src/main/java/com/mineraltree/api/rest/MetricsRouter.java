@@ -0,0 +1,46 @@
+package com.mineraltree.api.rest;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.extractRequest;
+import static akka.http.javadsl.server.Directives.get;
+import static akka.http.javadsl.server.Directives.path;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.server.Route;
+import com.mineraltree.api.marshal.Marshal;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Serves the service's metrics as JSON at {@code /metrics}. Like the health probes it is answered
+ * ahead of the service's own routes, so it can be read while the service is overloaded.
+ */
+public class MetricsRouter implements ApiRouter {
+
+  private final Supplier<Map<String, Object>> metrics;
+
+  /** @param metrics returns the current metrics */
+  public MetricsRouter(Supplier<Map<String, Object>> metrics) {
+    this.metrics = verifyNotNull(metrics, "metrics");
+  }
+
+  @Override
+  public Route getRouter() {
+    return get(
+        () ->
+            path(
+                "metrics",
+                () ->
+                    extractRequest(
+                        request ->
+                            complete(
+                                HttpResponse.create()
+                                    .withEntity(
+                                        HttpEntities.create(
+                                            ContentTypes.APPLICATION_JSON,
+                                            Marshal.toJSONBytes(metrics.get())))))));
+  }
+}
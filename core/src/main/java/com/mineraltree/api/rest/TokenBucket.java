@@ -0,0 +1,37 @@
+package com.mineraltree.api.rest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allows a steady rate of requests with bursts up to a given size. The bucket holds up to {@code
+ * burst} tokens and gains {@code ratePerSecond} tokens a second; each request takes one.
+ */
+class TokenBucket {
+
+  private final double tokensPerNano;
+  private final double burst;
+  private double tokens;
+  private long refilledAt;
+
+  TokenBucket(double ratePerSecond, double burst, long nowNanos) {
+    this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.burst = burst;
+    this.tokens = burst;
+    this.refilledAt = nowNanos;
+  }
+
+  /**
+   * Takes a token if there is one.
+   *
+   * @return 0 if a token was taken, otherwise the nanoseconds until the next token is available
+   */
+  synchronized long tryTake(long nowNanos) {
+    tokens = Math.min(burst, tokens + (nowNanos - refilledAt) * tokensPerNano);
+    refilledAt = nowNanos;
+    if (tokens >= 1.0) {
+      tokens -= 1.0;
+      return 0;
+    }
+    return (long) Math.ceil((1.0 - tokens) / tokensPerNano);
+  }
+}
@@ -2,8 +2,19 @@ package com.mineraltree.config;
 
 import com.typesafe.config.Config;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Retrieves configuration files needed by the application. This class manages access to the
@@ -12,12 +23,16 @@ import java.net.URL;
  */
 public final class ConfigurationFetcher {
 
+  private static final Logger log = LoggerFactory.getLogger(ConfigurationFetcher.class);
+
   /** Singleton instance */
   private static final ConfigurationFetcher FETCHER = new ConfigurationFetcher();
 
   private static final String FILE_MARKER_PREFIX = "file://";
   private static final String CLASSPATH_MARKER_PREFIX = "classpath:";
   private static final String APPLICATION_CONFIG_GROUP = "mineraltree";
+  /** How long to wait for a burst of file events (an editor saving, say) to finish */
+  private static final long SETTLE_MILLIS = 200;
 
   /** Returns the singleton configuration fetcher instance */
   public static ConfigurationFetcher getInstance() {
@@ -26,7 +41,9 @@ public final class ConfigurationFetcher {
 
   private final SystemResolver resolver;
   private final ConfigParser configParser;
-  private Config contents;
+  private volatile Config contents;
+  private final List<Consumer<Config>> listeners = new CopyOnWriteArrayList<>();
+  private Thread watcher;
 
   /** Constructor. Don't use this directly. Use the {@link #getInstance()} method instead. */
   private ConfigurationFetcher() {
@@ -74,6 +91,10 @@ public final class ConfigurationFetcher {
     if (null == contents) {
       loadConfig();
     }
+    return serviceConfig(contents, serviceName);
+  }
+
+  private static Config serviceConfig(Config contents, String serviceName) {
     final String servicePath = APPLICATION_CONFIG_GROUP + "." + serviceName;
     if (contents.hasPath(servicePath)) {
       return contents
@@ -83,18 +104,112 @@ public final class ConfigurationFetcher {
     return contents.getConfig(APPLICATION_CONFIG_GROUP);
   }
 
+  /**
+   * Watches the application configuration file for changes, if it is a local ({@code file://})
+   * file. Whenever the file changes and its new contents parse, they replace the configuration and
+   * {@code listener} is called with the configuration settings of {@code serviceName} (as {@link
+   * #getServiceConfigSettings} returns them). Contents which fail to parse are logged and ignored.
+   * The listener runs on the watching thread and should check the settings it uses itself.
+   *
+   * <p>Every change in the file's directory is checked, since a Kubernetes ConfigMap is updated by
+   * swapping a symbolic link rather than by writing the file.
+   *
+   * @return whether the configuration is watched
+   */
+  public synchronized boolean watch(String serviceName, Consumer<Config> listener) {
+    String appLocation = resolver.resolveProperty(ConfigInput.APPLICATION);
+    if (!appLocation.startsWith(FILE_MARKER_PREFIX)) {
+      log.info("Configuration at {} is not a local file and is not watched", appLocation);
+      return false;
+    }
+    listeners.add(config -> listener.accept(serviceConfig(config, serviceName)));
+    if (watcher == null) {
+      Path directory =
+          new File(appLocation.substring(FILE_MARKER_PREFIX.length()))
+              .getAbsoluteFile()
+              .toPath()
+              .getParent();
+      try {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        directory.register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        watcher = new Thread(() -> watchLoop(watchService), "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching {} for configuration changes", directory);
+      } catch (IOException e) {
+        log.warn("Cannot watch {} for configuration changes: {}", directory, e.toString());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void watchLoop(WatchService watchService) {
+    try {
+      while (true) {
+        WatchKey key = watchService.take();
+        Thread.sleep(SETTLE_MILLIS);
+        key.pollEvents();
+        // Take in any events which arrived while settling, so they cause one reload
+        WatchKey more;
+        while ((more = watchService.poll()) != null) {
+          more.pollEvents();
+          more.reset();
+        }
+        key.reset();
+        reload();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Parses the configuration again, and tells the listeners if it changed */
+  void reload() {
+    Config reloaded;
+    try {
+      reloaded = parseConfig();
+    } catch (RuntimeException e) {
+      log.warn("Changed configuration ignored, it cannot be loaded: {}", e.getMessage());
+      return;
+    }
+    synchronized (this) {
+      if (reloaded.equals(contents)) {
+        return;
+      }
+      contents = reloaded;
+    }
+    log.info("Configuration changed");
+    for (Consumer<Config> listener : listeners) {
+      try {
+        listener.accept(reloaded);
+      } catch (RuntimeException e) {
+        log.warn("Configuration change listener failed", e);
+      }
+    }
+  }
+
   /** Loads the configuration if necessary and returns the parsed and merged values. */
   private synchronized void loadConfig() {
     if (null != contents) {
       return;
     }
+    contents = parseConfig();
+  }
+
+  private Config parseConfig() {
     String appLocation = resolver.resolveProperty(ConfigInput.APPLICATION);
     String secretLocation = resolver.resolveProperty(ConfigInput.SECRET);
 
     Config config = parseConfigFile(appLocation);
     Config secretsConfig = parseConfigFile(secretLocation);
 
-    contents = config.withFallback(secretsConfig.atPath(APPLICATION_CONFIG_GROUP));
+    // Resolve once everything is merged so settings can refer to each other and to the environment
+    return config.withFallback(secretsConfig.atPath(APPLICATION_CONFIG_GROUP)).resolve();
   }
 
   /**
@@ -0,0 +1,51 @@
+package com.mineraltree.service;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.japi.pf.ReceiveBuilder;
+import java.time.Duration;
+
+/**
+ * Whether the actor system is responsive. A heartbeat actor is sent a message every {@code
+ * interval} and records when it last got one; the system is live while that was within {@code
+ * budget}. If the scheduler or the dispatcher stops processing messages, the heartbeats stop and
+ * the service is no longer live. {@link #isLive()} only reads a volatile field.
+ */
+public class Liveness {
+
+  private static final Object BEAT = "beat";
+
+  private final long budgetNanos;
+  private volatile long lastBeat = System.nanoTime();
+
+  /**
+   * @param interval how often a heartbeat is sent
+   * @param budget how long the system may go without a heartbeat and still count as live
+   */
+  public Liveness(ActorSystem system, Duration interval, Duration budget) {
+    this.budgetNanos = budget.toNanos();
+    ActorRef heart = system.actorOf(Props.create(Heart.class, this), "liveness");
+    system.scheduler().schedule(interval, interval, heart, BEAT, system.dispatcher(), null);
+  }
+
+  public boolean isLive() {
+    return System.nanoTime() - lastBeat < budgetNanos;
+  }
+
+  private static class Heart extends AbstractActor {
+    private final Liveness liveness;
+
+    Heart(Liveness liveness) {
+      this.liveness = liveness;
+    }
+
+    @Override
+    public Receive createReceive() {
+      return ReceiveBuilder.create()
+          .matchEquals(BEAT, beat -> liveness.lastBeat = System.nanoTime())
+          .build();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.mineraltree.service;
+
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * The service's metrics, served by {@code /metrics}. Each part of the service registers a source
+ * under its own name, which is asked for its current values whenever the metrics are read; nothing
+ * is collected in between.
+ */
+public class Metrics {
+
+  private final Map<String, Supplier<?>> sources = new ConcurrentSkipListMap<>();
+
+  /**
+   * Registers a source of metrics, replacing any registered under the same name.
+   *
+   * @param source returns the current values, as an object which marshals to JSON (a map of
+   *     numbers, say)
+   */
+  public void register(String name, Supplier<?> source) {
+    sources.put(verifyNotEmpty(name, "name"), verifyNotNull(source, "source"));
+  }
+
+  /** The current values of every source, by name */
+  public Map<String, Object> snapshot() {
+    Map<String, Object> snapshot = new TreeMap<>();
+    for (Map.Entry<String, Supplier<?>> source : sources.entrySet()) {
+      snapshot.put(source.getKey(), source.getValue().get());
+    }
+    return snapshot;
+  }
+}
@@ -0,0 +1,39 @@
+package com.mineraltree.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Whether the service is ready for requests. The service is ready once every condition it {@link
+ * #require requires} (the API being bound, say, or the preloaded data having loaded) is {@link
+ * #complete complete}, and stays ready from then on. {@link #isReady()} is a single volatile read,
+ * so it can be asked on every request.
+ *
+ * <p>Conditions must be required before the service starts, or it may become ready too early.
+ */
+public class Readiness {
+
+  private final Set<String> pending = new HashSet<>();
+  private final Runnable onReady;
+  private volatile boolean ready;
+
+  /** @param onReady run once, when the service becomes ready */
+  public Readiness(Runnable onReady) {
+    this.onReady = onReady;
+  }
+
+  public synchronized void require(String condition) {
+    pending.add(condition);
+  }
+
+  public synchronized void complete(String condition) {
+    if (pending.remove(condition) && pending.isEmpty() && !ready) {
+      ready = true;
+      onReady.run();
+    }
+  }
+
+  public boolean isReady() {
+    return ready;
+  }
+}
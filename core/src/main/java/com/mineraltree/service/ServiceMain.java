@@ -1,14 +1,22 @@
 package com.mineraltree.service;
 
+import static akka.http.javadsl.server.Directives.route;
 import static com.mineraltree.utils.Ensure.verifyNotNull;
 import static com.mineraltree.utils.Ensure.verifyState;
 
 import akka.actor.ActorSystem;
+import akka.dispatch.Dispatchers;
+import akka.http.javadsl.ServerBinding;
 import com.mineraltree.api.ApiMain;
 import com.mineraltree.api.rest.ApiRouter;
+import com.mineraltree.api.rest.HealthRouter;
+import com.mineraltree.api.rest.MetricsRouter;
 import com.mineraltree.config.ConfigurationFetcher;
 import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
 import java.util.Objects;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,13 +28,28 @@ public abstract class ServiceMain {
 
   private static final Logger log = LoggerFactory.getLogger(ServiceMain.class);
 
+  /** Where the service's own dispatchers are configured */
+  private static final String DISPATCHERS_PATH = "mineraltree.dispatchers.";
+  /** The readiness condition of the API server listening */
+  protected static final String API_BOUND = "api-bound";
+
   private final String serviceName;
   private ActorSystem system;
   protected final Config config;
+  /** Times the startup phases, and runs those which can run at the same time */
+  protected final Startup startup = new Startup();
+  /** Becomes ready once the API is bound and the conditions the service adds are complete */
+  protected final Readiness readiness =
+      new Readiness(() -> log.info("Service ready {} ms after start", startup.elapsedMillis()));
+  /** The metrics served by {@code /metrics}, to which the service adds its own */
+  protected final Metrics metrics = new Metrics();
 
   public ServiceMain(String serviceName) {
     this.serviceName = serviceName;
-    config = ConfigurationFetcher.getInstance().getServiceConfigSettings(serviceName);
+    config =
+        startup.timed(
+            "configuration",
+            () -> ConfigurationFetcher.getInstance().getServiceConfigSettings(serviceName));
   }
 
   /**
@@ -41,14 +64,61 @@ public abstract class ServiceMain {
     verifyNotNull(serverConfig, "serverConfig");
     verifyState(system, Objects::nonNull, "Actor system not properly initialized");
 
-    ApiMain apiMain = new ApiMain(router, system);
-    apiMain.startApi(
-        throwable -> {
-          final Logger log = LoggerFactory.getLogger(ServiceMain.class);
-          log.error("Unable to initialize API listening service", throwable);
-          System.exit(9);
-        },
-        serverConfig);
+    HealthRouter health = new HealthRouter(liveness()::isLive, readiness::isReady);
+    MetricsRouter metricsRouter = new MetricsRouter(metrics::snapshot);
+    // Health probes and metrics first, so they are never held up by the service's own route
+    ApiRouter withHealth =
+        () -> route(health.getRouter(), metricsRouter.getRouter(), router.getRouter());
+    ApiMain apiMain = new ApiMain(withHealth, system, dispatcherId("api"));
+    CompletionStage<ServerBinding> binding =
+        apiMain.startApi(
+            throwable -> {
+              final Logger log = LoggerFactory.getLogger(ServiceMain.class);
+              log.error("Unable to initialize API listening service", throwable);
+              System.exit(9);
+            },
+            serverConfig);
+    startup.track("api-bind", binding).thenRun(() -> readiness.complete(API_BOUND));
+  }
+
+  /**
+   * Returns the id of the dispatcher configured as {@code mineraltree.dispatchers.<name>}, for
+   * {@code Props.withDispatcher} and executor lookups. Keeping the API, the caches and upstream
+   * calls on separate dispatchers stops trouble in one from taking the threads of the others. If
+   * the dispatcher is not configured this is the default dispatcher.
+   */
+  protected String dispatcherId(String name) {
+    verifyState(system, Objects::nonNull, "Actor system not properly initialized");
+    String id = DISPATCHERS_PATH + name;
+    return system.dispatchers().hasDispatcher(id) ? id : Dispatchers.DefaultDispatcherId();
+  }
+
+  /**
+   * Called before the actor system is created. Starts the startup work which doesn't need the actor
+   * system (fetching secrets, say) with {@link Startup#async}, so it runs while the actor system
+   * starts, and {@link Readiness#require requires} any readiness conditions of the service.
+   */
+  protected void prepare() {}
+
+  /**
+   * Starts the heartbeat behind {@code /health/live}, configured by 'health' with 'interval' and
+   * 'budget' (the longest the actor system may go without a heartbeat and still be live).
+   */
+  private Liveness liveness() {
+    Config health =
+        (config.hasPath("health") ? config.getConfig("health") : ConfigFactory.empty())
+            .withFallback(ConfigFactory.parseString("interval = 1 second, budget = 10 seconds"));
+    return new Liveness(system, health.getDuration("interval"), health.getDuration("budget"));
+  }
+
+  /**
+   * Calls {@code onChange} with the service's new configuration settings whenever the configuration
+   * file changes, if it is a local file. The settings are parsed but not otherwise checked, so
+   * {@code onChange} should check those it uses before using them. Settings not read through {@code
+   * onChange} keep their startup values.
+   */
+  protected void watchConfig(Consumer<Config> onChange) {
+    ConfigurationFetcher.getInstance().watch(serviceName, onChange);
   }
 
   protected abstract void initializeServers(ActorSystem system);
@@ -60,8 +130,14 @@ public abstract class ServiceMain {
       // Start up the actor system. This will start up the background servicing and take over
       // lifecycle
       // ownership of the process
+      readiness.require(API_BOUND);
+      prepare();
       system =
-          ActorSystem.create(serviceName, ConfigurationFetcher.getInstance().getConfigSettings());
+          startup.timed(
+              "actor-system",
+              () ->
+                  ActorSystem.create(
+                      serviceName, ConfigurationFetcher.getInstance().getConfigSettings()));
       system
           .getWhenTerminated()
           .thenAccept(
@@ -70,7 +146,12 @@ public abstract class ServiceMain {
                 log.error("Actor system terminated. System exit: {}", terminated.toString());
                 System.exit(0);
               });
-      initializeServers(system);
+      startup.timed(
+          "servers",
+          () -> {
+            initializeServers(system);
+            return null;
+          });
     } catch (RuntimeException ex) {
       final Logger log = LoggerFactory.getLogger(ServiceMain.class);
       log.error("This isn't good. Service initialization failed", ex);
@@ -0,0 +1,66 @@
+package com.mineraltree.service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the phases of a service's startup and logs how long each took. Phases which don't depend on
+ * each other can run at the same time: {@link #async} runs a blocking phase on a startup thread,
+ * and {@link #track} times a phase which is asynchronous already.
+ */
+public class Startup {
+
+  private static final Logger log = LoggerFactory.getLogger(Startup.class);
+
+  private final long startedAt = System.nanoTime();
+  private final ExecutorService executor =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder().setNameFormat("startup-%d").setDaemon(true).build());
+
+  /** Runs a phase on the calling thread */
+  public <T> T timed(String phase, Supplier<T> work) {
+    long start = System.nanoTime();
+    try {
+      T result = work.get();
+      log.info("Startup phase '{}' took {} ms", phase, millisSince(start));
+      return result;
+    } catch (RuntimeException e) {
+      log.error("Startup phase '{}' failed after {} ms", phase, millisSince(start));
+      throw e;
+    }
+  }
+
+  /** Runs a phase on a startup thread, while the caller goes on with the next */
+  public <T> CompletableFuture<T> async(String phase, Supplier<T> work) {
+    return CompletableFuture.supplyAsync(() -> timed(phase, work), executor);
+  }
+
+  /** Logs how long an asynchronous phase takes, from now until {@code stage} completes */
+  public <T> CompletionStage<T> track(String phase, CompletionStage<T> stage) {
+    long start = System.nanoTime();
+    return stage.whenComplete(
+        (result, error) -> {
+          if (error == null) {
+            log.info("Startup phase '{}' took {} ms", phase, millisSince(start));
+          } else {
+            log.warn("Startup phase '{}' failed after {} ms: {}", phase, millisSince(start), error);
+          }
+        });
+  }
+
+  /** Time since the service started */
+  public long elapsedMillis() {
+    return millisSince(startedAt);
+  }
+
+  private static long millisSince(long start) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+  }
+}
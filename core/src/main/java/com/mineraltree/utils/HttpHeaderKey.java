@@ -2,7 +2,11 @@ package com.mineraltree.utils;
 
 public enum HttpHeaderKey {
   DESTINY("X-MT-Destiny"),
-  SESSIONID("X-MT-Session");
+  SESSIONID("X-MT-Session"),
+  /** Correlates the work done for one request across services; see {@link Trace} */
+  TRACEID("X-MT-Trace"),
+  /** How long, in milliseconds, the caller will wait for the response; see {@link Trace} */
+  TIMEOUT("X-MT-Timeout");
 
   private final String headerName;
 
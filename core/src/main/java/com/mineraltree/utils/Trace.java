@@ -0,0 +1,183 @@
+package com.mineraltree.utils;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The timings of the work done for one request, identified by a trace id which is passed on to our
+ * other services in the {@link HttpHeaderKey#TRACEID} header. Each stage of the work records a span
+ * (its name, when it started and how long it took) as it finishes, from whatever thread it runs on,
+ * so a slow request can be logged with where its time went.
+ *
+ * <p>A trace may carry the deadline of its request: the point after which the caller has given up
+ * on the answer, so any work still to do for it is wasted. The remaining budget travels to our
+ * other services in the {@link HttpHeaderKey#TIMEOUT} header. Neither header is sent to third
+ * parties.
+ *
+ * <p>Traces are local to a JVM: a message holding one keeps it in a transient field, and a trace
+ * sent to another node arrives without it.
+ */
+public final class Trace {
+
+  /** Longest trace id taken from a caller */
+  static final int MAX_ID_LENGTH = 64;
+
+  private final String id;
+  private final long startNanos;
+  /** The deadline by System.nanoTime(), or {@code startNanos} when there is none */
+  private final long deadlineNanos;
+
+  private final boolean hasDeadline;
+  private final Queue<Span> spans;
+
+  private Trace(String id, Duration budget) {
+    this.id = id;
+    this.startNanos = System.nanoTime();
+    this.hasDeadline = budget != null;
+    this.deadlineNanos = hasDeadline ? startNanos + budget.toNanos() : startNanos;
+    this.spans = new ConcurrentLinkedQueue<>();
+  }
+
+  /** The same trace (id and spans) with another deadline */
+  private Trace(Trace trace, long deadlineNanos) {
+    this.id = trace.id;
+    this.startNanos = trace.startNanos;
+    this.hasDeadline = true;
+    this.deadlineNanos = deadlineNanos;
+    this.spans = trace.spans;
+  }
+
+  /** Starts a trace with a new id and no deadline */
+  public static Trace start() {
+    return start(null, null);
+  }
+
+  /**
+   * Starts a trace continuing the one of a caller, or with a new id if the caller sent none
+   *
+   * @param id the trace id the caller sent, or {@code null}
+   */
+  public static Trace start(String id) {
+    return start(id, null);
+  }
+
+  /**
+   * Starts a trace continuing the one of a caller, whose answer is due within {@code budget}. The
+   * id is echoed, logged and passed on, so one which is not {@link #isValidId valid} is replaced by
+   * a new one.
+   *
+   * @param id the trace id the caller sent, or {@code null} for a new one
+   * @param budget how long the caller waits for the answer, or {@code null} for no deadline
+   */
+  public static Trace start(String id, Duration budget) {
+    return new Trace(
+        isValidId(id) ? id : Long.toHexString(ThreadLocalRandom.current().nextLong()), budget);
+  }
+
+  /**
+   * Whether {@code id} can be taken as a trace id: 1 to {@link #MAX_ID_LENGTH} ASCII letters,
+   * digits, {@code '-'}, {@code '_'} or {@code '.'}
+   */
+  static boolean isValidId(String id) {
+    if (id == null || id.isEmpty() || id.length() > MAX_ID_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < id.length(); i++) {
+      char c = id.charAt(i);
+      boolean valid =
+          (c >= 'a' && c <= 'z')
+              || (c >= 'A' && c <= 'Z')
+              || (c >= '0' && c <= '9')
+              || c == '-'
+              || c == '_'
+              || c == '.';
+      if (!valid) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public boolean hasDeadline() {
+    return hasDeadline;
+  }
+
+  /**
+   * The time left until the deadline, which is negative once it has passed; or {@code null} if the
+   * trace has no deadline
+   */
+  public Duration remaining() {
+    return hasDeadline ? Duration.ofNanos(deadlineNanos - System.nanoTime()) : null;
+  }
+
+  /**
+   * This trace, recording into the same spans, with a deadline no sooner than {@code floor} from
+   * now. For work shared with other callers, which must not be cut short because this caller gave
+   * up; and which gets a deadline even if this caller has none.
+   */
+  public Trace withDeadlineAtLeast(Duration floor) {
+    long floorNanos = System.nanoTime() + floor.toNanos();
+    if (hasDeadline && deadlineNanos - floorNanos >= 0) {
+      return this;
+    }
+    return new Trace(this, floorNanos);
+  }
+
+  /** Whether the deadline has passed, so the caller no longer wants the answer */
+  public boolean isOverdue() {
+    return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+  }
+
+  /**
+   * Records a stage which started at {@code startNanos} (a {@link System#nanoTime()}) and has just
+   * finished
+   */
+  public void span(String name, long startNanos) {
+    spans.add(new Span(name, startNanos, System.nanoTime()));
+  }
+
+  /** Nanoseconds since the trace started */
+  public long elapsedNanos() {
+    return System.nanoTime() - startNanos;
+  }
+
+  /**
+   * The spans recorded so far, in the order they finished, each as its name, start and duration in
+   * milliseconds from the start of the trace: {@code "ask@0+812ms, provider FIXER@3+790ms"}.
+   */
+  public String breakdown() {
+    StringBuilder breakdown = new StringBuilder();
+    for (Span span : spans) {
+      if (breakdown.length() > 0) {
+        breakdown.append(", ");
+      }
+      breakdown
+          .append(span.name)
+          .append('@')
+          .append(TimeUnit.NANOSECONDS.toMillis(span.startNanos - startNanos))
+          .append('+')
+          .append(TimeUnit.NANOSECONDS.toMillis(span.endNanos - span.startNanos))
+          .append("ms");
+    }
+    return breakdown.toString();
+  }
+
+  private static class Span {
+    final String name;
+    final long startNanos;
+    final long endNanos;
+
+    Span(String name, long startNanos, long endNanos) {
+      this.name = name;
+      this.startNanos = startNanos;
+      this.endNanos = endNanos;
+    }
+  }
+}
@@ -3,14 +3,21 @@ package com.mineraltree.api.marshal;
 import static com.mineraltree.utils.Ensure.verify;
 import static com.mineraltree.utils.Ensure.verifyNotEmpty;
 import static com.mineraltree.utils.Ensure.verifyNotNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import akka.actor.ActorSystem;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
 import akka.http.scaladsl.marshalling.Marshalling;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import com.google.common.collect.ImmutableMap;
 import com.mineraltree.api.dto.ApiDto;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.BeforeAll;
@@ -82,4 +89,60 @@ public class MarshalTest {
 
     System.out.println("Got a " + result);
   }
+
+  public static class RatesDto implements ApiDto {
+    private final String base;
+    private final Map<String, Double> rates;
+
+    private RatesDto() {
+      this.base = null;
+      this.rates = null;
+    }
+
+    RatesDto(String base, Map<String, Double> rates) {
+      this.base = base;
+      this.rates = rates;
+    }
+
+    @Override
+    public void validate() {
+      verifyNotEmpty(base, "base");
+      verifyNotEmpty(rates, "rates");
+    }
+  }
+
+  @Test
+  public void testFormatsRoundTrip() throws Exception {
+    Materializer materializer = ActorMaterializer.create(system);
+    RatesDto input = new RatesDto("USD", ImmutableMap.of("EUR", 0.91, "GBP", 0.79, "JPY", 110.5));
+    RatesDto fromJson =
+        Marshal.unmarshaller(RatesDto.class)
+            .unmarshal(
+                HttpEntities.create(ContentTypes.APPLICATION_JSON, Marshal.toJSONBytes(input)),
+                materializer)
+            .toCompletableFuture()
+            .get(3, TimeUnit.SECONDS);
+    assertEquals(input.rates, fromJson.rates);
+
+    byte[] smile = Marshal.SMILE_MAPPER.writeValueAsBytes(input);
+    RatesDto fromSmile =
+        Marshal.unmarshaller(RatesDto.class)
+            .unmarshal(
+                HttpEntities.create(ContentTypes.create(Marshal.APPLICATION_SMILE), smile),
+                materializer)
+            .toCompletableFuture()
+            .get(3, TimeUnit.SECONDS);
+    assertEquals(input.rates, fromSmile.rates);
+
+    byte[] cbor = Marshal.CBOR_MAPPER.writeValueAsBytes(input);
+    RatesDto fromCbor =
+        Marshal.unmarshaller(RatesDto.class)
+            .unmarshal(
+                HttpEntities.create(ContentTypes.create(Marshal.APPLICATION_CBOR), cbor),
+                materializer)
+            .toCompletableFuture()
+            .get(3, TimeUnit.SECONDS);
+    assertEquals("USD", fromCbor.base);
+    assertEquals(input.rates, fromCbor.rates);
+  }
 }
@@ -0,0 +1,52 @@
+package com.mineraltree.api.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveLimitTest {
+
+  private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void testRejectsBeyondLimit() {
+    AdaptiveLimit limit = new AdaptiveLimit(2, 1, 10, TARGET, 0.5);
+    assertTrue(limit.tryAcquire());
+    assertTrue(limit.tryAcquire());
+    assertFalse(limit.tryAcquire());
+    limit.release(0, FAST, false);
+    assertTrue(limit.tryAcquire());
+  }
+
+  @Test
+  void testGrowsWhileFastAndInUse() {
+    AdaptiveLimit limit = new AdaptiveLimit(4, 1, 10, TARGET, 0.5);
+    for (int i = 0; i < 100; i++) {
+      while (limit.tryAcquire()) {}
+      limit.release(0, FAST, false);
+    }
+    assertEquals(10, limit.getLimit());
+  }
+
+  @Test
+  void testSlowBurstCutsOnce() {
+    AdaptiveLimit limit = new AdaptiveLimit(8, 1, 10, TARGET, 0.5);
+    for (int i = 0; i < 8; i++) {
+      limit.tryAcquire();
+    }
+    // All started before the first of them was seen to be slow
+    for (int i = 0; i < 8; i++) {
+      limit.release(0, SLOW + i, false);
+    }
+    assertEquals(4, limit.getLimit());
+
+    limit.tryAcquire();
+    limit.release(SLOW * 2, SLOW * 2 + FAST, true);
+    assertEquals(2, limit.getLimit());
+  }
+}
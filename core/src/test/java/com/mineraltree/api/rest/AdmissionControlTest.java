@@ -0,0 +1,120 @@
+package com.mineraltree.api.rest;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.failWith;
+import static akka.http.javadsl.server.Directives.onSuccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.server.Route;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AdmissionControlTest {
+
+  private final AdmissionControl admission =
+      new AdmissionControl(
+          ConfigFactory.parseString(
+              "limit { initial = 1, min = 1, max = 1, latency-target = 1 s, backoff-ratio = 0.5 }\n"
+                  + "clients { header = X-Client, rate = 1, burst = 2, max-clients = 10 }"));
+  private ActorSystem system;
+  private Materializer materializer;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("admission-test");
+    materializer = ActorMaterializer.create(system);
+  }
+
+  @AfterEach
+  void stopSystem() {
+    system.terminate();
+  }
+
+  @Test
+  void testRejectsBeyondLimit() throws Exception {
+    CompletableFuture<String> answer = new CompletableFuture<>();
+    Route route = admission.admit(() -> onSuccess(answer, body -> complete(body)));
+
+    CompletionStage<HttpResponse> first = send(route, HttpRequest.GET("/"));
+    awaitInFlight(1);
+    HttpResponse rejected = await(send(route, HttpRequest.GET("/")));
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, rejected.status());
+    assertTrue(rejected.getHeader(RetryAfter.class).isPresent());
+
+    answer.complete("rates");
+    assertEquals(StatusCodes.OK, await(first).status());
+    awaitInFlight(0);
+  }
+
+  @Test
+  void testRejectsClientBeyondItsRate() throws Exception {
+    // Room for every request under the limit, and no refill while the test runs
+    AdmissionControl perClient =
+        new AdmissionControl(
+            ConfigFactory.parseString(
+                "limit { initial = 10, min = 1, max = 10, latency-target = 1 s, "
+                    + "backoff-ratio = 0.5 }\n"
+                    + "clients { header = X-Client, rate = 0.001, burst = 2, max-clients = 10 }"));
+    Route route = perClient.admit(() -> complete("rates"));
+    HttpRequest request = HttpRequest.GET("/").addHeader(RawHeader.create("X-Client", "a"));
+
+    assertEquals(StatusCodes.OK, await(send(route, request)).status());
+    assertEquals(StatusCodes.OK, await(send(route, request)).status());
+    HttpResponse rejected = await(send(route, request));
+    assertEquals(StatusCodes.TOO_MANY_REQUESTS, rejected.status());
+    assertTrue(rejected.getHeader(RetryAfter.class).isPresent());
+
+    // Other clients have their own share
+    HttpRequest other = HttpRequest.GET("/").addHeader(RawHeader.create("X-Client", "b"));
+    assertEquals(StatusCodes.OK, await(send(route, other)).status());
+  }
+
+  @Test
+  void testReleasedOnFailure() throws Exception {
+    Route timedOut = admission.admit(() -> failWith(new TimeoutException("provider")));
+    assertEquals(
+        StatusCodes.INTERNAL_SERVER_ERROR, await(send(timedOut, HttpRequest.GET("/"))).status());
+    awaitInFlight(0);
+
+    Route failed = admission.admit(() -> failWith(new IllegalStateException("bug")));
+    assertEquals(
+        StatusCodes.INTERNAL_SERVER_ERROR, await(send(failed, HttpRequest.GET("/"))).status());
+    awaitInFlight(0);
+  }
+
+  /** The in-flight count is released as the route completes, just after the response is sent */
+  private void awaitInFlight(int expected) throws InterruptedException {
+    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (admission.getInFlight() != expected && System.nanoTime() < until) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, admission.getInFlight());
+  }
+
+  private CompletionStage<HttpResponse> send(Route route, HttpRequest request) {
+    return Source.single(request)
+        .via(route.flow(system, materializer))
+        .runWith(Sink.head(), materializer);
+  }
+
+  private static HttpResponse await(CompletionStage<HttpResponse> response) throws Exception {
+    return response.toCompletableFuture().get(5, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,102 @@
+package com.mineraltree.api.rest;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.onSuccess;
+import static akka.http.javadsl.server.Directives.route;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCode;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.Route;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.mineraltree.service.Readiness;
+import com.typesafe.config.ConfigFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class HealthRouterTest {
+
+  private final AtomicBoolean live = new AtomicBoolean(true);
+  private final Readiness readiness = new Readiness(() -> {});
+  private final HealthRouter health = new HealthRouter(live::get, readiness::isReady);
+  private ActorSystem system;
+  private Materializer materializer;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("health-test");
+    materializer = ActorMaterializer.create(system);
+  }
+
+  @AfterEach
+  void stopSystem() {
+    system.terminate();
+  }
+
+  @Test
+  void testProbesFollowState() throws Exception {
+    Route route = health.getRouter();
+    readiness.require("api-bound");
+
+    assertEquals(StatusCodes.OK, statusOf(route, "/health/live"));
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, statusOf(route, "/health/ready"));
+
+    readiness.complete("api-bound");
+    assertEquals(StatusCodes.OK, statusOf(route, "/health/live"));
+    assertEquals(StatusCodes.OK, statusOf(route, "/health/ready"));
+
+    live.set(false);
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, statusOf(route, "/health/live"));
+  }
+
+  @Test
+  void testProbesAnsweredWhileServiceRejects() throws Exception {
+    AdmissionControl admission =
+        new AdmissionControl(
+            ConfigFactory.parseString(
+                "limit { initial = 1, min = 1, max = 1, latency-target = 1 s, backoff-ratio = 0.5 }"
+                    + "\nclients { header = X-Client, rate = 1, burst = 1, max-clients = 10 }"));
+    CompletableFuture<String> answer = new CompletableFuture<>();
+    // Probes first, as the service main puts them
+    Route route =
+        route(health.getRouter(), admission.admit(() -> onSuccess(answer, body -> complete(body))));
+
+    // Takes the service's only slot until answered
+    CompletionStage<HttpResponse> held = send(route, "/rates");
+    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (admission.getInFlight() == 0 && System.nanoTime() < until) {
+      Thread.sleep(10);
+    }
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, statusOf(route, "/rates"));
+
+    assertEquals(StatusCodes.OK, statusOf(route, "/health/live"));
+    assertEquals(StatusCodes.SERVICE_UNAVAILABLE, statusOf(route, "/health/ready"));
+    readiness.require("api-bound");
+    readiness.complete("api-bound");
+    assertEquals(StatusCodes.OK, statusOf(route, "/health/ready"));
+
+    answer.complete("rates");
+    assertEquals(StatusCodes.OK, held.toCompletableFuture().get(5, TimeUnit.SECONDS).status());
+  }
+
+  private StatusCode statusOf(Route route, String uri) throws Exception {
+    return send(route, uri).toCompletableFuture().get(5, TimeUnit.SECONDS).status();
+  }
+
+  private CompletionStage<HttpResponse> send(Route route, String uri) {
+    return Source.single(HttpRequest.GET(uri))
+        .via(route.flow(system, materializer))
+        .runWith(Sink.head(), materializer);
+  }
+}
@@ -0,0 +1,30 @@
+package com.mineraltree.api.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TokenBucketTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void testBurstThenSteadyRate() {
+    TokenBucket bucket = new TokenBucket(2, 3, 0);
+    assertEquals(0, bucket.tryTake(0));
+    assertEquals(0, bucket.tryTake(0));
+    assertEquals(0, bucket.tryTake(0));
+    // Empty: the next token comes in half a second
+    assertEquals(SECOND / 2, bucket.tryTake(0));
+    assertEquals(SECOND / 4, bucket.tryTake(SECOND / 4));
+    assertEquals(0, bucket.tryTake(SECOND / 2));
+
+    // A long wait refills no more than the burst
+    long later = 10 * SECOND;
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, bucket.tryTake(later));
+    }
+    assertEquals(SECOND / 2, bucket.tryTake(later));
+  }
+}
@@ -2,6 +2,7 @@ package com.mineraltree.config;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -10,6 +11,9 @@ import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import java.io.File;
 import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -125,4 +129,41 @@ class ConfigurationFetcherTest {
     Assertions.assertEquals(10, configSettings.getInt("debugLevel"));
     Assertions.assertEquals("otherprop", configSettings.getString("newprop"));
   }
+
+  /** Tests that a watcher is told of changed contents only, and never of contents which fail */
+  @Test
+  void testReloadNotifiesChanges() throws Exception {
+    File appFile = new File(Files.createTempDirectory("config").toFile(), "app.conf");
+    File secretFile = new File("/etc/secretfile.conf");
+    when(resolver.resolveProperty(ConfigInput.APPLICATION)).thenReturn("file://" + appFile);
+    when(resolver.resolveProperty(ConfigInput.SECRET)).thenReturn("file://" + secretFile);
+    when(parser.parseFile(eq(secretFile))).thenReturn(ConfigFactory.empty());
+    when(parser.parseFile(eq(appFile)))
+        .thenReturn(ConfigFactory.parseString("mineraltree.refresh = 1"))
+        .thenReturn(ConfigFactory.parseString("mineraltree.refresh = 1"))
+        .thenThrow(new IllegalStateException("Unparseable"))
+        .thenReturn(ConfigFactory.parseString("mineraltree.refresh = 2"));
+
+    ConfigurationFetcher fetcher = new ConfigurationFetcher(resolver, parser);
+    List<Config> changes = new ArrayList<>();
+    Assertions.assertEquals(1, fetcher.getServiceConfigSettings("inner").getInt("refresh"));
+    Assertions.assertTrue(fetcher.watch("inner", changes::add));
+
+    fetcher.reload();
+    fetcher.reload();
+    Assertions.assertTrue(changes.isEmpty());
+
+    fetcher.reload();
+    Assertions.assertEquals(1, changes.size());
+    Assertions.assertEquals(2, changes.get(0).getInt("refresh"));
+    Assertions.assertEquals(2, fetcher.getServiceConfigSettings("inner").getInt("refresh"));
+  }
+
+  @Test
+  void testRemoteConfigNotWatched() {
+    when(resolver.resolveProperty(ConfigInput.APPLICATION)).thenReturn("http://somehost/path");
+
+    ConfigurationFetcher fetcher = new ConfigurationFetcher(resolver, parser);
+    Assertions.assertFalse(fetcher.watch("inner", config -> {}));
+  }
 }
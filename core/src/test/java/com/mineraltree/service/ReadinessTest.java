@@ -0,0 +1,35 @@
+package com.mineraltree.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class ReadinessTest {
+
+  @Test
+  void testReadyOnceEveryConditionCompletes() {
+    AtomicInteger readyCalls = new AtomicInteger();
+    Readiness readiness = new Readiness(readyCalls::incrementAndGet);
+    readiness.require("api-bound");
+    readiness.require("rates-preloaded");
+
+    readiness.complete("rates-preloaded");
+    // Conditions not required, or completed again, change nothing
+    readiness.complete("rates-preloaded");
+    readiness.complete("unknown");
+    assertFalse(readiness.isReady());
+
+    readiness.complete("api-bound");
+    assertTrue(readiness.isReady());
+    assertEquals(1, readyCalls.get());
+
+    // Stays ready, and is not made ready again
+    readiness.require("late");
+    readiness.complete("late");
+    assertTrue(readiness.isReady());
+    assertEquals(1, readyCalls.get());
+  }
+}
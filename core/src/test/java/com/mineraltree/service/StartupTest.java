@@ -0,0 +1,65 @@
+package com.mineraltree.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class StartupTest {
+
+  private final Startup startup = new Startup();
+
+  @Test
+  void testPhasesPassOnTheirResults() throws Exception {
+    assertEquals("secrets", startup.timed("vault", () -> "secrets"));
+    assertEquals(
+        "startup-",
+        startup
+            .async("actors", () -> Thread.currentThread().getName())
+            .get(5, TimeUnit.SECONDS)
+            .substring(0, "startup-".length()));
+
+    CompletableFuture<String> bound = new CompletableFuture<>();
+    CompletableFuture<String> tracked = startup.track("bind", bound).toCompletableFuture();
+    bound.complete("bound");
+    assertEquals("bound", tracked.get(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void testFailedPhasesFail() {
+    IllegalStateException failure = new IllegalStateException("no vault");
+    assertSame(
+        failure,
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                startup.timed(
+                    "vault",
+                    () -> {
+                      throw failure;
+                    })));
+
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                startup
+                    .async(
+                        "vault",
+                        () -> {
+                          throw failure;
+                        })
+                    .get(5, TimeUnit.SECONDS));
+    assertSame(failure, e.getCause());
+
+    CompletableFuture<String> bound = new CompletableFuture<>();
+    CompletableFuture<String> tracked = startup.track("bind", bound).toCompletableFuture();
+    bound.completeExceptionally(failure);
+    assertTrue(tracked.isCompletedExceptionally());
+  }
+}
@@ -0,0 +1,47 @@
+package com.mineraltree.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.base.Strings;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class TraceTest {
+
+  @Test
+  void testCallerIdKeptOnlyIfValid() {
+    assertEquals("req-42_a.B", Trace.start("req-42_a.B").getId());
+    String longest = Strings.repeat("a", Trace.MAX_ID_LENGTH);
+    assertEquals(longest, Trace.start(longest).getId());
+
+    for (String invalid : new String[] {"", longest + "a", "id with spaces", "id\r\nforged: 1"}) {
+      String id = Trace.start(invalid).getId();
+      assertNotEquals(invalid, id);
+      assertTrue(Trace.isValidId(id), id);
+    }
+  }
+
+  @Test
+  void testBreakdownListsSpansInOrderFinished() throws InterruptedException {
+    Trace trace = Trace.start();
+    assertEquals("", trace.breakdown());
+
+    long askStart = System.nanoTime();
+    long providerStart = System.nanoTime();
+    Thread.sleep(20);
+    trace.span("provider FIXER", providerStart);
+    trace.span("ask", askStart);
+
+    Matcher breakdown =
+        Pattern.compile("provider FIXER@(\\d+)\\+(\\d+)ms, ask@(\\d+)\\+(\\d+)ms")
+            .matcher(trace.breakdown());
+    assertTrue(breakdown.matches(), trace.breakdown());
+    // Each span starts at its offset from the start of the trace and lasts as long as it took
+    assertTrue(Long.parseLong(breakdown.group(1)) < 20);
+    assertTrue(Long.parseLong(breakdown.group(2)) >= 20);
+    assertTrue(Long.parseLong(breakdown.group(4)) >= Long.parseLong(breakdown.group(2)));
+  }
+}
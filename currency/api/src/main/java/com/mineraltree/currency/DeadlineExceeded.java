@@ -0,0 +1,14 @@
+package com.mineraltree.currency;
+
+/**
+ * The deadline of a request passed before it could be answered; the API answers 504. Not a {@link
+ * java.util.concurrent.TimeoutException}: the caller chose the deadline, so missing it is no sign
+ * that the service is overloaded.
+ */
+public class DeadlineExceeded extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public DeadlineExceeded() {
+    super("The request could not be answered before its deadline");
+  }
+}
@@ -1,7 +1,10 @@
 package com.mineraltree.currency;
 
+/** The service is still starting up; the API answers 503 until it is ready */
 public class ServiceNotReady extends RuntimeException {
 
+  private static final long serialVersionUID = 1L;
+
   public ServiceNotReady() {
     super("The service has not finished initialization. Wait a moment and retry the request.");
   }
@@ -1,8 +1,14 @@
 package com.mineraltree.currency.api;
 
 import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.utils.Trace;
 import java.util.concurrent.CompletionStage;
 
 public interface CurrencyProcessor {
   CompletionStage<CurrencyRates> getCurrencyRates(String base);
+
+  /** As {@link #getCurrencyRates(String)}, recording the time each stage takes in {@code trace} */
+  default CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
+    return getCurrencyRates(base);
+  }
 }
@@ -0,0 +1,24 @@
+package com.mineraltree.currency.api;
+
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+import com.mineraltree.utils.Trace;
+import java.util.concurrent.CompletionStage;
+
+/** Supplies the changes in rates since a version the client already has */
+public interface RateDeltas {
+
+  /**
+   * Returns the changes to the rates of {@code base} since {@code version}. If that version is no
+   * longer known the returned delta is full, containing all current rates.
+   */
+  CompletionStage<CurrencyRatesDelta> getCurrencyRatesSince(String base, long version);
+
+  /**
+   * As {@link #getCurrencyRatesSince(String, long)}, recording the time each stage takes in {@code
+   * trace}
+   */
+  default CompletionStage<CurrencyRatesDelta> getCurrencyRatesSince(
+      String base, long version, Trace trace) {
+    return getCurrencyRatesSince(base, version);
+  }
+}
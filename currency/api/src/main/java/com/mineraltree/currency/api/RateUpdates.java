@@ -0,0 +1,20 @@
+package com.mineraltree.currency.api;
+
+import akka.NotUsed;
+import akka.stream.javadsl.Source;
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+import java.util.Set;
+
+/** Supplies live streams of currency rates, for clients that want to be told about new rates */
+public interface RateUpdates {
+
+  /**
+   * Returns a stream which first emits the current rates of each of the given bases (as full
+   * deltas) and then, every time one of those bases is updated, the changes from the rates last
+   * emitted for it. The stream fails if the consumer falls too far behind, rather than holding back
+   * the updates of every other subscriber.
+   *
+   * @param bases the base currencies to follow
+   */
+  Source<CurrencyRatesDelta, NotUsed> subscribe(Set<String> bases);
+}
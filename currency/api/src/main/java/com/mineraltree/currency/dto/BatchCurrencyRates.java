@@ -0,0 +1,62 @@
+package com.mineraltree.currency.dto;
+
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.mineraltree.api.dto.ApiDto;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The currency rates of several bases, requested together. Each base requested is either in {@code
+ * rates} or, if its rates could not be had, in {@code errors} with the reason; one base failing
+ * does not fail the others.
+ */
+public class BatchCurrencyRates implements ApiDto, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final Map<String, CurrencyRates> rates;
+  private final Map<String, String> errors;
+
+  private BatchCurrencyRates(Builder build) {
+    this.rates = ImmutableSortedMap.copyOf(build.rates);
+    this.errors = ImmutableSortedMap.copyOf(build.errors);
+  }
+
+  /** The rates of each base which could be had, by base */
+  public Map<String, CurrencyRates> getRates() {
+    return rates;
+  }
+
+  /** Why the rates of each other base could not be had, by base as requested */
+  public Map<String, String> getErrors() {
+    return errors;
+  }
+
+  @Override
+  public void validate() {
+    verifyNotNull(rates, "rates");
+    verifyNotNull(errors, "errors");
+  }
+
+  public static class Builder {
+
+    private final Map<String, CurrencyRates> rates = new TreeMap<>();
+    private final Map<String, String> errors = new TreeMap<>();
+
+    public void addRates(CurrencyRates baseRates) {
+      verifyNotNull(baseRates, "baseRates");
+      rates.put(baseRates.getBaseCurrency(), baseRates);
+    }
+
+    public void addError(String base, String error) {
+      errors.put(verifyNotEmpty(base, "base"), verifyNotEmpty(error, "error"));
+    }
+
+    public BatchCurrencyRates build() {
+      return new BatchCurrencyRates(this);
+    }
+  }
+}
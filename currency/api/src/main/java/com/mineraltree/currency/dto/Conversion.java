@@ -0,0 +1,121 @@
+package com.mineraltree.currency.dto;
+
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+
+import com.mineraltree.api.dto.ApiDto;
+import java.io.Serializable;
+
+/**
+ * An amount converted from one currency to another. Amounts are given both as decimal strings, so
+ * they are exact, and as whole numbers of the currency's minor units.
+ */
+public class Conversion implements ApiDto, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final String from;
+  private final String to;
+  private final String amount;
+  private final long amountMinor;
+  private final String converted;
+  private final long convertedMinor;
+  /** The rate the amount was converted at, and where it came from */
+  private final double rate;
+
+  private final String provider;
+  private final long version;
+
+  private Conversion(Builder build) {
+    this.from = verifyNotEmpty(build.from, "from");
+    this.to = verifyNotEmpty(build.to, "to");
+    this.amount = verifyNotEmpty(build.amount, "amount");
+    this.amountMinor = build.amountMinor;
+    this.converted = verifyNotEmpty(build.converted, "converted");
+    this.convertedMinor = build.convertedMinor;
+    this.rate = build.rate;
+    this.provider = verifyNotEmpty(build.provider, "provider");
+    this.version = build.version;
+  }
+
+  public String getFrom() {
+    return from;
+  }
+
+  public String getTo() {
+    return to;
+  }
+
+  public String getAmount() {
+    return amount;
+  }
+
+  public long getAmountMinor() {
+    return amountMinor;
+  }
+
+  public String getConverted() {
+    return converted;
+  }
+
+  public long getConvertedMinor() {
+    return convertedMinor;
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  public String getProvider() {
+    return provider;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  @Override
+  public void validate() {
+    verifyNotEmpty(from, "from");
+    verifyNotEmpty(to, "to");
+    verifyNotEmpty(amount, "amount");
+    verifyNotEmpty(converted, "converted");
+    verifyNotEmpty(provider, "provider");
+  }
+
+  public static class Builder {
+
+    private String from;
+    private String to;
+    private String amount;
+    private long amountMinor;
+    private String converted;
+    private long convertedMinor;
+    private double rate;
+    private String provider;
+    private long version;
+
+    /** Sets the amount converted, in minor units and as a decimal string */
+    public void setAmount(String from, long amountMinor, String amount) {
+      this.from = from;
+      this.amountMinor = amountMinor;
+      this.amount = amount;
+    }
+
+    /** Sets the converted amount, in minor units and as a decimal string */
+    public void setConverted(String to, long convertedMinor, String converted) {
+      this.to = to;
+      this.convertedMinor = convertedMinor;
+      this.converted = converted;
+    }
+
+    /** Sets the rate used, and the provider and version of the rates it came from */
+    public void setRate(double rate, String provider, long version) {
+      this.rate = rate;
+      this.provider = provider;
+      this.version = version;
+    }
+
+    public Conversion build() {
+      return new Conversion(this);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package com.mineraltree.currency.dto;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The canonical form of currency codes. Any 3 letter code, in any case, maps to one upper case key
+ * which is always the same (interned) String instance, so keys can be used in hash maps and
+ * compared cheaply. Validating and normalizing a code is a single pass over its 3 characters and
+ * allocates nothing once the key has been seen.
+ */
+public final class CurrencyCodes {
+
+  private static final int LETTERS = 26;
+  /** Number of possible codes, and so of keys */
+  public static final int SIZE = LETTERS * LETTERS * LETTERS;
+
+  private static final AtomicReferenceArray<String> KEYS = new AtomicReferenceArray<>(SIZE);
+
+  private CurrencyCodes() {}
+
+  /**
+   * Returns the index (0 to {@link #SIZE} - 1) of a currency code, or -1 if it is not 3 ASCII
+   * letters.
+   */
+  public static int indexOf(CharSequence code) {
+    if (code == null || code.length() != 3) {
+      return -1;
+    }
+    int index = 0;
+    for (int i = 0; i < 3; i++) {
+      int letter = letterOf(code.charAt(i));
+      if (letter < 0) {
+        return -1;
+      }
+      index = index * LETTERS + letter;
+    }
+    return index;
+  }
+
+  /** Returns the canonical key of a currency code, or {@code null} if it is not 3 ASCII letters */
+  public static String key(CharSequence code) {
+    int index = indexOf(code);
+    if (index < 0) {
+      return null;
+    }
+    String key = KEYS.get(index);
+    if (key == null) {
+      char[] letters = {
+        (char) ('A' + index / (LETTERS * LETTERS)),
+        (char) ('A' + index / LETTERS % LETTERS),
+        (char) ('A' + index % LETTERS)
+      };
+      KEYS.compareAndSet(index, null, new String(letters).intern());
+      key = KEYS.get(index);
+    }
+    return key;
+  }
+
+  public static boolean isValid(CharSequence code) {
+    return indexOf(code) >= 0;
+  }
+
+  private static int letterOf(char c) {
+    if (c >= 'A' && c <= 'Z') {
+      return c - 'A';
+    } else if (c >= 'a' && c <= 'z') {
+      return c - 'a';
+    }
+    return -1;
+  }
+}
@@ -1,23 +1,67 @@
 package com.mineraltree.currency.dto;
 
+import static com.mineraltree.utils.Ensure.verify;
 import static com.mineraltree.utils.Ensure.verifyNotEmpty;
 
 import com.google.common.collect.ImmutableSortedMap;
 import com.mineraltree.api.dto.ApiDto;
+import java.io.Serializable;
+import java.util.Collection;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
 
-/** Represents the currency rates against a common (base) value. */
-public class CurrencyRates implements ApiDto {
+/**
+ * Represents the currency rates against a common (base) value. Serializable so rates can be shared
+ * between the nodes of a cluster.
+ */
+public class CurrencyRates implements ApiDto, Serializable {
+  private static final long serialVersionUID = 1L;
 
   private final String baseCurrency;
   private final String provider;
   private final Map<String, Double> rates;
+  /**
+   * Identifies this set of rates among the sets fetched for the same base. Versions only increase;
+   * a client can ask for the changes since the version it already has.
+   */
+  private final long version;
+  /** The rates by code index, for picking out a few of them; built on first use */
+  private transient volatile RateIndex index;
 
   public CurrencyRates(Builder build) {
     this.baseCurrency = verifyNotEmpty(build.baseCurrency, "baseCurrency");
     this.provider = verifyNotEmpty(build.provider, "provider");
     this.rates = ImmutableSortedMap.copyOf(verifyNotEmpty(build.rates, "rates"));
+    this.version = build.version;
+  }
+
+  private CurrencyRates(CurrencyRates original, Map<String, Double> rates, long version) {
+    this.baseCurrency = original.baseCurrency;
+    this.provider = original.provider;
+    this.rates = rates;
+    this.version = version;
+  }
+
+  /** Returns a copy of these rates with a different version */
+  public CurrencyRates withVersion(long newVersion) {
+    return new CurrencyRates(this, rates, newVersion);
+  }
+
+  /**
+   * Returns these rates with only the rates of {@code symbols}, for a client which needs only a few
+   * of them. Symbols without a rate are left out, and repeated symbols appear once. The subset
+   * reads from an index of these rates rather than copying them, so it is cheap to make for every
+   * request.
+   */
+  public CurrencyRates withOnlySymbols(Collection<String> symbols) {
+    RateIndex current = index;
+    if (current == null) {
+      // Concurrent first requests may each build an index; they are all the same
+      current = new RateIndex(rates);
+      index = current;
+    }
+    return new CurrencyRates(this, current.project(symbols), version);
   }
 
   public String getBaseCurrency() {
@@ -28,6 +72,14 @@ public class CurrencyRates implements ApiDto {
     return provider;
   }
 
+  public Map<String, Double> getRates() {
+    return rates;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
   @Override
   public void validate() {
     verifyNotEmpty(baseCurrency, "baseCurrency");
@@ -40,15 +92,26 @@ public class CurrencyRates implements ApiDto {
     private String baseCurrency;
     private String provider;
     private Map<String, Double> rates = new TreeMap<>();
+    private long version;
 
+    /** Sets the base, as its {@link CurrencyCodes#key canonical key} */
     public void setBaseCurrency(String baseCurrency) {
-      this.baseCurrency = verifyNotEmpty(baseCurrency, "baseCurrency");
+      this.baseCurrency =
+          verify(
+              CurrencyCodes.key(verifyNotEmpty(baseCurrency, "baseCurrency")),
+              Objects::nonNull,
+              "baseCurrency",
+              "Must be a 3 letter currency code");
     }
 
     public void setProvider(String provider) {
       this.provider = verifyNotEmpty(provider, "provider");
     }
 
+    public void setVersion(long version) {
+      this.version = version;
+    }
+
     public void addRate(String key, Double value) {
       rates.put(key, value);
     }
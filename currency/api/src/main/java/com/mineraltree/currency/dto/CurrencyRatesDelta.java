@@ -0,0 +1,146 @@
+package com.mineraltree.currency.dto;
+
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.mineraltree.api.dto.ApiDto;
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * The changes between two versions of the currency rates of a base. Applying {@code changed} and
+ * {@code removed} to the rates of {@code fromVersion} gives the rates of {@code version}. When the
+ * client's version is unknown (or too old) the delta is {@code full}: {@code changed} then holds
+ * every rate and the client should replace what it has.
+ */
+public class CurrencyRatesDelta implements ApiDto, Serializable {
+  private static final long serialVersionUID = 1L;
+
+  private final String baseCurrency;
+  private final String provider;
+  private final boolean full;
+  /** The version the changes apply to. Absent for a full delta. */
+  private final Long fromVersion;
+
+  private final long version;
+  private final Map<String, Double> changed;
+  private final Set<String> removed;
+
+  private CurrencyRatesDelta(Builder build) {
+    this.baseCurrency = verifyNotEmpty(build.baseCurrency, "baseCurrency");
+    this.provider = verifyNotEmpty(build.provider, "provider");
+    this.full = build.fromVersion == null;
+    this.fromVersion = build.fromVersion;
+    this.version = build.version;
+    this.changed = ImmutableSortedMap.copyOf(verifyNotNull(build.changed, "changed"));
+    this.removed = ImmutableSortedSet.copyOf(verifyNotNull(build.removed, "removed"));
+  }
+
+  /** A full delta, which replaces whatever rates the client has with {@code rates} */
+  public static CurrencyRatesDelta full(CurrencyRates rates) {
+    Builder builder = new Builder(rates);
+    builder.changed.putAll(rates.getRates());
+    return builder.build();
+  }
+
+  /** The changes from {@code from} to {@code to}, which must be rates of the same base */
+  public static CurrencyRatesDelta between(CurrencyRates from, CurrencyRates to) {
+    Builder builder = new Builder(to);
+    builder.fromVersion = from.getVersion();
+    for (Map.Entry<String, Double> rate : to.getRates().entrySet()) {
+      if (!rate.getValue().equals(from.getRates().get(rate.getKey()))) {
+        builder.changed.put(rate.getKey(), rate.getValue());
+      }
+    }
+    for (String code : from.getRates().keySet()) {
+      if (!to.getRates().containsKey(code)) {
+        builder.removed.add(code);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Combines this delta with the one that follows it, giving the changes from this delta's {@code
+   * fromVersion} to the version of {@code next}.
+   */
+  public CurrencyRatesDelta followedBy(CurrencyRatesDelta next) {
+    Builder builder = new Builder(next.baseCurrency, next.provider, next.version);
+    builder.fromVersion = fromVersion;
+    builder.changed.putAll(changed);
+    builder.removed.addAll(removed);
+    for (String code : next.removed) {
+      builder.changed.remove(code);
+      builder.removed.add(code);
+    }
+    for (Map.Entry<String, Double> rate : next.changed.entrySet()) {
+      builder.removed.remove(rate.getKey());
+      builder.changed.put(rate.getKey(), rate.getValue());
+    }
+    return builder.build();
+  }
+
+  public String getBaseCurrency() {
+    return baseCurrency;
+  }
+
+  public String getProvider() {
+    return provider;
+  }
+
+  public boolean isFull() {
+    return full;
+  }
+
+  public Long getFromVersion() {
+    return fromVersion;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public Map<String, Double> getChanged() {
+    return changed;
+  }
+
+  public Set<String> getRemoved() {
+    return removed;
+  }
+
+  @Override
+  public void validate() {
+    verifyNotEmpty(baseCurrency, "baseCurrency");
+    verifyNotEmpty(provider, "provider");
+    verifyNotNull(changed, "changed");
+    verifyNotNull(removed, "removed");
+  }
+
+  private static class Builder {
+    private final String baseCurrency;
+    private final String provider;
+    private final long version;
+    private Long fromVersion;
+    private final Map<String, Double> changed = new TreeMap<>();
+    private final Set<String> removed = new TreeSet<>();
+
+    Builder(CurrencyRates to) {
+      this(to.getBaseCurrency(), to.getProvider(), to.getVersion());
+    }
+
+    Builder(String baseCurrency, String provider, long version) {
+      this.baseCurrency = baseCurrency;
+      this.provider = provider;
+      this.version = version;
+    }
+
+    CurrencyRatesDelta build() {
+      return new CurrencyRatesDelta(this);
+    }
+  }
+}
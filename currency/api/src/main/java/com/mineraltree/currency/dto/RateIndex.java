@@ -0,0 +1,128 @@
+package com.mineraltree.currency.dto;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The rates of a snapshot in arrays ordered by {@link CurrencyCodes#indexOf code index}, so a
+ * handful of them can be picked out by a binary search over ints and handed out as a {@link
+ * Projection} which reads straight from the arrays. Built once per snapshot, by the first request
+ * for a subset of it. Rates whose code is not 3 letters can't be picked out.
+ */
+class RateIndex {
+
+  private final int[] codes;
+  private final String[] keys;
+  private final double[] values;
+
+  RateIndex(Map<String, Double> rates) {
+    int[] codes = new int[rates.size()];
+    String[] keys = new String[rates.size()];
+    double[] values = new double[rates.size()];
+    int size = 0;
+    for (Map.Entry<String, Double> rate : rates.entrySet()) {
+      int code = CurrencyCodes.indexOf(rate.getKey());
+      if (code < 0) {
+        continue;
+      }
+      // Sorted rates of upper case codes arrive in index order, so this rarely moves anything
+      int at = size;
+      while (at > 0 && codes[at - 1] > code) {
+        codes[at] = codes[at - 1];
+        keys[at] = keys[at - 1];
+        values[at] = values[at - 1];
+        at--;
+      }
+      codes[at] = code;
+      keys[at] = rate.getKey();
+      values[at] = rate.getValue();
+      size++;
+    }
+    this.codes = Arrays.copyOf(codes, size);
+    this.keys = Arrays.copyOf(keys, size);
+    this.values = Arrays.copyOf(values, size);
+  }
+
+  /**
+   * Returns the rates of the given codes which are in the snapshot, in code order. Codes which are
+   * not are left out, and codes given more than once appear once.
+   */
+  Map<String, Double> project(Collection<String> symbols) {
+    int[] positions = new int[symbols.size()];
+    int size = 0;
+    for (String symbol : symbols) {
+      int code = CurrencyCodes.indexOf(symbol);
+      int position = code < 0 ? -1 : Arrays.binarySearch(codes, code);
+      if (position >= 0) {
+        positions[size++] = position;
+      }
+    }
+    Arrays.sort(positions, 0, size);
+    int distinct = 0;
+    for (int i = 0; i < size; i++) {
+      if (distinct == 0 || positions[distinct - 1] != positions[i]) {
+        positions[distinct++] = positions[i];
+      }
+    }
+    return new Projection(this, Arrays.copyOf(positions, distinct));
+  }
+
+  /**
+   * An unmodifiable map of some of the rates of an index, read from the index's arrays. It is
+   * serialized as a copy of its rates, without the index.
+   */
+  private static class Projection extends AbstractMap<String, Double> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final RateIndex index;
+    private final int[] positions;
+
+    Projection(RateIndex index, int[] positions) {
+      this.index = index;
+      this.positions = positions;
+    }
+
+    private Object writeReplace() {
+      return new TreeMap<>(this);
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+      return new AbstractSet<Entry<String, Double>>() {
+        @Override
+        public Iterator<Entry<String, Double>> iterator() {
+          return new Iterator<Entry<String, Double>>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+              return next < positions.length;
+            }
+
+            @Override
+            public Entry<String, Double> next() {
+              if (next >= positions.length) {
+                throw new NoSuchElementException();
+              }
+              int position = positions[next++];
+              return new SimpleImmutableEntry<>(index.keys[position], index.values[position]);
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return positions.length;
+        }
+      };
+    }
+  }
+}
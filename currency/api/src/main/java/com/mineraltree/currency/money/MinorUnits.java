@@ -0,0 +1,148 @@
+package com.mineraltree.currency.money;
+
+import static com.mineraltree.utils.Ensure.verify;
+
+import com.google.common.math.LongMath;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The number of minor unit digits of each currency (ISO 4217): 2 for USD (cents), 0 for JPY, 3 for
+ * KWD. Amounts are handled as whole numbers of minor units, which is what makes conversions exact
+ * and the same everywhere. Looked up by {@link CurrencyCodes#indexOf code index}, so a lookup is an
+ * array read.
+ */
+public final class MinorUnits {
+
+  private static final int DEFAULT_DIGITS = 2;
+  /** Most digits allowed, so 10 to the power of any currency's digits fits a long with room */
+  static final int MAX_DIGITS = 9;
+
+  private static final String[] NO_MINOR_UNITS = {
+    "BIF", "CLP", "DJF", "GNF", "ISK", "JPY", "KMF", "KRW", "PYG", "RWF", "UGX", "UYI", "VND",
+    "VUV", "XAF", "XOF", "XPF"
+  };
+  private static final String[] THREE_DIGITS = {"BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND"};
+  private static final String[] FOUR_DIGITS = {"CLF", "UYW"};
+
+  private final byte[] digits = new byte[CurrencyCodes.SIZE];
+
+  /** The ISO 4217 minor units. Currencies it gives none for (XAU, say) have 2 digits. */
+  public MinorUnits() {
+    Arrays.fill(digits, (byte) DEFAULT_DIGITS);
+    set(NO_MINOR_UNITS, 0);
+    set(THREE_DIGITS, 3);
+    set(FOUR_DIGITS, 4);
+  }
+
+  /**
+   * The ISO 4217 minor units, with some currencies given other digits (BTC = 8, say).
+   *
+   * @param overrides digits by currency code
+   */
+  public MinorUnits(Map<String, Integer> overrides) {
+    this();
+    for (Map.Entry<String, Integer> override : overrides.entrySet()) {
+      int digits = override.getValue();
+      verify(digits, d -> d >= 0 && d <= MAX_DIGITS, "minor units", "Must be 0 to " + MAX_DIGITS);
+      this.digits[index(override.getKey())] = (byte) digits;
+    }
+  }
+
+  private void set(String[] codes, int count) {
+    for (String code : codes) {
+      digits[CurrencyCodes.indexOf(code)] = (byte) count;
+    }
+  }
+
+  /** The number of minor unit digits of a currency */
+  public int digits(String currency) {
+    return digits[index(currency)];
+  }
+
+  /**
+   * Parses a decimal amount ({@code "12.5"}, {@code "-3"}) of a currency into minor units (1250 and
+   * -300 for USD).
+   *
+   * @throws IllegalArgumentException if the amount is not a decimal number, has more decimal places
+   *     than the currency has minor units or is too large
+   */
+  public long parse(String amount, String currency) {
+    int scale = digits(currency);
+    int length = amount.length();
+    int start = length > 0 && (amount.charAt(0) == '-' || amount.charAt(0) == '+') ? 1 : 0;
+    boolean negative = start == 1 && amount.charAt(0) == '-';
+    long minor = 0;
+    int decimals = -1;
+    boolean anyDigit = false;
+    for (int i = start; i < length; i++) {
+      char c = amount.charAt(i);
+      if (c == '.' && decimals < 0) {
+        decimals = 0;
+        continue;
+      }
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("Amount must be a decimal number");
+      }
+      if (decimals >= 0 && ++decimals > scale) {
+        throw new IllegalArgumentException(
+            "Amount has more decimal places than " + currency + " has minor units");
+      }
+      anyDigit = true;
+      try {
+        minor = LongMath.checkedAdd(LongMath.checkedMultiply(minor, 10), c - '0');
+      } catch (ArithmeticException e) {
+        throw new IllegalArgumentException("Amount is too large");
+      }
+    }
+    if (!anyDigit) {
+      throw new IllegalArgumentException("Amount must be a decimal number");
+    }
+    try {
+      minor = LongMath.checkedMultiply(minor, LongMath.pow(10, scale - Math.max(decimals, 0)));
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Amount is too large");
+    }
+    return negative ? -minor : minor;
+  }
+
+  /**
+   * Formats an amount in minor units of a currency as a decimal amount, e.g. 1250 USD as "12.50"
+   */
+  public String format(long minor, String currency) {
+    int scale = digits(currency);
+    String unsigned = Long.toString(minor);
+    StringBuilder formatted = new StringBuilder(unsigned.length() + scale + 2);
+    int start = 0;
+    if (minor < 0) {
+      formatted.append('-');
+      start = 1;
+    }
+    int whole = unsigned.length() - start - scale;
+    if (whole <= 0) {
+      formatted.append('0');
+      if (scale > 0) {
+        formatted.append('.');
+        for (int i = whole; i < 0; i++) {
+          formatted.append('0');
+        }
+        formatted.append(unsigned, start, unsigned.length());
+      }
+    } else {
+      formatted.append(unsigned, start, start + whole);
+      if (scale > 0) {
+        formatted.append('.').append(unsigned, start + whole, unsigned.length());
+      }
+    }
+    return formatted.toString();
+  }
+
+  private static int index(String currency) {
+    int index = CurrencyCodes.indexOf(currency);
+    if (index < 0) {
+      throw new IllegalArgumentException("Currency must be a 3 letter string");
+    }
+    return index;
+  }
+}
@@ -0,0 +1,129 @@
+package com.mineraltree.currency.money;
+
+import static com.mineraltree.utils.Ensure.verify;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import com.google.common.math.LongMath;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import com.mineraltree.currency.dto.CurrencyRates;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Converts amounts between currencies exactly, so every service converting the same amount at the
+ * same rates gets the same result. Amounts are whole numbers of {@link MinorUnits minor units} in
+ * {@code long}s. A rate is taken to {@value #RATE_DIGITS} significant digits (more than any
+ * provider quotes) as a scaled {@code long}, and the converted amount is rounded to the minor units
+ * of the target currency with the converter's rounding mode.
+ *
+ * <p>Conversions are done in {@code long} arithmetic without allocating. Only one whose
+ * intermediate product does not fit in a {@code long} (around 90 million USD at a rate with all 9
+ * digits) is done with {@link BigDecimal}, which gives the same result.
+ */
+public final class MoneyConverter {
+
+  /** Significant digits a rate is taken to */
+  static final int RATE_DIGITS = 9;
+  /** Powers of 10 which are exact as doubles, for scaling rates */
+  private static final double[] POWERS = new double[23];
+
+  static {
+    POWERS[0] = 1;
+    for (int i = 1; i < POWERS.length; i++) {
+      POWERS[i] = POWERS[i - 1] * 10;
+    }
+  }
+
+  private final MinorUnits minorUnits;
+  private final RoundingMode rounding;
+
+  /** Converts with the ISO 4217 minor units, rounding half to even (banker's rounding) */
+  public MoneyConverter() {
+    this(new MinorUnits(), RoundingMode.HALF_EVEN);
+  }
+
+  /** @param rounding how converted amounts are rounded; anything but UNNECESSARY */
+  public MoneyConverter(MinorUnits minorUnits, RoundingMode rounding) {
+    this.minorUnits = verifyNotNull(minorUnits, "minorUnits");
+    this.rounding =
+        verify(
+            rounding,
+            r -> r != null && r != RoundingMode.UNNECESSARY,
+            "rounding",
+            "Must be a rounding mode other than UNNECESSARY");
+  }
+
+  public MinorUnits getMinorUnits() {
+    return minorUnits;
+  }
+
+  public RoundingMode getRounding() {
+    return rounding;
+  }
+
+  /**
+   * Converts an amount from the base currency of {@code rates} to {@code to}, at the rate in {@code
+   * rates}.
+   *
+   * @param amount in minor units of the base currency
+   * @return the amount in minor units of {@code to}
+   * @throws IllegalArgumentException if {@code rates} has no rate for {@code to}, or the converted
+   *     amount is too large for a long
+   */
+  public long convert(long amount, CurrencyRates rates, String to) {
+    String from = rates.getBaseCurrency();
+    String toKey = CurrencyCodes.key(to);
+    if (from.equals(toKey)) {
+      return amount;
+    }
+    Double rate = rates.getRates().get(toKey);
+    if (rate == null) {
+      throw new IllegalArgumentException("No rate from " + from + " to " + to);
+    }
+    return convert(amount, from, to, rate);
+  }
+
+  /**
+   * Converts an amount from one currency to another at {@code rate} (units of {@code to} for one
+   * unit of {@code from}).
+   *
+   * @param amount in minor units of {@code from}
+   * @return the amount in minor units of {@code to}
+   * @throws IllegalArgumentException if the rate is not a positive number from 1e-13 to 1e13, or
+   *     the converted amount is too large for a long
+   */
+  public long convert(long amount, String from, String to, double rate) {
+    if (!(rate >= 1e-13 && rate <= 1e13)) {
+      throw new IllegalArgumentException("Rate must be a positive number from 1e-13 to 1e13");
+    }
+    // The rate as unscaled * 10^-scale, with unscaled holding RATE_DIGITS digits
+    int scale = RATE_DIGITS - 1 - (int) Math.floor(StrictMath.log10(rate));
+    long unscaled =
+        scale >= 0 ? Math.round(rate * POWERS[scale]) : Math.round(rate / POWERS[-scale]);
+    // The result is amount * unscaled * 10^exponent, rounded to a whole number
+    int exponent = minorUnits.digits(to) - minorUnits.digits(from) - scale;
+    try {
+      long product = LongMath.checkedMultiply(amount, unscaled);
+      if (exponent >= 0) {
+        return LongMath.checkedMultiply(product, LongMath.checkedPow(10, exponent));
+      } else if (exponent >= -18) {
+        return LongMath.divide(product, LongMath.pow(10, -exponent), rounding);
+      }
+    } catch (ArithmeticException overflow) {
+      // Too large for long arithmetic, so done with BigDecimal below
+    }
+    return convertLarge(amount, unscaled, exponent);
+  }
+
+  private long convertLarge(long amount, long unscaled, int exponent) {
+    try {
+      return BigDecimal.valueOf(amount)
+          .multiply(BigDecimal.valueOf(unscaled))
+          .scaleByPowerOfTen(exponent)
+          .setScale(0, rounding)
+          .longValueExact();
+    } catch (ArithmeticException e) {
+      throw new IllegalArgumentException("Converted amount is too large");
+    }
+  }
+}
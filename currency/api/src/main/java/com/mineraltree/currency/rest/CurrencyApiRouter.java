@@ -3,37 +3,204 @@ package com.mineraltree.currency.rest;
 import static akka.event.Logging.DebugLevel;
 import static akka.event.Logging.ErrorLevel;
 import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.completeOK;
+import static akka.http.javadsl.server.Directives.encodeResponse;
+import static akka.http.javadsl.server.Directives.extractRequest;
+import static akka.http.javadsl.server.Directives.failWith;
 import static akka.http.javadsl.server.Directives.get;
 import static akka.http.javadsl.server.Directives.handleExceptions;
 import static akka.http.javadsl.server.Directives.logRequest;
+import static akka.http.javadsl.server.Directives.mapRouteResultFuture;
 import static akka.http.javadsl.server.Directives.onSuccess;
+import static akka.http.javadsl.server.Directives.optionalHeaderValueByName;
 import static akka.http.javadsl.server.Directives.parameter;
+import static akka.http.javadsl.server.Directives.parameterList;
+import static akka.http.javadsl.server.Directives.parameterOptional;
 import static akka.http.javadsl.server.Directives.pathPrefix;
+import static akka.http.javadsl.server.Directives.reject;
+import static akka.http.javadsl.server.Directives.respondWithHeader;
+import static akka.http.javadsl.server.Directives.route;
 import static com.mineraltree.utils.Ensure.verifyNotEmpty;
 import static com.mineraltree.utils.Ensure.verifyNotNull;
 
+import akka.NotUsed;
+import akka.http.javadsl.marshalling.sse.EventStreamMarshalling;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.ContentEncoding;
+import akka.http.javadsl.model.headers.HttpEncodings;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.javadsl.model.headers.RetryAfter;
+import akka.http.javadsl.model.sse.ServerSentEvent;
 import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.Route;
+import akka.stream.javadsl.Source;
 import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.api.rest.AdmissionControl;
 import com.mineraltree.api.rest.ApiRouter;
+import com.mineraltree.currency.DeadlineExceeded;
+import com.mineraltree.currency.ServiceNotReady;
 import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.api.RateDeltas;
+import com.mineraltree.currency.api.RateUpdates;
+import com.mineraltree.currency.dto.BatchCurrencyRates;
+import com.mineraltree.currency.dto.Conversion;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.money.MinorUnits;
+import com.mineraltree.currency.money.MoneyConverter;
+import com.mineraltree.utils.HttpHeaderKey;
+import com.mineraltree.utils.Trace;
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CurrencyApiRouter implements ApiRouter {
 
+  private static final Logger log = LoggerFactory.getLogger(CurrencyApiRouter.class);
+
+  /** Comment line sent to idle update streams so proxies don't close them as abandoned */
+  private static final Duration KEEP_ALIVE = Duration.ofSeconds(15);
+  /** Most bases a single update stream can follow */
+  private static final int MAX_STREAM_BASES = 50;
+  /** Most bases a single batch request can ask for */
+  private static final int MAX_BATCH_BASES = 50;
+
   private final CurrencyProcessor currency;
+  private final RateUpdates rateUpdates;
+  private final RateDeltas rateDeltas;
+  private final AdmissionControl admissionControl;
+  private final BooleanSupplier ready;
+  private final MoneyConverter moneyConverter;
+  private final Duration slowRequestThreshold;
+  private final Duration defaultDeadline;
+  private final Duration minDeadline;
+  private final Duration maxDeadline;
+  private final PrecompressedRates precompressed = new PrecompressedRates();
 
   /** The router which handles currency requests */
   private CurrencyApiRouter(Builder builder) {
     this.currency = builder.currency;
+    this.rateUpdates = builder.rateUpdates;
+    this.rateDeltas = builder.rateDeltas;
+    this.admissionControl = builder.admissionControl;
+    this.ready = builder.ready;
+    this.moneyConverter = builder.moneyConverter;
+    this.slowRequestThreshold = builder.slowRequestThreshold;
+    this.defaultDeadline = builder.defaultDeadline;
+    this.minDeadline = builder.minDeadline;
+    this.maxDeadline = builder.maxDeadline;
     verifyNotEmpty(currency, "CurrencyProcessor");
   }
 
   @Override
   public Route getRouter() {
-    return handleExceptions(
-        getExceptionHandler(),
-        () -> get(() -> logRequest("Currency Api Marker", DebugLevel(), this::handleConverter)));
+    return traced(
+        trace ->
+            handleExceptions(
+                getExceptionHandler(),
+                () ->
+                    admit(
+                        () ->
+                            get(
+                                () ->
+                                    logRequest(
+                                        "Currency Api Marker",
+                                        DebugLevel(),
+                                        () -> whenReady(() -> handleConverter(trace)))))));
+  }
+
+  /**
+   * Traces the request: continues the trace of the caller's {@link HttpHeaderKey#TRACEID} header
+   * (or starts a new one if it has none or an invalid one), returns the trace id in the same
+   * header, and logs the stages of a request which took longer than the slow request threshold. The
+   * trace has the deadline the caller gives in the {@link HttpHeaderKey#TIMEOUT} header, kept
+   * between the minimum and maximum deadlines, or else the default deadline.
+   */
+  private Route traced(Function<Trace, Route> inner) {
+    return optionalHeaderValueByName(
+        HttpHeaderKey.TRACEID.getKey(),
+        id ->
+            optionalHeaderValueByName(
+                HttpHeaderKey.TIMEOUT.getKey(),
+                timeout -> {
+                  Trace trace = Trace.start(id.orElse(null), deadline(timeout));
+                  return extractRequest(
+                      request ->
+                          respondWithHeader(
+                              RawHeader.create(HttpHeaderKey.TRACEID.getKey(), trace.getId()),
+                              () ->
+                                  mapRouteResultFuture(
+                                      result -> {
+                                        result.whenComplete(
+                                            (done, error) -> logIfSlow(request, trace));
+                                        return result;
+                                      },
+                                      () -> inner.apply(trace))));
+                }));
+  }
+
+  /**
+   * The time a request has: the timeout in milliseconds the caller sent, raised to the minimum and
+   * capped at the maximum; or the default if it sent none, or one which is not a number of
+   * milliseconds
+   */
+  private Duration deadline(Optional<String> timeout) {
+    long millis;
+    try {
+      millis = timeout.isPresent() ? Long.parseLong(timeout.get().trim()) : -1;
+    } catch (NumberFormatException e) {
+      millis = -1;
+    }
+    if (millis < 0) {
+      return defaultDeadline;
+    }
+    Duration requested = Duration.ofMillis(millis);
+    if (minDeadline != null && requested.compareTo(minDeadline) < 0) {
+      return minDeadline;
+    }
+    return maxDeadline != null && requested.compareTo(maxDeadline) > 0 ? maxDeadline : requested;
+  }
+
+  private void logIfSlow(HttpRequest request, Trace trace) {
+    long elapsed = trace.elapsedNanos();
+    if (slowRequestThreshold != null && elapsed > slowRequestThreshold.toNanos()) {
+      log.warn(
+          "Slow request {} {} [trace={}] took {}ms: {}",
+          request.method().value(),
+          request.getUri(),
+          trace.getId(),
+          elapsed / 1_000_000,
+          trace.breakdown());
+    }
+  }
+
+  /** Fails requests with {@link ServiceNotReady} until the service has started */
+  private Route whenReady(Supplier<Route> inner) {
+    return extractRequest(
+        request -> ready.getAsBoolean() ? inner.get() : failWith(new ServiceNotReady()));
+  }
+
+  private Route admit(Supplier<Route> inner) {
+    return admissionControl == null ? inner.get() : admissionControl.admit(inner);
   }
 
   private ExceptionHandler getExceptionHandler() {
@@ -45,6 +212,22 @@ public class CurrencyApiRouter implements ApiRouter {
                     "Bad Request",
                     ErrorLevel(),
                     () -> complete(StatusCodes.BAD_REQUEST, e.getMessage())))
+        .match(
+            ServiceNotReady.class,
+            e -> logRequest("Not Ready", DebugLevel(), CurrencyApiRouter::unavailable))
+        .match(
+            DeadlineExceeded.class,
+            e ->
+                logRequest(
+                    "Deadline Exceeded",
+                    ErrorLevel(),
+                    () -> complete(StatusCodes.GATEWAY_TIMEOUT, "Gateway Timeout")))
+        .match(
+            TimeoutException.class,
+            e -> logRequest("Timed Out", ErrorLevel(), CurrencyApiRouter::unavailable))
+        .match(
+            RejectedExecutionException.class,
+            e -> logRequest("Overloaded", ErrorLevel(), CurrencyApiRouter::unavailable))
         .matchAny(
             e ->
                 logRequest(
@@ -54,27 +237,315 @@ public class CurrencyApiRouter implements ApiRouter {
         .build();
   }
 
-  private Route handleConverter() {
+  private static Route unavailable() {
+    return complete(
+        HttpResponse.create()
+            .withStatus(StatusCodes.SERVICE_UNAVAILABLE)
+            .addHeader(RetryAfter.create(1L))
+            .withEntity("Service Unavailable"));
+  }
+
+  private Route handleConverter(Trace trace) {
     return logRequest(
         "currencyConverter",
         DebugLevel(),
-        () -> pathPrefix("currencyConverter", this::handleConversionRates));
+        () ->
+            pathPrefix(
+                "currencyConverter",
+                () ->
+                    route(
+                        handleConversionRates(trace),
+                        handleBatchConversionRates(trace),
+                        handleConvert(trace),
+                        handleRateUpdates())));
   }
 
-  private Route handleConversionRates() {
+  private Route handleConversionRates(Trace trace) {
     return logRequest(
         "allConversionRates",
         DebugLevel(),
-        () -> pathPrefix("allConversionRates", this::handleBase));
+        () ->
+            pathPrefix(
+                "allConversionRates",
+                () ->
+                    respondWithHeader(
+                        RawHeader.create("Vary", "Accept, Accept-Encoding"),
+                        () -> handleBase(trace))));
   }
 
-  private Route handleBase() {
+  /**
+   * Returns all the rates of the base, or with {@code sinceVersion} only the changes since the
+   * version of the rates the client already has. With {@code symbols=EUR,JPY} only the rates of
+   * those currencies are returned.
+   */
+  private Route handleBase(Trace trace) {
     return parameter(
         "base",
         base ->
-            (onSuccess(
-                currency.getCurrencyRates(base),
-                currencyObj -> complete(StatusCodes.OK, currencyObj, Marshal.marshaller()))));
+            parameterOptional(
+                "sinceVersion",
+                sinceVersion ->
+                    parameterOptional(
+                        "symbols",
+                        symbols -> {
+                          if (symbols.isPresent()) {
+                            if (sinceVersion.isPresent()) {
+                              throw new IllegalArgumentException(
+                                  "symbols cannot be combined with sinceVersion");
+                            }
+                            Set<String> wanted = parseSymbols(symbols.get());
+                            return onSuccess(
+                                currency.getCurrencyRates(base, trace),
+                                rates ->
+                                    encodeResponse(
+                                        () ->
+                                            complete(
+                                                StatusCodes.OK,
+                                                rates.withOnlySymbols(wanted),
+                                                Marshal.marshaller())));
+                          }
+                          if (sinceVersion.isPresent() && rateDeltas != null) {
+                            return onSuccess(
+                                rateDeltas.getCurrencyRatesSince(
+                                    base, parseVersion(sinceVersion.get()), trace),
+                                delta ->
+                                    encodeResponse(
+                                        () ->
+                                            complete(StatusCodes.OK, delta, Marshal.marshaller())));
+                          }
+                          return onSuccess(
+                              currency.getCurrencyRates(base, trace), this::completeRates);
+                        })));
+  }
+
+  /**
+   * Completes with all the rates of a base, compressed if the client accepts that. Gzipped JSON, by
+   * far the most common combination, is compressed once per version of the rates.
+   */
+  private Route completeRates(CurrencyRates rates) {
+    return extractRequest(
+        request -> {
+          if (PrecompressedRates.wanted(request)) {
+            return complete(
+                HttpResponse.create()
+                    .withEntity(
+                        HttpEntities.create(
+                            ContentTypes.APPLICATION_JSON, precompressed.gzippedJson(rates)))
+                    .addHeader(ContentEncoding.create(HttpEncodings.GZIP)));
+          }
+          return encodeResponse(() -> complete(StatusCodes.OK, rates, Marshal.marshaller()));
+        });
+  }
+
+  /**
+   * Returns the rates of several bases at once, given as {@code ?base=USD&base=EUR} or {@code
+   * ?base=USD,EUR}. The bases are looked up at the same time. A base which is invalid or whose
+   * rates cannot be had is reported in the response's {@code errors} rather than failing the
+   * request. As for a single base, {@code symbols} limits the rates returned of each base.
+   */
+  private Route handleBatchConversionRates(Trace trace) {
+    return pathPrefix(
+        "batchConversionRates",
+        () ->
+            parameterList(
+                "base",
+                params ->
+                    parameterOptional(
+                        "symbols",
+                        symbols ->
+                            onSuccess(
+                                getBatch(
+                                    splitBases(params),
+                                    symbols.map(CurrencyApiRouter::parseSymbols),
+                                    trace),
+                                batch ->
+                                    encodeResponse(
+                                        () ->
+                                            complete(
+                                                StatusCodes.OK, batch, Marshal.marshaller()))))));
+  }
+
+  private CompletionStage<BatchCurrencyRates> getBatch(
+      Set<String> bases, Optional<Set<String>> symbols, Trace trace) {
+    BatchCurrencyRates.Builder builder = new BatchCurrencyRates.Builder();
+    // By canonical key, so "usd" and "USD" are looked up once
+    Map<String, CompletableFuture<CurrencyRates>> lookups = new TreeMap<>();
+    for (String base : bases) {
+      String key = CurrencyCodes.key(base);
+      if (key == null) {
+        builder.addError(base, "Currency must be a 3 letter string");
+      } else {
+        lookups.computeIfAbsent(
+            key, k -> currency.getCurrencyRates(k, trace).toCompletableFuture());
+      }
+    }
+    return CompletableFuture.allOf(
+            lookups.values().stream()
+                .map(lookup -> lookup.handle((rates, error) -> null))
+                .toArray(CompletableFuture[]::new))
+        .thenApply(
+            done -> {
+              for (Map.Entry<String, CompletableFuture<CurrencyRates>> lookup :
+                  lookups.entrySet()) {
+                try {
+                  CurrencyRates rates = lookup.getValue().join();
+                  builder.addRates(
+                      symbols.isPresent() ? rates.withOnlySymbols(symbols.get()) : rates);
+                } catch (CompletionException e) {
+                  builder.addError(lookup.getKey(), describe(e.getCause()));
+                }
+              }
+              return builder.build();
+            });
+  }
+
+  /** What a client is told about a base which failed, matching the status it would get alone */
+  private static String describe(Throwable error) {
+    if (error instanceof IllegalArgumentException) {
+      return error.getMessage();
+    } else if (error instanceof DeadlineExceeded) {
+      return "Gateway Timeout";
+    } else if (error instanceof TimeoutException || error instanceof RejectedExecutionException) {
+      return "Service Unavailable";
+    }
+    return "Server Error";
+  }
+
+  private static Set<String> splitBases(List<String> params) {
+    Set<String> bases = new LinkedHashSet<>();
+    for (String param : params) {
+      for (String base : param.split(",")) {
+        if (!base.trim().isEmpty()) {
+          bases.add(base.trim());
+        }
+      }
+    }
+    if (bases.isEmpty() || bases.size() > MAX_BATCH_BASES) {
+      throw new IllegalArgumentException(
+          "Between 1 and " + MAX_BATCH_BASES + " base currencies must be given");
+    }
+    return bases;
+  }
+
+  /**
+   * Converts {@code amount} (a decimal number, with at most as many decimal places as {@code from}
+   * has minor units) from one currency to another at the current rates, with the service's {@link
+   * MoneyConverter}.
+   */
+  private Route handleConvert(Trace trace) {
+    if (moneyConverter == null) {
+      return reject();
+    }
+    return pathPrefix(
+        "convert",
+        () ->
+            parameter(
+                "from",
+                from ->
+                    parameter(
+                        "to",
+                        to ->
+                            parameter(
+                                "amount",
+                                amount -> {
+                                  MinorUnits units = moneyConverter.getMinorUnits();
+                                  long amountMinor = units.parse(amount, from);
+                                  String toKey = CurrencyCodes.key(to);
+                                  if (toKey == null) {
+                                    throw new IllegalArgumentException(
+                                        "Currency must be a 3 letter string");
+                                  }
+                                  return onSuccess(
+                                      currency.getCurrencyRates(from, trace),
+                                      rates ->
+                                          encodeResponse(
+                                              () ->
+                                                  complete(
+                                                      StatusCodes.OK,
+                                                      convert(amountMinor, rates, toKey),
+                                                      Marshal.marshaller())));
+                                }))));
+  }
+
+  private Conversion convert(long amountMinor, CurrencyRates rates, String to) {
+    MinorUnits units = moneyConverter.getMinorUnits();
+    String from = rates.getBaseCurrency();
+    long converted = moneyConverter.convert(amountMinor, rates, to);
+    Conversion.Builder builder = new Conversion.Builder();
+    builder.setAmount(from, amountMinor, units.format(amountMinor, from));
+    builder.setConverted(to, converted, units.format(converted, to));
+    builder.setRate(
+        from.equals(to) ? 1.0 : rates.getRates().get(to), rates.getProvider(), rates.getVersion());
+    return builder.build();
+  }
+
+  /** The quote currencies of a {@code symbols} parameter, as canonical keys */
+  private static Set<String> parseSymbols(String symbols) {
+    Set<String> keys = new TreeSet<>();
+    for (String symbol : symbols.split(",")) {
+      String key = CurrencyCodes.key(symbol.trim());
+      if (key == null) {
+        throw new IllegalArgumentException("Symbols must be 3 letter currency codes");
+      }
+      keys.add(key);
+    }
+    return keys;
+  }
+
+  private static long parseVersion(String version) {
+    try {
+      return Long.parseLong(version);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("sinceVersion must be a version number");
+    }
+  }
+
+  /**
+   * Streams rates as server-sent events: the current rates of each requested base ({@code rates}
+   * events), then the changes whenever they are updated ({@code delta} events). Bases are given as
+   * {@code ?base=USD&base=EUR} or {@code ?base=USD,EUR}.
+   */
+  private Route handleRateUpdates() {
+    if (rateUpdates == null) {
+      return reject();
+    }
+    return pathPrefix(
+        "rateUpdates",
+        () ->
+            parameterList(
+                "base",
+                params -> {
+                  Set<String> bases = parseBases(params);
+                  Source<ServerSentEvent, NotUsed> events =
+                      rateUpdates
+                          .subscribe(bases)
+                          .map(
+                              delta ->
+                                  ServerSentEvent.create(
+                                      Marshal.toJSON(delta),
+                                      delta.isFull() ? "rates" : "delta",
+                                      delta.getBaseCurrency()))
+                          .keepAlive(KEEP_ALIVE, ServerSentEvent::heartbeat);
+                  return completeOK(events, EventStreamMarshalling.toEventStream());
+                }));
+  }
+
+  private static Set<String> parseBases(List<String> params) {
+    Set<String> bases = new TreeSet<>();
+    for (String param : params) {
+      for (String base : param.split(",")) {
+        String key = CurrencyCodes.key(base.trim());
+        if (key == null) {
+          throw new IllegalArgumentException("Currency must be a 3 letter string");
+        }
+        bases.add(key);
+      }
+    }
+    if (bases.isEmpty() || bases.size() > MAX_STREAM_BASES) {
+      throw new IllegalArgumentException(
+          "Between 1 and " + MAX_STREAM_BASES + " base currencies must be given");
+    }
+    return bases;
   }
 
   /**
@@ -83,12 +554,80 @@ public class CurrencyApiRouter implements ApiRouter {
    */
   public static class Builder {
     private CurrencyProcessor currency = null;
+    private RateUpdates rateUpdates = null;
+    private RateDeltas rateDeltas = null;
+    private AdmissionControl admissionControl = null;
+    private BooleanSupplier ready = () -> true;
+    private MoneyConverter moneyConverter = null;
+    private Duration slowRequestThreshold = null;
+    private Duration defaultDeadline = null;
+    private Duration minDeadline = null;
+    private Duration maxDeadline = null;
 
     public Builder setCurrencyProcessor(CurrencyProcessor newCurrency) {
       this.currency = verifyNotNull(newCurrency, "Currency Processor");
       return this;
     }
 
+    /** Enables the {@code rateUpdates} stream. Without it only polling is available. */
+    public Builder setRateUpdates(RateUpdates newRateUpdates) {
+      this.rateUpdates = verifyNotNull(newRateUpdates, "Rate Updates");
+      return this;
+    }
+
+    /** Enables {@code sinceVersion} requests. Without it they are sent all the rates. */
+    public Builder setRateDeltas(RateDeltas newRateDeltas) {
+      this.rateDeltas = verifyNotNull(newRateDeltas, "Rate Deltas");
+      return this;
+    }
+
+    /**
+     * Sheds load the service cannot answer in good time. Without it every request is accepted, and
+     * waits for the rates for as long as it takes.
+     */
+    public Builder setAdmissionControl(AdmissionControl newAdmissionControl) {
+      this.admissionControl = verifyNotNull(newAdmissionControl, "Admission Control");
+      return this;
+    }
+
+    /**
+     * Answers requests with 503 while {@code newReady} is false, e.g. while the rates to preload
+     * are loading. Without it requests are always handled.
+     */
+    public Builder setReadiness(BooleanSupplier newReady) {
+      this.ready = verifyNotNull(newReady, "Readiness");
+      return this;
+    }
+
+    /** Enables the {@code convert} endpoint, which converts amounts with {@code newConverter} */
+    public Builder setMoneyConverter(MoneyConverter newConverter) {
+      this.moneyConverter = verifyNotNull(newConverter, "Money Converter");
+      return this;
+    }
+
+    /**
+     * Logs, with the time each stage took, every request which takes longer than {@code
+     * newThreshold}. Without it slow requests are not logged.
+     */
+    public Builder setSlowRequestThreshold(Duration newThreshold) {
+      this.slowRequestThreshold = verifyNotNull(newThreshold, "Slow Request Threshold");
+      return this;
+    }
+
+    /**
+     * Gives every request a deadline, after which it is answered with 504 and the work still to do
+     * for it is dropped. A caller may give its own timeout (in milliseconds) in the {@code
+     * X-MT-Timeout} header, which is raised to {@code newMin} and capped at {@code newMax}; others
+     * get {@code newDefault}. Without it requests have no deadline, and wait for the rates as long
+     * as the currency processor allows.
+     */
+    public Builder setDeadlines(Duration newDefault, Duration newMin, Duration newMax) {
+      this.defaultDeadline = verifyNotNull(newDefault, "Default Deadline");
+      this.minDeadline = verifyNotNull(newMin, "Min Deadline");
+      this.maxDeadline = verifyNotNull(newMax, "Max Deadline");
+      return this;
+    }
+
     /**
      * Creates the API router using the input provided by the various {@code set...} methods.
      *
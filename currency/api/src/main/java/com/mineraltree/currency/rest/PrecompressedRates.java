@@ -0,0 +1,118 @@
+package com.mineraltree.currency.rest;
+
+import akka.http.javadsl.coding.Coder;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.MediaRange;
+import akka.http.javadsl.model.MediaType;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.headers.Accept;
+import akka.http.javadsl.model.headers.AcceptEncoding;
+import akka.http.javadsl.model.headers.HttpEncoding;
+import akka.http.javadsl.model.headers.HttpEncodingRange;
+import akka.http.javadsl.model.headers.HttpEncodings;
+import akka.util.ByteString;
+import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.currency.dto.CurrencyRates;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The gzipped JSON of the current rates of each base. Rates only change when they are refreshed, so
+ * each version is compressed once, by the first request for it, and every later request is answered
+ * with the same bytes. Requests for any other format or encoding are marshalled and encoded as
+ * usual.
+ */
+class PrecompressedRates {
+
+  private final ConcurrentMap<String, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+  /** Whether the best response to {@code request} is gzipped JSON */
+  static boolean wanted(HttpRequest request) {
+    Optional<AcceptEncoding> acceptEncoding = request.getHeader(AcceptEncoding.class);
+    if (!acceptEncoding.isPresent()) {
+      return false;
+    }
+    float gzip = quality(acceptEncoding.get(), HttpEncodings.GZIP);
+    if (gzip <= 0 || gzip < quality(acceptEncoding.get(), HttpEncodings.DEFLATE)) {
+      return false;
+    }
+
+    // JSON is the default, and wins ties with the binary formats as it does in the marshaller
+    Optional<Accept> accept = request.getHeader(Accept.class);
+    if (!accept.isPresent()) {
+      return true;
+    }
+    float json = quality(accept.get(), MediaTypes.APPLICATION_JSON);
+    return json > 0
+        && json >= quality(accept.get(), Marshal.APPLICATION_SMILE)
+        && json >= quality(accept.get(), Marshal.APPLICATION_CBOR);
+  }
+
+  /** Returns the rates as gzipped JSON, compressing them only if this version is new */
+  ByteString gzippedJson(CurrencyRates rates) {
+    Snapshot snapshot = snapshots.get(rates.getBaseCurrency());
+    if (snapshot != null && snapshot.version == rates.getVersion()) {
+      return snapshot.gzipped;
+    }
+    // Concurrent first requests for a version wait for one of them to compress it
+    return snapshots.compute(
+            rates.getBaseCurrency(),
+            (base, current) ->
+                current != null && current.version == rates.getVersion()
+                    ? current
+                    : new Snapshot(
+                        rates.getVersion(), Coder.Gzip.encode(Marshal.toJSONBytes(rates))))
+        .gzipped;
+  }
+
+  /**
+   * The q-value of the most specific range matching {@code encoding} (the encoding itself rather
+   * than {@code *}), as RFC 7231 section 5.3 has it; or 0 if none matches
+   */
+  private static float quality(AcceptEncoding header, HttpEncoding encoding) {
+    float quality = 0;
+    int bestSpecificity = -1;
+    for (HttpEncodingRange range : header.getEncodings()) {
+      int specificity =
+          range instanceof akka.http.scaladsl.model.headers.HttpEncodingRange.One ? 1 : 0;
+      if (range.matches(encoding) && specificity > bestSpecificity) {
+        quality = range.qValue();
+        bestSpecificity = specificity;
+      }
+    }
+    return quality;
+  }
+
+  /**
+   * The q-value of the most specific range matching {@code mediaType} (the type itself rather than
+   * all subtypes of its main type, and those rather than all types); or 0 if none matches
+   */
+  private static float quality(Accept header, MediaType mediaType) {
+    float quality = 0;
+    int bestSpecificity = -1;
+    for (MediaRange range : header.getMediaRanges()) {
+      int specificity;
+      if (range instanceof akka.http.scaladsl.model.MediaRange.One) {
+        specificity = 2;
+      } else {
+        specificity = range.mainType().equals("*") ? 0 : 1;
+      }
+      if (range.matches(mediaType) && specificity > bestSpecificity) {
+        quality = range.qValue();
+        bestSpecificity = specificity;
+      }
+    }
+    return quality;
+  }
+
+  private static class Snapshot {
+    final long version;
+    final ByteString gzipped;
+
+    Snapshot(long version, ByteString gzipped) {
+      this.version = version;
+      this.gzipped = gzipped;
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package com.mineraltree.currency.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class CurrencyCodesTest {
+
+  @Test
+  void testKeysAreCanonical() {
+    assertSame("USD", CurrencyCodes.key("usd"));
+    assertSame(CurrencyCodes.key("eUr"), CurrencyCodes.key(new StringBuilder("EUR")));
+    assertEquals("ZZZ", CurrencyCodes.key("zzz"));
+    assertEquals(0, CurrencyCodes.indexOf("aaa"));
+    assertEquals(CurrencyCodes.SIZE - 1, CurrencyCodes.indexOf("ZZZ"));
+  }
+
+  @Test
+  void testInvalidCodes() {
+    assertNull(CurrencyCodes.key(null));
+    assertNull(CurrencyCodes.key("US"));
+    assertNull(CurrencyCodes.key("USDX"));
+    assertNull(CurrencyCodes.key("U$D"));
+    assertNull(CurrencyCodes.key("\u00dcSD"));
+  }
+}
@@ -0,0 +1,70 @@
+package com.mineraltree.currency.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.mineraltree.api.marshal.Marshal;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CurrencyRatesTest {
+
+  private static CurrencyRates rates() {
+    CurrencyRates.Builder builder = new CurrencyRates.Builder();
+    builder.setBaseCurrency("USD");
+    builder.setProvider("TEST");
+    builder.setVersion(7);
+    builder.addRate("EUR", 0.9);
+    builder.addRate("GBP", 0.8);
+    builder.addRate("JPY", 150.0);
+    builder.addRate("ZAR", 18.0);
+    return builder.build();
+  }
+
+  @Test
+  void testOnlySymbols() {
+    CurrencyRates subset = rates().withOnlySymbols(ImmutableList.of("ZAR", "EUR", "XXX"));
+
+    assertEquals(ImmutableMap.of("EUR", 0.9, "ZAR", 18.0), subset.getRates());
+    assertEquals(ImmutableList.of("EUR", "ZAR"), new ArrayList<>(subset.getRates().keySet()));
+    assertEquals("USD", subset.getBaseCurrency());
+    assertEquals(7, subset.getVersion());
+    assertTrue(rates().withOnlySymbols(ImmutableList.of("XXX")).getRates().isEmpty());
+
+    CurrencyRates repeated = rates().withOnlySymbols(ImmutableList.of("EUR", "eur", "EUR"));
+    assertEquals(ImmutableList.of("EUR"), new ArrayList<>(repeated.getRates().keySet()));
+    assertEquals(1, repeated.getRates().size());
+  }
+
+  @Test
+  void testOnlySymbolsSerializable() throws Exception {
+    CurrencyRates subset = rates().withOnlySymbols(ImmutableList.of("JPY", "GBP"));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(subset);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      CurrencyRates copy = (CurrencyRates) in.readObject();
+      assertEquals(ImmutableMap.of("GBP", 0.8, "JPY", 150.0), copy.getRates());
+    }
+  }
+
+  @Test
+  void testOnlySymbolsMarshalsAsRates() throws Exception {
+    CurrencyRates subset = rates().withOnlySymbols(ImmutableList.of("JPY", "GBP"));
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> json = Marshal.MAPPER.readValue(Marshal.toJSON(subset), Map.class);
+    assertEquals(ImmutableMap.of("GBP", 0.8, "JPY", 150.0), json.get("rates"));
+    assertEquals("USD", json.get("baseCurrency"));
+  }
+}
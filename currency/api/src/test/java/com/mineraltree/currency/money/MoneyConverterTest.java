@@ -0,0 +1,76 @@
+package com.mineraltree.currency.money;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.google.common.collect.ImmutableMap;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class MoneyConverterTest {
+
+  private final MoneyConverter converter = new MoneyConverter();
+
+  @Test
+  void testConvertsBetweenMinorUnits() {
+    // 12.34 USD at 150.25 JPY per USD is 1854.085 JPY, which JPY has no minor units for
+    assertEquals(1854, converter.convert(1234, "USD", "JPY", 150.25));
+    // 1000 JPY at 0.0066556 USD per JPY is 6.6556 USD
+    assertEquals(666, converter.convert(1000, "JPY", "USD", 0.0066556));
+    // 1.00 USD at 0.30712 KWD per USD, KWD having 3 digits
+    assertEquals(307, converter.convert(100, "USD", "kwd", 0.30712));
+    assertEquals(-1854, converter.convert(-1234, "USD", "JPY", 150.25));
+  }
+
+  @Test
+  void testRounding() {
+    // 1.00 USD at 0.125 is exactly half way between 0.12 and 0.13
+    assertEquals(12, converter.convert(100, "USD", "EUR", 0.125));
+    assertEquals(14, converter.convert(100, "USD", "EUR", 0.135));
+    MoneyConverter halfUp = new MoneyConverter(new MinorUnits(), RoundingMode.HALF_UP);
+    assertEquals(13, halfUp.convert(100, "USD", "EUR", 0.125));
+    assertEquals(-13, halfUp.convert(-100, "USD", "EUR", 0.125));
+    MoneyConverter floor = new MoneyConverter(new MinorUnits(), RoundingMode.FLOOR);
+    assertEquals(-13, floor.convert(-100, "USD", "EUR", 0.121));
+  }
+
+  /** Large amounts overflow long arithmetic and are converted with BigDecimal instead */
+  @Test
+  void testLargeAmountsMatchExactArithmetic() {
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      long amount = random.nextLong() / (1L << random.nextInt(40));
+      double rate =
+          BigDecimal.valueOf(random.nextInt(999_999_999) + 1, random.nextInt(12)).doubleValue();
+      BigDecimal exact =
+          BigDecimal.valueOf(amount)
+              .multiply(new BigDecimal(Double.toString(rate)))
+              .setScale(0, RoundingMode.HALF_EVEN);
+      if (exact.toBigInteger().bitLength() < 63) {
+        assertEquals(exact.longValueExact(), converter.convert(amount, "USD", "EUR", rate));
+      }
+    }
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> converter.convert(Long.MAX_VALUE / 2, "USD", "JPY", 1000));
+  }
+
+  @Test
+  void testParseAndFormat() {
+    MinorUnits units = new MinorUnits(ImmutableMap.of("BTC", 8));
+    assertEquals(1250, units.parse("12.5", "USD"));
+    assertEquals(-300, units.parse("-3", "usd"));
+    assertEquals(1500, units.parse("1500", "JPY"));
+    assertEquals(123_456_789, units.parse("1.23456789", "BTC"));
+    assertEquals("12.50", units.format(1250, "USD"));
+    assertEquals("-0.05", units.format(-5, "USD"));
+    assertEquals("1500", units.format(1500, "JPY"));
+    assertEquals("0.001", units.format(1, "KWD"));
+    assertThrows(IllegalArgumentException.class, () -> units.parse("1.005", "USD"));
+    assertThrows(IllegalArgumentException.class, () -> units.parse("1.5", "JPY"));
+    assertThrows(IllegalArgumentException.class, () -> units.parse("1e3", "USD"));
+    assertThrows(IllegalArgumentException.class, () -> units.parse("-", "USD"));
+  }
+}
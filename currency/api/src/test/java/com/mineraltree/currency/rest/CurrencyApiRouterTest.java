@@ -0,0 +1,235 @@
+package com.mineraltree.currency.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.http.javadsl.server.Route;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.api.rest.AdmissionControl;
+import com.mineraltree.currency.DeadlineExceeded;
+import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.utils.HttpHeaderKey;
+import com.mineraltree.utils.Trace;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+class CurrencyApiRouterTest {
+
+  private static final String RATES_URI = "/currencyConverter/allConversionRates?base=USD";
+
+  private final Map<String, AtomicInteger> lookups = new ConcurrentHashMap<>();
+  private ActorSystem system;
+  private Materializer materializer;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("router-test");
+    materializer = ActorMaterializer.create(system);
+  }
+
+  @AfterEach
+  void stopSystem() {
+    system.terminate();
+  }
+
+  @Test
+  void testBatchReportsFailedBasesInline() throws Exception {
+    Route route =
+        new CurrencyApiRouter.Builder().setCurrencyProcessor(this::lookUp).build().getRouter();
+
+    HttpResponse response =
+        run(
+            route,
+            HttpRequest.GET(
+                "/currencyConverter/batchConversionRates?base=usd,US,GBP&base=USD,CHF"
+                    + "&symbols=EUR,jpy"));
+    assertEquals(StatusCodes.OK, response.status());
+    JsonNode batch = Marshal.MAPPER.readTree(body(response));
+
+    assertEquals(ImmutableSet.of("USD"), Sets.newHashSet(batch.get("rates").fieldNames()));
+    JsonNode usd = batch.get("rates").get("USD");
+    assertEquals("USD", usd.get("baseCurrency").asText());
+    assertEquals(ImmutableSet.of("EUR", "JPY"), Sets.newHashSet(usd.get("rates").fieldNames()));
+    // "usd" and "USD" are the same base, looked up once
+    assertEquals(1, lookups.get("USD").get());
+
+    assertEquals(
+        ImmutableMap.of(
+            "US", "Currency must be a 3 letter string",
+            "GBP", "Server Error",
+            "CHF", "Could not find given currency's rates"),
+        Marshal.MAPPER.convertValue(batch.get("errors"), Map.class));
+  }
+
+  @Test
+  void testTraceIdEchoedIfValid() throws Exception {
+    Route route =
+        new CurrencyApiRouter.Builder().setCurrencyProcessor(this::lookUp).build().getRouter();
+
+    assertEquals("client-7.a", traceIdOf(run(route, ratesRequest("client-7.a"))));
+    String replaced = traceIdOf(run(route, ratesRequest("<script>alert(1)</script>")));
+    assertTrue(replaced.matches("[0-9a-f]+"), replaced);
+    String started = traceIdOf(run(route, HttpRequest.GET(RATES_URI)));
+    assertTrue(started.matches("[0-9a-f]+"), started);
+  }
+
+  @Test
+  void testSlowRequestLogged() throws Exception {
+    Logger logger = (Logger) LoggerFactory.getLogger(CurrencyApiRouter.class);
+    ListAppender<ILoggingEvent> logged = new ListAppender<>();
+    logged.start();
+    logger.addAppender(logged);
+    try {
+      Route route =
+          new CurrencyApiRouter.Builder()
+              .setCurrencyProcessor(this::lookUp)
+              .setSlowRequestThreshold(Duration.ZERO)
+              .build()
+              .getRouter();
+      assertEquals(StatusCodes.OK, run(route, ratesRequest("slow-1")).status());
+
+      // Logged as the route completes, just after the response is sent
+      long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+      while (logged.list.isEmpty() && System.nanoTime() < until) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, logged.list.size());
+      String message = logged.list.get(0).getFormattedMessage();
+      assertTrue(message.startsWith("Slow request GET " + RATES_URI), message);
+      assertTrue(message.contains("[trace=slow-1]"), message);
+    } finally {
+      logger.detachAppender(logged);
+    }
+  }
+
+  @Test
+  void testOwnDeadlineMissesDoNotCutLimit() throws Exception {
+    AdmissionControl admission =
+        new AdmissionControl(
+            ConfigFactory.parseString(
+                "limit { initial = 4, min = 1, max = 4, latency-target = 1 s, backoff-ratio = 0.5 }"
+                    + "\nclients { header = \"\", rate = 1, burst = 1, max-clients = 10 }"));
+    List<Duration> deadlines = new CopyOnWriteArrayList<>();
+    CurrencyProcessor overdue =
+        new CurrencyProcessor() {
+          @Override
+          public CompletionStage<CurrencyRates> getCurrencyRates(String base) {
+            return getCurrencyRates(base, Trace.start());
+          }
+
+          @Override
+          public CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
+            deadlines.add(trace.remaining());
+            CompletableFuture<CurrencyRates> result = new CompletableFuture<>();
+            result.completeExceptionally(new DeadlineExceeded());
+            return result;
+          }
+        };
+    Route route =
+        new CurrencyApiRouter.Builder()
+            .setCurrencyProcessor(overdue)
+            .setAdmissionControl(admission)
+            .setDeadlines(Duration.ofSeconds(10), Duration.ofSeconds(1), Duration.ofSeconds(30))
+            .build()
+            .getRouter();
+
+    HttpRequest noTime =
+        HttpRequest.GET(RATES_URI).addHeader(RawHeader.create(HttpHeaderKey.TIMEOUT.getKey(), "0"));
+    for (int i = 0; i < 20; i++) {
+      assertEquals(StatusCodes.GATEWAY_TIMEOUT, run(route, noTime).status());
+    }
+    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (admission.getInFlight() > 0 && System.nanoTime() < until) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, admission.getInFlight());
+    assertEquals(4, admission.getLimit());
+    // A timeout of 0 is raised to the minimum deadline
+    assertEquals(20, deadlines.size());
+    for (Duration deadline : deadlines) {
+      assertTrue(deadline.toMillis() > 0, deadline.toString());
+    }
+  }
+
+  /** Has rates for USD only; fails GBP as a provider error and CHF as a base without rates */
+  private CompletionStage<CurrencyRates> lookUp(String base) {
+    lookups.computeIfAbsent(base, b -> new AtomicInteger()).incrementAndGet();
+    CompletableFuture<CurrencyRates> result = new CompletableFuture<>();
+    if (base.equals("GBP")) {
+      result.completeExceptionally(new RuntimeException("Provider returned 500"));
+    } else if (base.equals("CHF")) {
+      result.completeExceptionally(
+          new IllegalArgumentException("Could not find given currency's rates"));
+    } else {
+      result.complete(usdRates());
+    }
+    return result;
+  }
+
+  private static CurrencyRates usdRates() {
+    CurrencyRates.Builder builder = new CurrencyRates.Builder();
+    builder.setBaseCurrency("USD");
+    builder.setProvider("FIXER");
+    builder.setVersion(1L);
+    builder.addRate("EUR", 0.91);
+    builder.addRate("GBP", 0.78);
+    builder.addRate("JPY", 151.2);
+    return builder.build();
+  }
+
+  private static HttpRequest ratesRequest(String traceId) {
+    return HttpRequest.GET(RATES_URI)
+        .addHeader(RawHeader.create(HttpHeaderKey.TRACEID.getKey(), traceId));
+  }
+
+  private static String traceIdOf(HttpResponse response) {
+    return response.getHeader(HttpHeaderKey.TRACEID.getKey()).get().value();
+  }
+
+  private HttpResponse run(Route route, HttpRequest request) throws Exception {
+    return Source.single(request)
+        .via(route.flow(system, materializer))
+        .runWith(Sink.head(), materializer)
+        .toCompletableFuture()
+        .get(5, TimeUnit.SECONDS);
+  }
+
+  private String body(HttpResponse response) throws Exception {
+    return response
+        .entity()
+        .toStrict(5_000, materializer)
+        .toCompletableFuture()
+        .get(5, TimeUnit.SECONDS)
+        .getData()
+        .utf8String();
+  }
+}
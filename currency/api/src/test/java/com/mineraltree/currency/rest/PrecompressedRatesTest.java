@@ -0,0 +1,79 @@
+package com.mineraltree.currency.rest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.http.javadsl.model.HttpHeader;
+import akka.http.javadsl.model.HttpRequest;
+import akka.util.ByteString;
+import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.currency.dto.CurrencyRates;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.Test;
+
+class PrecompressedRatesTest {
+
+  @Test
+  void testWantedOnlyForGzippedJson() {
+    assertFalse(PrecompressedRates.wanted(request(null, null)));
+    assertTrue(PrecompressedRates.wanted(request(null, "gzip")));
+    assertTrue(PrecompressedRates.wanted(request(null, "*")));
+    assertFalse(PrecompressedRates.wanted(request(null, "gzip;q=0")));
+    assertFalse(PrecompressedRates.wanted(request(null, "gzip;q=0.5, deflate")));
+    assertFalse(PrecompressedRates.wanted(request(null, "br")));
+    // The most specific range counts, not the highest q-value
+    assertFalse(PrecompressedRates.wanted(request(null, "gzip;q=0, *;q=1")));
+    assertTrue(PrecompressedRates.wanted(request(null, "gzip, *;q=0")));
+
+    assertTrue(PrecompressedRates.wanted(request("application/json", "gzip")));
+    assertTrue(PrecompressedRates.wanted(request("*/*", "gzip")));
+    // JSON wins ties with the binary formats
+    assertTrue(PrecompressedRates.wanted(request("application/json, application/cbor", "gzip")));
+    assertFalse(PrecompressedRates.wanted(request("application/cbor", "gzip")));
+    assertFalse(PrecompressedRates.wanted(request("application/json;q=0, */*", "gzip")));
+    assertFalse(PrecompressedRates.wanted(request("application/json;q=0, application/*", "gzip")));
+    assertTrue(PrecompressedRates.wanted(request("application/json, */*;q=0", "gzip")));
+    assertFalse(
+        PrecompressedRates.wanted(
+            request("application/json;q=0.5, application/x-jackson-smile", "gzip")));
+  }
+
+  @Test
+  void testEachVersionCompressedOnce() throws IOException {
+    PrecompressedRates precompressed = new PrecompressedRates();
+    ByteString first = precompressed.gzippedJson(rates(1, 0.91));
+    assertSame(first, precompressed.gzippedJson(rates(1, 0.91)));
+    assertEquals(
+        Marshal.MAPPER.readTree(Marshal.toJSONBytes(rates(1, 0.91)).toArray()),
+        Marshal.MAPPER.readTree(new GZIPInputStream(new ByteArrayInputStream(first.toArray()))));
+
+    ByteString second = precompressed.gzippedJson(rates(2, 0.93));
+    assertNotSame(first, second);
+    assertSame(second, precompressed.gzippedJson(rates(2, 0.93)));
+  }
+
+  private static HttpRequest request(String accept, String acceptEncoding) {
+    HttpRequest request = HttpRequest.GET("/currencyConverter/allConversionRates?base=USD");
+    if (accept != null) {
+      request = request.addHeader(HttpHeader.parse("Accept", accept));
+    }
+    if (acceptEncoding != null) {
+      request = request.addHeader(HttpHeader.parse("Accept-Encoding", acceptEncoding));
+    }
+    return request;
+  }
+
+  private static CurrencyRates rates(long version, double eur) {
+    CurrencyRates.Builder builder = new CurrencyRates.Builder();
+    builder.setBaseCurrency("USD");
+    builder.setProvider("FIXER");
+    builder.setVersion(version);
+    builder.addRate("EUR", eur);
+    return builder.build();
+  }
+}
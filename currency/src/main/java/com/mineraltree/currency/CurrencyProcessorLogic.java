@@ -1,45 +1,114 @@
 package com.mineraltree.currency;
 
 import akka.actor.ActorRef;
+import akka.pattern.AskTimeoutException;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
 import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.api.RateDeltas;
 import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+import com.mineraltree.utils.Trace;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import scala.compat.java8.FutureConverters;
 import scala.concurrent.ExecutionContext;
 import scala.concurrent.Future;
 
-public class CurrencyProcessorLogic implements CurrencyProcessor {
+public class CurrencyProcessorLogic implements CurrencyProcessor, RateDeltas {
 
   private final ActorRef rateSupplier;
   private final ExecutionContext executionContext;
+  private final Timeout askTimeout;
 
   public CurrencyProcessorLogic(ActorRef rateSupplier, ExecutionContext executionContext) {
+    this(rateSupplier, executionContext, Duration.ofSeconds(10));
+  }
+
+  /**
+   * @param askTimeout how long to wait for the rate supplier before failing a request whose trace
+   *     has no deadline. A request with a deadline waits until the deadline.
+   */
+  public CurrencyProcessorLogic(
+      ActorRef rateSupplier, ExecutionContext executionContext, Duration askTimeout) {
     this.rateSupplier = rateSupplier;
     this.executionContext = executionContext;
+    this.askTimeout = Timeout.apply(askTimeout.toMillis(), TimeUnit.MILLISECONDS);
   }
 
   @Override
   public CompletionStage<CurrencyRates> getCurrencyRates(String base) {
-    GetRatesRequest request = new GetRatesRequest(base);
+    return getCurrencyRates(base, Trace.start());
+  }
+
+  @Override
+  public CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
+    return ask(new GetRatesRequest(base, true, null, trace), CurrencyRates.class);
+  }
+
+  @Override
+  public CompletionStage<CurrencyRatesDelta> getCurrencyRatesSince(String base, long version) {
+    return getCurrencyRatesSince(base, version, Trace.start());
+  }
+
+  @Override
+  public CompletionStage<CurrencyRatesDelta> getCurrencyRatesSince(
+      String base, long version, Trace trace) {
+    return ask(new GetRatesRequest(base, true, version, trace), CurrencyRatesDelta.class);
+  }
 
-    Future<CurrencyRates> currencyRatesFuture =
-        Patterns.ask(rateSupplier, request, Timeout.apply(10, TimeUnit.SECONDS))
+  /**
+   * Asks the rate supplier, recording the whole wait for the answer as the {@code ask} span. A
+   * request with a deadline fails with {@link DeadlineExceeded} once the deadline passes, at once
+   * if it already has.
+   */
+  private <T> CompletionStage<T> ask(GetRatesRequest request, Class<T> expected) {
+    Trace trace = request.getTrace();
+    if (trace.isOverdue()) {
+      CompletableFuture<T> overdue = new CompletableFuture<>();
+      overdue.completeExceptionally(new DeadlineExceeded());
+      return overdue;
+    }
+    Timeout timeout =
+        trace.hasDeadline()
+            ? Timeout.apply(trace.remaining().toNanos(), TimeUnit.NANOSECONDS)
+            : askTimeout;
+    Future<T> ratesFuture =
+        Patterns.ask(rateSupplier, request, timeout)
             .map(
                 o -> {
-                  if (o instanceof CurrencyRates) {
-                    return (CurrencyRates) o;
+                  if (expected.isInstance(o)) {
+                    return expected.cast(o);
                   } else {
                     throw new RuntimeException(
-                        "Invalid return type from rate supplier. Expected CurrencyRates but received "
+                        "Invalid return type from rate supplier. Expected "
+                            + expected.getSimpleName()
+                            + " but received "
                             + o.getClass().getName()
                             + ": "
                             + o.toString());
                   }
                 },
                 executionContext);
-    return FutureConverters.toJava(currencyRatesFuture);
+    long start = request.getSentNanos();
+    CompletionStage<T> answer =
+        FutureConverters.toJava(ratesFuture)
+            .whenComplete(
+                (rates, error) -> trace.span(error == null ? "ask" : "ask failed", start));
+    if (!trace.hasDeadline()) {
+      return answer;
+    }
+    return answer.handle(
+        (rates, error) -> {
+          if (error == null) {
+            return rates;
+          }
+          Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+          throw new CompletionException(
+              cause instanceof AskTimeoutException ? new DeadlineExceeded() : cause);
+        });
   }
 }
@@ -3,50 +3,293 @@ package com.mineraltree.currency;
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.cluster.sharding.ClusterSharding;
+import akka.cluster.sharding.ClusterShardingSettings;
+import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableMap;
+import com.mineraltree.api.rest.AdmissionControl;
 import com.mineraltree.api.rest.ApiRouter;
 import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.api.RateUpdates;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import com.mineraltree.currency.money.MinorUnits;
+import com.mineraltree.currency.money.MoneyConverter;
+import com.mineraltree.currency.providers.BaseProvider;
 import com.mineraltree.currency.providers.FixerProvider;
 import com.mineraltree.currency.providers.OpenExchangeProvider;
+import com.mineraltree.currency.providers.ProviderQuotas;
+import com.mineraltree.currency.providers.RecordedPayloads;
+import com.mineraltree.currency.providers.ReplayProvider;
 import com.mineraltree.currency.rest.CurrencyApiRouter;
+import com.mineraltree.currency.service.ClusteredRateSource;
+import com.mineraltree.currency.service.PartitionedRateCache;
 import com.mineraltree.currency.service.RateBaseSelector;
 import com.mineraltree.currency.service.RateCache;
+import com.mineraltree.currency.service.RateOwner;
+import com.mineraltree.currency.service.RateUpdateHub;
 import com.mineraltree.http.RequestUtils;
 import com.mineraltree.secret.SecretService;
 import com.mineraltree.service.ServiceMain;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigObject;
+import com.typesafe.config.ConfigValue;
+import java.math.RoundingMode;
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class CurrencyServiceMain extends ServiceMain {
 
+  private static final Logger log = LoggerFactory.getLogger(CurrencyServiceMain.class);
+
+  /** The readiness condition of the preload-rates bases having loaded */
+  private static final String RATES_PRELOADED = "rates-preloaded";
+
+  private CompletableFuture<Supplier<Config>> secrets;
+  // The 'providers' and 'refresh-every' settings in use, to tell which changes to take on
+  private ConfigValue appliedProviders;
+  private Duration appliedRefreshInterval;
+
   public CurrencyServiceMain() {
     super("currency-service");
   }
 
-  protected void initializeServers(ActorSystem system) {
-    RequestUtils requestUtils = new RequestUtils(system);
-    SecretService.initializeVault(config);
+  @Override
+  protected void prepare() {
+    readiness.require(RATES_PRELOADED);
+    // A call to the vault (AWS Secrets Manager), made while the actor system starts. The secrets
+    // are refreshed in the background from then on.
+    secrets =
+        startup.async(
+            "secrets",
+            () -> {
+              SecretService.initializeVault(config);
+              Supplier<Config> withSecrets =
+                  SecretService.withSecrets(config, config.getString("currency-key-vault"));
+              withSecrets.get();
+              return withSecrets;
+            });
+  }
 
-    Config secretConfig =
-        SecretService.getVault().getSecrets(config.getString("currency-key-vault"));
-    Config fullConfig = config.withFallback(secretConfig);
+  protected void initializeServers(ActorSystem system) {
+    RequestUtils requestUtils = new RequestUtils(system, dispatcherId("upstream"));
+    String cacheDispatcher = dispatcherId("cache");
+    String apiDispatcher = dispatcherId("api");
 
     List<? extends ConfigObject> providerConfigList = config.getObjectList("providers");
+    startup.track("connection-warm-up", warmUpConnections(providerConfigList, requestUtils));
+
+    Supplier<Config> fullConfig = secrets.join();
+
+    ProviderQuotas quotas = new ProviderQuotas(config.getConfig("quota"));
+    metrics.register("providers", quotas::snapshot);
+    Duration refreshInterval = config.getDuration("refresh-every");
+    List<CurrencyProcessor> allProviders =
+        buildProviders(providerConfigList, requestUtils, fullConfig, quotas);
+    // The settings applied, which a rate owner of a cluster takes as it starts on this node
+    AtomicReference<SettingsChanged> applied =
+        new AtomicReference<>(new SettingsChanged(allProviders, refreshInterval));
+    int partitions = config.getInt("cache-partitions");
+    Props baseLoader;
+    if (config.getBoolean("cluster.enabled")) {
+      ActorRef ownerRegion =
+          ClusterSharding.get(system)
+              .start(
+                  "rate-owner",
+                  RateOwner.mkProps(applied::get).withDispatcher(cacheDispatcher),
+                  ClusterShardingSettings.create(system),
+                  RateOwner.messageExtractor(config.getInt("cluster.number-of-shards")));
+      baseLoader =
+          ClusteredRateSource.mkProps(ownerRegion, partitions > 1).withDispatcher(cacheDispatcher);
+    } else {
+      baseLoader = RateBaseSelector.mkProps(allProviders).withDispatcher(cacheDispatcher);
+    }
+    Props cacheProps =
+        RateCache.mkProps(baseLoader, refreshInterval, config.getInt("delta-history"))
+            .withDispatcher(cacheDispatcher);
+    if (partitions > 1) {
+      cacheProps = PartitionedRateCache.mkProps(cacheProps, partitions);
+    }
+    ActorRef mainLoader = system.actorOf(cacheProps, "top-cache");
+
+    CurrencyProcessorLogic newCurrency =
+        new CurrencyProcessorLogic(
+            mainLoader,
+            system.dispatchers().lookup(apiDispatcher),
+            config.getDuration("ask-timeout"));
+    RateUpdates rateUpdates =
+        new RateUpdateHub(
+            system,
+            ActorMaterializer.create(
+                ActorMaterializerSettings.create(system).withDispatcher(apiDispatcher), system),
+            newCurrency,
+            config.getConfig("rate-updates"));
+    CurrencyApiRouter.Builder routerBuilder =
+        new CurrencyApiRouter.Builder()
+            .setCurrencyProcessor(newCurrency)
+            .setRateDeltas(newCurrency)
+            .setRateUpdates(rateUpdates)
+            .setReadiness(readiness::isReady)
+            .setMoneyConverter(moneyConverter(config.getConfig("conversion")))
+            .setSlowRequestThreshold(config.getDuration("tracing.slow-request"))
+            .setDeadlines(
+                config.getDuration("ask-timeout"),
+                config.getDuration("min-deadline"),
+                config.getDuration("max-deadline"));
+    if (config.getBoolean("admission.enabled")) {
+      AdmissionControl admission = new AdmissionControl(config.getConfig("admission"));
+      routerBuilder.setAdmissionControl(admission);
+      metrics.register(
+          "admission",
+          () ->
+              ImmutableMap.of("limit", admission.getLimit(), "inFlight", admission.getInFlight()));
+    }
+    ApiRouter router = routerBuilder.build();
+    startApiServer(router, config.getConfig("server"));
+
+    RatePreloader preloader =
+        new RatePreloader(
+            mainLoader,
+            system.scheduler(),
+            system.dispatcher(),
+            config.getDuration("ask-timeout"),
+            config.getDuration("preload-retry"));
+    // Not ready until every preload-rates base has loaded
+    startup
+        .track("preload", preloader.preload(config.getStringList("preload-rates")))
+        .thenRun(() -> readiness.complete(RATES_PRELOADED));
 
+    Consumer<SettingsChanged> applySettings =
+        settings -> {
+          applied.set(settings);
+          mainLoader.tell(settings, ActorRef.noSender());
+          // The rate owners of a cluster are not behind the cache; each takes the change from the
+          // node it runs on
+          system.eventStream().publish(settings);
+        };
+    appliedProviders = config.getValue("providers");
+    appliedRefreshInterval = refreshInterval;
+    Set<String> preloaded = new HashSet<>(config.getStringList("preload-rates"));
+    watchConfig(
+        changed ->
+            changeSettings(
+                changed, requestUtils, fullConfig, quotas, applySettings, preloaded, preloader));
+  }
+
+  /**
+   * Takes on the providers, refresh interval and preload-rates bases of a changed configuration,
+   * without a restart and keeping the cached rates. A configuration with any of these invalid is
+   * logged and ignored. The providers are rebuilt, and the loaders given them, only if the
+   * providers or the refresh interval changed. Newly added preload-rates bases are loaded; a base
+   * removed from the list stays cached.
+   */
+  private void changeSettings(
+      Config changed,
+      RequestUtils requestUtils,
+      Supplier<Config> fullConfig,
+      ProviderQuotas quotas,
+      Consumer<SettingsChanged> applySettings,
+      Set<String> preloaded,
+      RatePreloader preloader) {
+    ConfigValue providerSettings;
+    List<CurrencyProcessor> providers = null;
+    Duration refreshInterval;
+    List<String> preload;
+    try {
+      providerSettings = changed.getValue("providers");
+      refreshInterval = changed.getDuration("refresh-every");
+      preload = changed.getStringList("preload-rates");
+      if (!providerSettings.equals(appliedProviders)
+          || !refreshInterval.equals(appliedRefreshInterval)) {
+        providers =
+            buildProviders(changed.getObjectList("providers"), requestUtils, fullConfig, quotas);
+        if (providers.isEmpty()) {
+          throw new IllegalArgumentException("At least one provider must be configured");
+        }
+      }
+      if (refreshInterval.isNegative() || refreshInterval.isZero()) {
+        throw new IllegalArgumentException("refresh-every must be positive");
+      }
+      for (String base : preload) {
+        if (!CurrencyCodes.isValid(base)) {
+          throw new IllegalArgumentException("Invalid preload-rates currency " + base);
+        }
+      }
+    } catch (RuntimeException e) {
+      log.warn("Changed configuration ignored: {}", e.getMessage());
+      return;
+    }
+
+    if (providers != null) {
+      log.info(
+          "Applying changed configuration: {} provider(s), refresh every {}",
+          providers.size(),
+          refreshInterval);
+      applySettings.accept(new SettingsChanged(providers, refreshInterval));
+      appliedProviders = providerSettings;
+      appliedRefreshInterval = refreshInterval;
+    }
+
+    List<String> added = new ArrayList<>();
+    for (String base : preload) {
+      if (preloaded.add(CurrencyCodes.key(base))) {
+        added.add(base);
+      }
+    }
+    if (!added.isEmpty()) {
+      preloader.preload(added);
+    }
+  }
+
+  /** Creates the converter configured by 'conversion' with 'rounding' and 'minor-units' */
+  private static MoneyConverter moneyConverter(Config conversion) {
+    Map<String, Integer> minorUnits = new HashMap<>();
+    Config overrides = conversion.getConfig("minor-units");
+    for (String currency : overrides.root().keySet()) {
+      minorUnits.put(currency, overrides.getInt(currency));
+    }
+    return new MoneyConverter(
+        new MinorUnits(minorUnits), conversion.getEnum(RoundingMode.class, "rounding"));
+  }
+
+  /**
+   * Creates the providers configured by 'providers', in the order to try them. Each counts its
+   * calls against the 'budget' configured for it in its quota window, if any, and records its
+   * responses in the 'record-to' directory, if given.
+   */
+  private static List<CurrencyProcessor> buildProviders(
+      List<? extends ConfigObject> providerConfigList,
+      RequestUtils requestUtils,
+      Supplier<Config> fullConfig,
+      ProviderQuotas quotas) {
     Builder<CurrencyProcessor> providerListBuilder = ImmutableList.builder();
     for (ConfigObject providerConfig : providerConfigList) {
+      BaseProvider provider;
       switch (providerConfig.get("type").unwrapped().toString()) {
         case "FIXER":
-          providerListBuilder.add(
-              new FixerProvider(providerConfig.toConfig(), requestUtils, fullConfig));
+          provider = new FixerProvider(providerConfig.toConfig(), requestUtils, fullConfig);
           break;
 
         case "OPENEXCHANGE":
-          providerListBuilder.add(
-              new OpenExchangeProvider(providerConfig.toConfig(), requestUtils, fullConfig));
+          provider = new OpenExchangeProvider(providerConfig.toConfig(), requestUtils, fullConfig);
+          break;
+
+        case ReplayProvider.TYPE:
+          provider = new ReplayProvider(providerConfig.toConfig());
           break;
 
         default:
@@ -55,24 +298,29 @@ public class CurrencyServiceMain extends ServiceMain {
                   + providerConfig.get("type").unwrapped()
                   + "' is not recognized.");
       }
+      Config settings = providerConfig.toConfig();
+      long budget = settings.hasPath("budget") ? settings.getLong("budget") : 0;
+      provider.setQuota(quotas.forProvider(provider.getProviderName(), budget));
+      if (settings.hasPath("record-to")) {
+        provider.setRecorder(new RecordedPayloads(Paths.get(settings.getString("record-to"))));
+      }
+      providerListBuilder.add(provider);
     }
-    Duration refreshInterval = config.getDuration("refresh-every");
-    List<CurrencyProcessor> allProviders = providerListBuilder.build();
-    Props baseLoader = RateBaseSelector.mkProps(allProviders);
-    ActorRef mainLoader =
-        system.actorOf(RateCache.mkProps(baseLoader, refreshInterval), "top-cache");
-
-    preloadRates(config, mainLoader);
-
-    CurrencyProcessor newCurrency = new CurrencyProcessorLogic(mainLoader, system.dispatcher());
-    ApiRouter router = new CurrencyApiRouter.Builder().setCurrencyProcessor(newCurrency).build();
-    startApiServer(router, config.getConfig("server"));
+    return providerListBuilder.build();
   }
 
-  private void preloadRates(Config config, ActorRef loader) {
-    config.getStringList("preload-rates").stream()
-        .map(b -> new GetRatesRequest(b, false))
-        .forEach(r -> loader.tell(r, ActorRef.noSender()));
+  /**
+   * Connects to every provider while the secrets are fetched and the actors started. Providers
+   * without an endpoint (REPLAY) have nothing to connect to.
+   */
+  private static CompletableFuture<Void> warmUpConnections(
+      List<? extends ConfigObject> providerConfigs, RequestUtils requestUtils) {
+    return CompletableFuture.allOf(
+        providerConfigs.stream()
+            .map(ConfigObject::toConfig)
+            .filter(c -> c.hasPath("endpoint"))
+            .map(c -> requestUtils.warmUp(c.getString("endpoint")).toCompletableFuture())
+            .toArray(CompletableFuture[]::new));
   }
 
   public static void main(String[] args) {
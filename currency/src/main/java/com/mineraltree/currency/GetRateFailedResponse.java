@@ -1,14 +1,31 @@
 package com.mineraltree.currency;
 
-public class GetRateFailedResponse {
+import java.io.Serializable;
+
+public class GetRateFailedResponse implements Serializable {
+  private static final long serialVersionUID = 1L;
 
   private final String base;
+  private final boolean abandoned;
 
   public GetRateFailedResponse(String base) {
+    this(base, false);
+  }
+
+  /**
+   * @param abandoned the lookup was given up because the request it was for passed its deadline,
+   *     rather than because the providers failed
+   */
+  public GetRateFailedResponse(String base, boolean abandoned) {
     this.base = base;
+    this.abandoned = abandoned;
   }
 
   public String getBase() {
     return base;
   }
+
+  public boolean isAbandoned() {
+    return abandoned;
+  }
 }
@@ -1,17 +1,38 @@
 package com.mineraltree.currency;
 
-public class GetRatesRequest {
+import com.mineraltree.utils.Trace;
+import java.io.Serializable;
+
+public class GetRatesRequest implements Serializable {
+  private static final long serialVersionUID = 1L;
 
   private final String base;
   private final boolean expectResponse;
+  /** When set, only the changes since this version are wanted (a CurrencyRatesDelta reply) */
+  private final Long sinceVersion;
+  /** The trace of the request this is for; lost when the request is sent to another node */
+  private final transient Trace trace;
+  /** When the request was made, by System.nanoTime() */
+  private final transient long sentNanos = System.nanoTime();
 
   public GetRatesRequest(String base) {
     this(base, true);
   }
 
   public GetRatesRequest(String base, boolean expectResponse) {
+    this(base, expectResponse, null);
+  }
+
+  public GetRatesRequest(String base, boolean expectResponse, Long sinceVersion) {
+    this(base, expectResponse, sinceVersion, Trace.start());
+  }
+
+  /** @param trace records the time each stage of handling the request takes */
+  public GetRatesRequest(String base, boolean expectResponse, Long sinceVersion, Trace trace) {
     this.base = base;
     this.expectResponse = expectResponse;
+    this.sinceVersion = sinceVersion;
+    this.trace = trace;
   }
 
   public String getBase() {
@@ -21,4 +42,21 @@ public class GetRatesRequest {
   public boolean responseExpected() {
     return this.expectResponse;
   }
+
+  public Long getSinceVersion() {
+    return this.sinceVersion;
+  }
+
+  /**
+   * The trace to record the stages of handling the request in. A request received from another node
+   * has lost its trace and gets a new one, which nothing reads.
+   */
+  public Trace getTrace() {
+    return trace != null ? trace : Trace.start();
+  }
+
+  /** When the request was made, by System.nanoTime(); for timing how long it waited in mailboxes */
+  public long getSentNanos() {
+    return sentNanos;
+  }
 }
@@ -0,0 +1,66 @@
+package com.mineraltree.currency;
+
+import akka.actor.ActorRef;
+import akka.actor.Scheduler;
+import akka.pattern.PatternsCS;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.ExecutionContext;
+
+/**
+ * Loads the rates of bases the service should have before it is ready. A base which fails to load
+ * (every provider down, say, or the secrets wrong) is asked for again after the retry delay, until
+ * it loads.
+ */
+class RatePreloader {
+
+  private static final Logger log = LoggerFactory.getLogger(RatePreloader.class);
+
+  private final ActorRef loader;
+  private final Scheduler scheduler;
+  private final ExecutionContext executor;
+  private final long askTimeoutMillis;
+  private final Duration retryDelay;
+
+  RatePreloader(
+      ActorRef loader,
+      Scheduler scheduler,
+      ExecutionContext executor,
+      Duration askTimeout,
+      Duration retryDelay) {
+    this.loader = loader;
+    this.scheduler = scheduler;
+    this.executor = executor;
+    this.askTimeoutMillis = askTimeout.toMillis();
+    this.retryDelay = retryDelay;
+  }
+
+  /** Loads the given bases. Completes once every one of them has loaded. */
+  CompletableFuture<Void> preload(List<String> bases) {
+    return CompletableFuture.allOf(
+        bases.stream().map(this::load).toArray(CompletableFuture[]::new));
+  }
+
+  private CompletableFuture<Void> load(String base) {
+    CompletableFuture<Void> loaded = new CompletableFuture<>();
+    attempt(base, loaded);
+    return loaded;
+  }
+
+  private void attempt(String base, CompletableFuture<Void> loaded) {
+    PatternsCS.ask(loader, new GetRatesRequest(base), askTimeoutMillis)
+        .whenComplete(
+            (rates, error) -> {
+              if (error == null) {
+                loaded.complete(null);
+                return;
+              }
+              log.warn(
+                  "Preloading rates for {} failed, retrying in {}: {}", base, retryDelay, error);
+              scheduler.scheduleOnce(retryDelay, () -> attempt(base, loaded), executor);
+            });
+  }
+}
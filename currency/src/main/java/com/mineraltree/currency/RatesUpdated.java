@@ -0,0 +1,25 @@
+package com.mineraltree.currency;
+
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+
+/** Published on the actor system's event stream whenever the rate cache accepts new rates */
+public class RatesUpdated {
+
+  private final CurrencyRates rates;
+  private final CurrencyRatesDelta delta;
+
+  public RatesUpdated(CurrencyRates rates, CurrencyRatesDelta delta) {
+    this.rates = rates;
+    this.delta = delta;
+  }
+
+  public CurrencyRates getRates() {
+    return rates;
+  }
+
+  /** The changes from the previous rates of the base (full if there were none) */
+  public CurrencyRatesDelta getDelta() {
+    return delta;
+  }
+}
@@ -1,19 +1,35 @@
 package com.mineraltree.currency;
 
 public class RetryRatesRequest {
-  private final String base;
+  private final GetRatesRequest request;
   private final Integer attemptNum;
+  /** When the first retry was scheduled, by System.nanoTime() */
+  private final long waitingSince;
 
-  public RetryRatesRequest(String base, Integer attemptNum) {
-    this.base = base;
+  public RetryRatesRequest(GetRatesRequest request, Integer attemptNum) {
+    this(request, attemptNum, System.nanoTime());
+  }
+
+  public RetryRatesRequest(GetRatesRequest request, Integer attemptNum, long waitingSince) {
+    this.request = request;
     this.attemptNum = attemptNum;
+    this.waitingSince = waitingSince;
+  }
+
+  /** The request being retried */
+  public GetRatesRequest getRequest() {
+    return this.request;
   }
 
   public String getBase() {
-    return this.base;
+    return this.request.getBase();
   }
 
   public Integer getAttemptNum() {
     return this.attemptNum;
   }
+
+  public long getWaitingSince() {
+    return this.waitingSince;
+  }
 }
@@ -0,0 +1,30 @@
+package com.mineraltree.currency;
+
+import com.mineraltree.currency.api.CurrencyProcessor;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Sent to the rate cache when the configuration changes while the service runs, and published on
+ * the node's event stream for the rate owners of a cluster. The cache, loaders and owners take on
+ * the new providers and refresh interval in place, keeping the rates they hold.
+ */
+public class SettingsChanged {
+
+  private final List<CurrencyProcessor> providers;
+  private final Duration refreshInterval;
+
+  public SettingsChanged(List<CurrencyProcessor> providers, Duration refreshInterval) {
+    this.providers = providers;
+    this.refreshInterval = refreshInterval;
+  }
+
+  /** The providers to fetch rates from, in the order to try them */
+  public List<CurrencyProcessor> getProviders() {
+    return providers;
+  }
+
+  public Duration getRefreshInterval() {
+    return refreshInterval;
+  }
+}
@@ -1,5 +1,7 @@
 package com.mineraltree.currency.providers;
 
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
 import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpHeader;
 import akka.http.javadsl.model.HttpRequest;
@@ -12,49 +14,124 @@ import com.mineraltree.currency.dto.CurrencyRates;
 import com.mineraltree.currency.dto.CurrencyRates.Builder;
 import com.mineraltree.http.RequestUtils;
 import com.mineraltree.http.WrappedResponse;
+import com.mineraltree.utils.Trace;
 import com.typesafe.config.Config;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.concurrent.CompletionStage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public abstract class BaseProvider implements CurrencyProcessor {
+  private static final Logger log = LoggerFactory.getLogger(BaseProvider.class);
+  private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
   private RequestUtils requestUtils;
 
   private final Uri baseUri;
   private final String providerName;
+  private ProviderQuota quota;
+  private RecordedPayloads recorder;
+  private final Duration timeout;
 
+  /**
+   * @param config the provider's entry in 'providers'. Its 'endpoint' is required, except by a
+   *     provider which does not fetch rates over HTTP.
+   */
   public BaseProvider(Config config, RequestUtils requestUtils) {
     this.requestUtils = requestUtils;
-    this.baseUri = Uri.create(config.getString("endpoint"));
+    this.baseUri = config.hasPath("endpoint") ? Uri.create(config.getString("endpoint")) : null;
     this.providerName = config.getString("type");
+    this.timeout = config.hasPath("timeout") ? config.getDuration("timeout") : DEFAULT_TIMEOUT;
+    this.quota = ProviderQuota.unlimited(providerName);
   }
 
   @Override
   public CompletionStage<CurrencyRates> getCurrencyRates(String base) {
+    return getCurrencyRates(base, Trace.start());
+  }
+
+  /**
+   * Fetches the rates, recording the call in {@code trace}. The provider is a third party, so the
+   * trace headers are not sent to it. The call has the provider's 'timeout', or the trace's
+   * deadline if later: the rates are cached for every request for the base, so the call is not cut
+   * short by a caller with little time.
+   */
+  @Override
+  public CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
     HttpRequest request = createRequest(base);
+    quota.record();
     return requestUtils
-        .singleRequest(request)
+        .singleRequest(request, trace.withDeadlineAtLeast(timeout), false)
         .thenApply(WrappedResponse::assertStatusSuccess)
         .thenCompose(r -> r.extractPayload(ObjectNode.class))
-        .thenApply(r -> readResponseJson(base, r));
+        .thenApply(
+            r -> {
+              CurrencyRates rates = readResponseJson(base, r);
+              record(base, r);
+              return rates;
+            });
+  }
+
+  /** Saves each response read successfully to {@code recorder}, to be replayed later */
+  public void setRecorder(RecordedPayloads recorder) {
+    this.recorder = verifyNotNull(recorder, "recorder");
+  }
+
+  private void record(String base, ObjectNode responseTree) {
+    if (recorder == null) {
+      return;
+    }
+    try {
+      recorder.write(base, responseTree);
+    } catch (IOException | RuntimeException e) {
+      // A recording is a by-product; failing to make one must not fail the lookup
+      log.warn("Cannot record the {} response for {}: {}", providerName, base, e.toString());
+    }
   }
 
   public String getProviderName() {
     return providerName;
   }
 
-  private CurrencyRates readResponseJson(String baseCurrency, ObjectNode responseTree) {
+  /** The calls made to the provider, against its budget. Unlimited unless set. */
+  public ProviderQuota getQuota() {
+    return quota;
+  }
+
+  public void setQuota(ProviderQuota quota) {
+    this.quota = verifyNotNull(quota, "quota");
+  }
+
+  protected CurrencyRates readResponseJson(String baseCurrency, ObjectNode responseTree) {
+    // The fetch time makes a version which every node of a cluster agrees on
+    return readResponseJson(baseCurrency, responseTree, System.currentTimeMillis());
+  }
+
+  protected CurrencyRates readResponseJson(
+      String baseCurrency, ObjectNode responseTree, long version) {
     try {
       CurrencyRates.Builder rateBuilder = new Builder();
       rateBuilder.setBaseCurrency(baseCurrency);
       rateBuilder.setProvider(providerName);
+      rateBuilder.setVersion(version);
       extractRatesFromResponse(rateBuilder, responseTree);
       return rateBuilder.build();
     } catch (RuntimeException ex) {
       throw new RuntimeException(
-          "Failed to read JSON response from " + baseUri + " with base currency " + baseCurrency,
+          "Failed to read JSON response from "
+              + getSource()
+              + " with base currency "
+              + baseCurrency,
           ex);
     }
   }
 
+  /** Where the provider's responses come from, for messages */
+  protected String getSource() {
+    return String.valueOf(baseUri);
+  }
+
   protected abstract void extractRatesFromResponse(
       CurrencyRates.Builder builder, ObjectNode responseTree);
 
@@ -7,14 +7,25 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mineraltree.currency.dto.CurrencyRates.Builder;
 import com.mineraltree.http.RequestUtils;
 import com.typesafe.config.Config;
+import java.util.function.Supplier;
 
 public class FixerProvider extends RateMapProvider {
 
-  private final String accessKey;
+  private final Supplier<Config> serviceConfig;
 
   public FixerProvider(Config config, RequestUtils requestUtils, Config serviceConfig) {
+    this(config, requestUtils, () -> serviceConfig);
+  }
+
+  /**
+   * @param serviceConfig supplies the service configuration with the current secrets, read for each
+   *     request so a rotated key is used without a restart
+   */
+  public FixerProvider(Config config, RequestUtils requestUtils, Supplier<Config> serviceConfig) {
     super(config, requestUtils);
-    accessKey = serviceConfig.getString("fixer.access-key");
+    this.serviceConfig = serviceConfig;
+    // Fail at startup rather than on the first request if the key is missing
+    serviceConfig.get().getString("fixer.access-key");
   }
 
   /**
@@ -50,6 +61,7 @@ public class FixerProvider extends RateMapProvider {
 
   @Override
   protected Query getRequestParameters() {
-    return Query.create(Pair.create("access_key", accessKey));
+    return Query.create(
+        Pair.create("access_key", serviceConfig.get().getString("fixer.access-key")));
   }
 }
@@ -6,14 +6,26 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mineraltree.currency.dto.CurrencyRates.Builder;
 import com.mineraltree.http.RequestUtils;
 import com.typesafe.config.Config;
+import java.util.function.Supplier;
 
 public class OpenExchangeProvider extends RateMapProvider {
 
-  private final String openExchangeAppId;
+  private final Supplier<Config> serviceConfig;
 
   public OpenExchangeProvider(Config config, RequestUtils requestUtils, Config serviceConfig) {
+    this(config, requestUtils, () -> serviceConfig);
+  }
+
+  /**
+   * @param serviceConfig supplies the service configuration with the current secrets, read for each
+   *     request so a rotated key is used without a restart
+   */
+  public OpenExchangeProvider(
+      Config config, RequestUtils requestUtils, Supplier<Config> serviceConfig) {
     super(config, requestUtils);
-    openExchangeAppId = serviceConfig.getString("openexchange.app-id");
+    this.serviceConfig = serviceConfig;
+    // Fail at startup rather than on the first request if the key is missing
+    serviceConfig.get().getString("openexchange.app-id");
   }
 
   @Override
@@ -24,6 +36,7 @@ public class OpenExchangeProvider extends RateMapProvider {
 
   @Override
   protected Query getRequestParameters() {
-    return Query.create(Pair.create("app_id", openExchangeAppId));
+    return Query.create(
+        Pair.create("app_id", serviceConfig.get().getString("openexchange.app-id")));
   }
 }
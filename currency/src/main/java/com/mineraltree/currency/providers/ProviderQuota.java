@@ -0,0 +1,203 @@
+package com.mineraltree.currency.providers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts the calls made to a provider in the current quota window (a calendar month, for most
+ * plans) against the provider's budget of calls for the window, so the rate loaders can spend the
+ * budget carefully as it runs low: a provider past {@code preferOthersAt} of its budget is tried
+ * only after providers with more to spare, one past {@code newBasesUntil} fetches no new bases
+ * (only refreshes of bases already loaded), and one whose budget is spent is not called at all. A
+ * provider without a budget is never limited.
+ */
+public class ProviderQuota {
+
+  /**
+   * Extra calls allowed ahead of an even pace through the window, as a share of the budget, before
+   * refreshes are stretched
+   */
+  private static final double PACE_GRACE = 0.02;
+  /** Most a refresh interval is stretched by */
+  private static final int MAX_STRETCH = 24;
+
+  private final String provider;
+  private final Window window;
+  private final Clock clock;
+  private final double preferOthersAt;
+  private final double newBasesUntil;
+  private volatile long budget;
+  private Instant windowStart;
+  private long used;
+
+  /** Unlimited: counts calls but never limits them */
+  public static ProviderQuota unlimited(String provider) {
+    return new ProviderQuota(provider, 0, Window.MONTH, 1, 1, Clock.systemUTC());
+  }
+
+  /**
+   * @param budget calls allowed in each window, 0 for no limit
+   * @param preferOthersAt share of the budget after which the provider is tried after others
+   * @param newBasesUntil share of the budget after which the provider fetches no new bases
+   */
+  ProviderQuota(
+      String provider,
+      long budget,
+      Window window,
+      double preferOthersAt,
+      double newBasesUntil,
+      Clock clock) {
+    this.provider = provider;
+    this.budget = budget;
+    this.window = window;
+    this.preferOthersAt = preferOthersAt;
+    this.newBasesUntil = newBasesUntil;
+    this.clock = clock;
+    this.windowStart = window.start(clock.instant());
+  }
+
+  public String getProvider() {
+    return provider;
+  }
+
+  /** Counts a call to the provider */
+  public synchronized void record() {
+    roll();
+    used++;
+  }
+
+  /** The calls made in the current window */
+  public synchronized long getUsed() {
+    roll();
+    return used;
+  }
+
+  public long getBudget() {
+    return budget;
+  }
+
+  void setBudget(long budget) {
+    this.budget = budget;
+  }
+
+  /** The share of the budget used so far in the window, 0 if there is no budget */
+  public double usage() {
+    long currentBudget = budget;
+    return currentBudget > 0 ? (double) getUsed() / currentBudget : 0;
+  }
+
+  public boolean isExhausted() {
+    return budget > 0 && usage() >= 1;
+  }
+
+  /** Whether the provider should be tried before those which are not */
+  public boolean isPreferred() {
+    return usage() < preferOthersAt;
+  }
+
+  /** Whether the provider may be called for a base not loaded before */
+  public boolean allowsNewBases() {
+    return usage() < newBasesUntil;
+  }
+
+  /**
+   * How many times longer than usual refreshes should take, so the budget lasts the window: 1 while
+   * the calls are within an even pace through the window, and as many times as they are ahead of it
+   * otherwise.
+   */
+  public synchronized int refreshStretch() {
+    roll();
+    long currentBudget = budget;
+    if (currentBudget <= 0) {
+      return 1;
+    }
+    Instant now = clock.instant();
+    Instant end = window.end(windowStart);
+    double elapsed =
+        (double) Duration.between(windowStart, now).toMillis()
+            / Duration.between(windowStart, end).toMillis();
+    double expected = currentBudget * (elapsed + PACE_GRACE);
+    return (int) Math.min(MAX_STRETCH, Math.max(1, Math.ceil(used / expected)));
+  }
+
+  /** The counts as they are persisted and exposed as metrics */
+  public synchronized Map<String, Object> snapshot() {
+    roll();
+    Map<String, Object> snapshot = new LinkedHashMap<>();
+    snapshot.put("used", used);
+    snapshot.put("budget", budget);
+    snapshot.put("windowStart", windowStart.toString());
+    snapshot.put("windowEnd", window.end(windowStart).toString());
+    snapshot.put("refreshStretch", refreshStretch());
+    return snapshot;
+  }
+
+  synchronized Instant getWindowStart() {
+    roll();
+    return windowStart;
+  }
+
+  /** Takes on the calls counted before a restart, if they were made in the current window */
+  synchronized void restore(Instant savedWindowStart, long savedUsed) {
+    roll();
+    if (savedWindowStart.equals(windowStart)) {
+      used += savedUsed;
+    }
+  }
+
+  /** Starts counting again if a new window has begun */
+  private void roll() {
+    Instant start = window.start(clock.instant());
+    if (!start.equals(windowStart)) {
+      windowStart = start;
+      used = 0;
+    }
+  }
+
+  /** The periods the budget applies to */
+  abstract static class Window {
+
+    /** Calendar months, in UTC */
+    static final Window MONTH =
+        new Window() {
+          @Override
+          Instant start(Instant now) {
+            return ZonedDateTime.ofInstant(now, ZoneOffset.UTC)
+                .withDayOfMonth(1)
+                .truncatedTo(ChronoUnit.DAYS)
+                .toInstant();
+          }
+
+          @Override
+          Instant end(Instant start) {
+            return ZonedDateTime.ofInstant(start, ZoneOffset.UTC).plusMonths(1).toInstant();
+          }
+        };
+
+    /** Windows of a fixed length, counted from the epoch */
+    static Window of(Duration length) {
+      long millis = length.toMillis();
+      return new Window() {
+        @Override
+        Instant start(Instant now) {
+          return Instant.ofEpochMilli(Math.floorDiv(now.toEpochMilli(), millis) * millis);
+        }
+
+        @Override
+        Instant end(Instant start) {
+          return start.plusMillis(millis);
+        }
+      };
+    }
+
+    abstract Instant start(Instant now);
+
+    abstract Instant end(Instant start);
+  }
+}
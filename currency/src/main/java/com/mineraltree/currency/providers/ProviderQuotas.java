@@ -0,0 +1,142 @@
+package com.mineraltree.currency.providers;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.mineraltree.currency.providers.ProviderQuota.Window;
+import com.typesafe.config.Config;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ProviderQuota} of each provider, configured by the 'quota' block. The counts are saved
+ * to a local file every 'persist-every' and when the service stops, and read back when it starts,
+ * so a restart does not forget the calls already made in the window.
+ *
+ * <p>The counts are this node's own, so the nodes of a cluster each limit themselves to an equal
+ * share of a provider's budget: the budget divided by 'nodes'.
+ */
+public class ProviderQuotas {
+
+  private static final Logger log = LoggerFactory.getLogger(ProviderQuotas.class);
+
+  private final Window window;
+  private final double preferOthersAt;
+  private final double newBasesUntil;
+  private final int nodes;
+  private final Path stateFile;
+  private final Clock clock;
+  private final Map<String, ProviderQuota> quotas = new ConcurrentHashMap<>();
+  private final Properties saved = new Properties();
+
+  /** @param settings the 'quota' configuration block */
+  public ProviderQuotas(Config settings) {
+    this(settings, Clock.systemUTC());
+  }
+
+  ProviderQuotas(Config settings, Clock clock) {
+    this.window =
+        "month".equals(settings.getString("window"))
+            ? Window.MONTH
+            : Window.of(settings.getDuration("window"));
+    this.preferOthersAt = settings.getDouble("prefer-others-at");
+    this.newBasesUntil = settings.getDouble("new-bases-until");
+    this.nodes = settings.getInt("nodes");
+    if (nodes < 1) {
+      throw new IllegalArgumentException("quota.nodes must be at least 1");
+    }
+    String file = settings.getString("state-file");
+    this.stateFile = file.isEmpty() ? null : Paths.get(file);
+    this.clock = clock;
+
+    if (stateFile != null) {
+      load();
+      ScheduledExecutorService saver =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactoryBuilder().setNameFormat("quota-saver").setDaemon(true).build());
+      long every = settings.getDuration("persist-every").toMillis();
+      saver.scheduleWithFixedDelay(this::save, every, every, TimeUnit.MILLISECONDS);
+      Runtime.getRuntime().addShutdownHook(new Thread(this::save, "quota-saver-shutdown"));
+    }
+  }
+
+  /**
+   * Returns the quota of a provider, creating it if this is the first time. Providers of the same
+   * name share their quota, so it survives the providers being reconfigured.
+   *
+   * @param planBudget calls the provider's plan allows in each window, 0 for no limit. This node's
+   *     quota is its share of them.
+   */
+  public ProviderQuota forProvider(String provider, long planBudget) {
+    long budget = planBudget > 0 ? Math.max(1, planBudget / nodes) : 0;
+    ProviderQuota quota =
+        quotas.computeIfAbsent(
+            provider,
+            name -> {
+              ProviderQuota created =
+                  new ProviderQuota(name, budget, window, preferOthersAt, newBasesUntil, clock);
+              String savedStart = saved.getProperty(name + ".window-start");
+              String savedUsed = saved.getProperty(name + ".used");
+              if (savedStart != null && savedUsed != null) {
+                created.restore(Instant.parse(savedStart), Long.parseLong(savedUsed));
+              }
+              return created;
+            });
+    quota.setBudget(budget);
+    return quota;
+  }
+
+  /** The quota of each provider, by provider */
+  public Map<String, Object> snapshot() {
+    Map<String, Object> snapshot = new TreeMap<>();
+    for (ProviderQuota quota : quotas.values()) {
+      snapshot.put(quota.getProvider(), quota.snapshot());
+    }
+    return snapshot;
+  }
+
+  private void load() {
+    if (!Files.exists(stateFile)) {
+      return;
+    }
+    try (Reader reader = Files.newBufferedReader(stateFile, StandardCharsets.UTF_8)) {
+      saved.load(reader);
+    } catch (IOException | IllegalArgumentException e) {
+      log.warn("Cannot read provider call counts from {}, counting from 0: {}", stateFile, e);
+    }
+  }
+
+  /** Writes the counts to a new file which then replaces the old, so a crash never leaves half */
+  synchronized void save() {
+    Properties state = new Properties();
+    for (ProviderQuota quota : quotas.values()) {
+      state.setProperty(quota.getProvider() + ".window-start", quota.getWindowStart().toString());
+      state.setProperty(quota.getProvider() + ".used", Long.toString(quota.getUsed()));
+    }
+    try {
+      Path temp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+      try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+        state.store(writer, "Provider calls in the current quota window");
+      }
+      Files.move(
+          temp, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      log.warn("Cannot save provider call counts to {}: {}", stateFile, e.toString());
+    }
+  }
+}
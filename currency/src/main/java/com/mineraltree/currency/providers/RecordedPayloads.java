@@ -0,0 +1,137 @@
+package com.mineraltree.currency.providers;
+
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provider responses recorded on disk: a directory with the latest payload of each base currency,
+ * as the provider sent it, in {@code <BASE>.json}. Files are memory-mapped when first read and
+ * mapped again only when a new recording replaces them, so replaying a payload costs no more than
+ * parsing it. A recording is as old as its file: the time it was last written is when it was
+ * recorded.
+ */
+public class RecordedPayloads {
+
+  private static final Logger log = LoggerFactory.getLogger(RecordedPayloads.class);
+
+  private final Path directory;
+  private final Map<String, Mapped> mapped = new ConcurrentHashMap<>();
+
+  public RecordedPayloads(Path directory) {
+    this.directory = verifyNotNull(directory, "directory");
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Reads the latest recording of {@code base}
+   *
+   * @throws IllegalArgumentException if nothing was recorded for the base
+   * @throws UncheckedIOException if the recording cannot be read
+   */
+  public Recording read(String base) {
+    String key = keyOf(base);
+    Path file = directory.resolve(key + ".json");
+    try {
+      FileTime modified = Files.getLastModifiedTime(file);
+      Mapped current = mapped.get(key);
+      if (current == null || !current.modified.equals(modified)) {
+        current = new Mapped(modified, map(file));
+        mapped.put(key, current);
+        log.info(
+            "Replaying the {} recording made {} ago",
+            key,
+            Duration.between(modified.toInstant(), Instant.now()));
+      }
+      JsonNode payload =
+          Marshal.MAPPER.readTree(new ByteBufferBackedInputStream(current.bytes.duplicate()));
+      if (!(payload instanceof ObjectNode)) {
+        throw new IOException("Recording is not a JSON object");
+      }
+      return new Recording((ObjectNode) payload, modified.toInstant());
+    } catch (NoSuchFileException e) {
+      throw new IllegalArgumentException("No recording of " + base + " in " + directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read the recording " + file, e);
+    }
+  }
+
+  /**
+   * Records {@code payload} as the latest of {@code base}. It is written to a new file which then
+   * replaces the old, so a reader never sees half a recording.
+   */
+  public void write(String base, ObjectNode payload) throws IOException {
+    Path file = directory.resolve(keyOf(base) + ".json");
+    Files.createDirectories(directory);
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(temp, Marshal.MAPPER.writeValueAsBytes(payload));
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static String keyOf(String base) {
+    String key = CurrencyCodes.key(base);
+    if (key == null) {
+      throw new IllegalArgumentException("Currency must be a 3 letter string");
+    }
+    return key;
+  }
+
+  private static ByteBuffer map(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /** A recorded payload, and when it was recorded */
+  public static class Recording {
+    private final ObjectNode payload;
+    private final Instant recordedAt;
+
+    Recording(ObjectNode payload, Instant recordedAt) {
+      this.payload = payload;
+      this.recordedAt = recordedAt;
+    }
+
+    public ObjectNode getPayload() {
+      return payload;
+    }
+
+    public Instant getRecordedAt() {
+      return recordedAt;
+    }
+  }
+
+  private static class Mapped {
+    final FileTime modified;
+    final ByteBuffer bytes;
+
+    Mapped(FileTime modified, ByteBuffer bytes) {
+      this.modified = modified;
+      this.bytes = bytes;
+    }
+  }
+}
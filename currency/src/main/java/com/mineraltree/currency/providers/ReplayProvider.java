@@ -0,0 +1,73 @@
+package com.mineraltree.currency.providers;
+
+import akka.http.javadsl.model.Query;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.dto.CurrencyRates.Builder;
+import com.mineraltree.currency.providers.RecordedPayloads.Recording;
+import com.mineraltree.utils.Trace;
+import com.typesafe.config.Config;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Serves rates from responses recorded from the real providers (see the 'record-to' setting of a
+ * provider) rather than fetching them. Its 'directory' setting is the directory of recordings.
+ *
+ * <p>Rates are read and parsed from the memory-mapped recordings on every lookup, so the fetch,
+ * parse and cache pipeline can be exercised deterministically and at high rates without a provider.
+ * Listed last in 'providers', it is an offline fallback serving the last recorded rates while the
+ * live providers are down. A base with no recording fails like a provider error.
+ *
+ * <p>Replayed rates are versioned by when they were recorded rather than when they are read, so
+ * their version tells how old they are. The cache keeps rates it has which are newer than a
+ * recording, such as live rates fetched before the providers went down, rather than recording the
+ * replayed rates as a new version.
+ */
+public class ReplayProvider extends RateMapProvider {
+
+  /** The provider type of a replay provider, which is also the provider of the rates it replays */
+  public static final String TYPE = "REPLAY";
+
+  private final RecordedPayloads recordings;
+
+  public ReplayProvider(Config config) {
+    this(config, new RecordedPayloads(Paths.get(config.getString("directory"))));
+  }
+
+  ReplayProvider(Config config, RecordedPayloads recordings) {
+    super(config, null);
+    this.recordings = recordings;
+  }
+
+  @Override
+  public CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
+    CompletableFuture<CurrencyRates> rates = new CompletableFuture<>();
+    getQuota().record();
+    try {
+      Recording recording = recordings.read(base);
+      rates.complete(
+          readResponseJson(base, recording.getPayload(), recording.getRecordedAt().toEpochMilli()));
+    } catch (RuntimeException e) {
+      rates.completeExceptionally(e);
+    }
+    return rates;
+  }
+
+  /** Both the Fixer and the OpenExchange responses have the rates in 'rates' */
+  @Override
+  protected void extractRatesFromResponse(Builder builder, ObjectNode responseTree) {
+    extractRateMap(builder, getRequiredAttribute(responseTree, "rates", ObjectNode.class));
+  }
+
+  @Override
+  protected Query getRequestParameters() {
+    return Query.EMPTY;
+  }
+
+  @Override
+  protected String getSource() {
+    return recordings.getDirectory().toString();
+  }
+}
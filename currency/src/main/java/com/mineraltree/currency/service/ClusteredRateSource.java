@@ -0,0 +1,112 @@
+package com.mineraltree.currency.service;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
+import com.mineraltree.currency.ControlCode;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.SettingsChanged;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import com.mineraltree.currency.dto.CurrencyRates;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The rate source of a {@link RateCache} when the service runs as a cluster. Takes the place of
+ * {@link RateBaseSelector}: rather than loading rates itself, it sends each request to the {@link
+ * RateOwner} of the base (wherever in the cluster that is) and passes the rates every owner
+ * publishes on to the cache. Because of this each base is fetched from the providers by one node
+ * only, while every node has all the rates in its local cache.
+ */
+public class ClusteredRateSource extends AbstractActor {
+
+  /** The pub-sub topic on which owners publish the rates they fetch */
+  public static final String RATES_TOPIC = "currency-rates";
+
+  private LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+  private final ActorRef ownerRegion;
+  private final boolean onlyRequestedBases;
+  private final Set<String> knownBases = new HashSet<>();
+
+  /** @param ownerRegion the shard region of the {@link RateOwner} entities */
+  public static Props mkProps(ActorRef ownerRegion) {
+    return mkProps(ownerRegion, false);
+  }
+
+  /**
+   * @param ownerRegion the shard region of the {@link RateOwner} entities
+   * @param onlyRequestedBases pass on published rates only for the bases requested through this
+   *     source, rather than for every base. For a cache split into partitions, each of which holds
+   *     only its own share of the bases.
+   */
+  public static Props mkProps(ActorRef ownerRegion, boolean onlyRequestedBases) {
+    return Props.create(ClusteredRateSource.class, ownerRegion, onlyRequestedBases);
+  }
+
+  private ClusteredRateSource(ActorRef ownerRegion, boolean onlyRequestedBases) {
+    this.ownerRegion = ownerRegion;
+    this.onlyRequestedBases = onlyRequestedBases;
+  }
+
+  @Override
+  public void preStart() throws Exception {
+    super.preStart();
+    DistributedPubSub.get(getContext().getSystem())
+        .mediator()
+        .tell(new DistributedPubSubMediator.Subscribe(RATES_TOPIC, getSelf()), getSelf());
+  }
+
+  @Override
+  public Receive createReceive() {
+    return ReceiveBuilder.create()
+        .match(GetRatesRequest.class, this::getRatesForBase)
+        .match(CurrencyRates.class, this::ratesPublished)
+        .match(ControlCode.class, this::handleControlCode)
+        .match(SettingsChanged.class, this::settingsChanged)
+        .match(DistributedPubSubMediator.SubscribeAck.class, ack -> {})
+        .build();
+  }
+
+  private void getRatesForBase(GetRatesRequest request) {
+    knownBases.add(CurrencyCodes.key(request.getBase()));
+    log.debug("[base={}] Forwarding request to the owner", request.getBase());
+    ownerRegion.forward(request, getContext());
+  }
+
+  private void ratesPublished(CurrencyRates rates) {
+    if (onlyRequestedBases && !knownBases.contains(rates.getBaseCurrency())) {
+      return;
+    }
+    knownBases.add(rates.getBaseCurrency());
+    getContext().getParent().tell(rates, getSelf());
+  }
+
+  /**
+   * Nothing to pass on: the owners take changed settings from the event stream of the node they run
+   * on (see {@link RateOwner}), not from the cache
+   */
+  private void settingsChanged(SettingsChanged settings) {
+    log.debug("Settings changed; the rate owners take the change from their own nodes");
+  }
+
+  /**
+   * Owners refresh their rates on their own, so a refresh only asks each owner for its current
+   * rates. An owner with rates answers without contacting a provider; one that was moved to another
+   * node (and so lost its rates) is restarted and fetches them.
+   */
+  private void handleControlCode(ControlCode code) {
+    if (code == ControlCode.REFRESH) {
+      for (String base : knownBases) {
+        ownerRegion.tell(new GetRatesRequest(base, false), getContext().getParent());
+      }
+    } else {
+      unhandled(code);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package com.mineraltree.currency.service;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.OneForOneStrategy;
+import akka.actor.Props;
+import akka.actor.SupervisorStrategy;
+import akka.japi.pf.DeciderBuilder;
+import akka.japi.pf.ReceiveBuilder;
+import akka.routing.Broadcast;
+import akka.routing.ConsistentHashingPool;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.dto.CurrencyRates;
+
+/**
+ * A {@link RateCache} split into partitions by base currency. Requests and rates go to the
+ * partition of their base (see {@link RateCache#PARTITION_BY_BASE}); everything else, such as
+ * changed settings, goes to every partition. A partition which fails is restarted on its own and
+ * loses only its own bases.
+ */
+public class PartitionedRateCache extends AbstractActor {
+
+  private final Props cacheProps;
+  private final int partitions;
+  private ActorRef router;
+
+  /** @param cacheProps the props of one partition, a {@link RateCache} */
+  public static Props mkProps(Props cacheProps, int partitions) {
+    return Props.create(PartitionedRateCache.class, cacheProps, partitions);
+  }
+
+  PartitionedRateCache(Props cacheProps, int partitions) {
+    this.cacheProps = cacheProps;
+    this.partitions = partitions;
+  }
+
+  @Override
+  public void preStart() throws Exception {
+    super.preStart();
+    SupervisorStrategy restartPartition =
+        new OneForOneStrategy(DeciderBuilder.matchAny(e -> SupervisorStrategy.restart()).build());
+    router =
+        getContext()
+            .actorOf(
+                new ConsistentHashingPool(partitions)
+                    .withHashMapper(RateCache.PARTITION_BY_BASE)
+                    .withSupervisorStrategy(restartPartition)
+                    .props(cacheProps),
+                "partitions");
+  }
+
+  @Override
+  public Receive createReceive() {
+    return ReceiveBuilder.create()
+        .match(GetRatesRequest.class, message -> router.forward(message, getContext()))
+        .match(CurrencyRates.class, message -> router.forward(message, getContext()))
+        .matchAny(message -> router.forward(new Broadcast(message), getContext()))
+        .build();
+  }
+}
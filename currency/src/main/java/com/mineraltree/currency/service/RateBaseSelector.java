@@ -8,7 +8,9 @@ import akka.event.LoggingAdapter;
 import akka.japi.pf.ReceiveBuilder;
 import com.mineraltree.currency.ControlCode;
 import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.SettingsChanged;
 import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.dto.CurrencyCodes;
 import java.util.List;
 
 /**
@@ -20,7 +22,7 @@ import java.util.List;
 public class RateBaseSelector extends AbstractActor {
 
   private LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
-  private final List<CurrencyProcessor> providers;
+  private List<CurrencyProcessor> providers;
 
   public static Props mkProps(List<CurrencyProcessor> providers) {
     return Props.create(RateBaseSelector.class, providers);
@@ -35,22 +37,34 @@ public class RateBaseSelector extends AbstractActor {
     return ReceiveBuilder.create()
         .match(GetRatesRequest.class, this::getRatesForBase)
         .match(ControlCode.class, this::handleControlCode)
+        .match(SettingsChanged.class, this::changeProviders)
         .build();
   }
 
   private void getRatesForBase(GetRatesRequest baseRequest) {
+    // Named by the canonical key, so "usd" and "USD" share a loader
+    String base = CurrencyCodes.key(baseRequest.getBase());
     ActorRef baseLoader =
         getContext()
-            .findChild(baseRequest.getBase())
+            .findChild(base)
             .orElseGet(
                 () ->
                     getContext()
                         .actorOf(
-                            RateLoader.mkProps(baseRequest.getBase(), providers),
-                            baseRequest.getBase()));
+                            RateLoader.mkProps(base, providers)
+                                .withDispatcher(getContext().props().dispatcher()),
+                            base));
 
-    log.debug("[base={}] Forwarding request to loader", baseRequest.getBase());
-    baseLoader.forward(ControlCode.GET_CURRENT, getContext());
+    log.debug("[base={}] Forwarding request to loader", base);
+    baseLoader.forward(baseRequest, getContext());
+  }
+
+  /** New loaders use the new providers, and the existing loaders switch to them */
+  private void changeProviders(SettingsChanged settings) {
+    providers = settings.getProviders();
+    for (ActorRef child : getContext().getChildren()) {
+      child.tell(settings, getSelf());
+    }
   }
 
   private void handleControlCode(ControlCode code) {
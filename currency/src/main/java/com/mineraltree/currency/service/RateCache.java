@@ -2,48 +2,89 @@ package com.mineraltree.currency.service;
 
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
+import akka.actor.Cancellable;
 import akka.actor.Props;
 import akka.actor.Status;
+import akka.dispatch.RequiresMessageQueue;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.pf.ReceiveBuilder;
+import akka.routing.ConsistentHashingRouter.ConsistentHashMapper;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.mineraltree.currency.ControlCode;
 import com.mineraltree.currency.GetRateFailedResponse;
 import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.RatesUpdated;
 import com.mineraltree.currency.RetryRatesRequest;
+import com.mineraltree.currency.SettingsChanged;
+import com.mineraltree.currency.dto.CurrencyCodes;
 import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.providers.ReplayProvider;
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
 import java.util.concurrent.ExecutionException;
 
 /**
  * Caches the results of currency rate lookups to handle requests for the information immediately.
  */
-public class RateCache extends AbstractActor {
+public class RateCache extends AbstractActor
+    implements RequiresMessageQueue<RatePriorityMailbox.Semantics> {
   private static final String FAIL = "FAIL";
+  private static final int DEFAULT_DELTA_HISTORY = 24;
 
   private LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
   private final Map<String, CurrencyRates> currentRates;
+  // All keyed by the canonical key of the base (CurrencyCodes)
+  private final Map<String, RateHistory> histories = new HashMap<>();
+  private final int deltaHistory;
   private ActorRef rateSource;
   private final Props rateSourceProps;
-  private final Duration refreshInterval;
-  private final Set<String> inFlight = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+  private Duration refreshInterval;
+  private Cancellable refreshSchedule;
+  private final Set<String> inFlight = new HashSet<>();
   private final Cache<String, String> failedCache = CacheBuilder.newBuilder().build();
 
+  /**
+   * Sends every message about a base to the same partition, when the cache is split into partitions
+   * by {@link PartitionedRateCache}. Each partition then fetches, caches and refreshes its own
+   * share of the bases, so misses are handled on as many threads as there are partitions. Only
+   * requests and rates are about a base; other messages are for every partition.
+   */
+  public static final ConsistentHashMapper PARTITION_BY_BASE =
+      message -> {
+        if (message instanceof GetRatesRequest) {
+          // An invalid base goes to any partition, which rejects it
+          String base = ((GetRatesRequest) message).getBase();
+          String key = CurrencyCodes.key(base);
+          return key != null ? key : String.valueOf(base);
+        } else if (message instanceof CurrencyRates) {
+          return ((CurrencyRates) message).getBaseCurrency();
+        }
+        return null;
+      };
+
   public static Props mkProps(Props rateSourceProps, Duration refreshInterval) {
-    return Props.create(RateCache.class, rateSourceProps, refreshInterval);
+    return mkProps(rateSourceProps, refreshInterval, DEFAULT_DELTA_HISTORY);
+  }
+
+  /**
+   * @param deltaHistory how many updates of a base are remembered, so a client that many updates
+   *     behind can still be sent only the changes
+   */
+  public static Props mkProps(Props rateSourceProps, Duration refreshInterval, int deltaHistory) {
+    return Props.create(RateCache.class, rateSourceProps, refreshInterval, deltaHistory);
   }
 
-  RateCache(Props rateSourceProps, Duration refreshInterval) {
-    this.currentRates = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+  RateCache(Props rateSourceProps, Duration refreshInterval, int deltaHistory) {
+    this.currentRates = new HashMap<>();
     this.rateSourceProps = rateSourceProps;
     this.refreshInterval = refreshInterval;
+    this.deltaHistory = deltaHistory;
   }
 
   @Override
@@ -51,18 +92,28 @@ public class RateCache extends AbstractActor {
     super.preStart();
 
     rateSource = getContext().actorOf(rateSourceProps, "rate-source");
-    // Tell the rate loader to send us the current rates. It will reply with a CurrencyRates object
+    scheduleRefresh();
+  }
 
-    getContext()
-        .system()
-        .scheduler()
-        .schedule(
-            refreshInterval,
-            refreshInterval,
-            getSelf(),
-            ControlCode.REFRESH,
-            getContext().dispatcher(),
-            getSelf());
+  @Override
+  public void postStop() throws Exception {
+    refreshSchedule.cancel();
+    super.postStop();
+  }
+
+  /** Has the cache tell the rate source to refresh every base every refresh interval */
+  private void scheduleRefresh() {
+    refreshSchedule =
+        getContext()
+            .system()
+            .scheduler()
+            .schedule(
+                refreshInterval,
+                refreshInterval,
+                getSelf(),
+                ControlCode.REFRESH,
+                getContext().dispatcher(),
+                getSelf());
   }
 
   @Override
@@ -73,11 +124,19 @@ public class RateCache extends AbstractActor {
         .match(GetRatesRequest.class, this::retrieveRates)
         .match(RetryRatesRequest.class, this::retryRetrieveRates)
         .match(GetRateFailedResponse.class, this::processRetrievalFail)
+        .match(SettingsChanged.class, this::changeSettings)
         .build();
   }
 
   private void retrieveRates(GetRatesRequest request) {
-    if (!request.getBase().matches("[A-Za-z]{3}$")) {
+    request.getTrace().span("cache-mailbox", request.getSentNanos());
+    if (request.getTrace().isOverdue()) {
+      // The caller has given up; don't start a fetch nobody is waiting for
+      log.debug("[base={}] Dropping a request past its deadline", request.getBase());
+      return;
+    }
+    String base = CurrencyCodes.key(request.getBase());
+    if (base == null) {
       getSender()
           .tell(
               new Status.Failure(
@@ -86,12 +145,12 @@ public class RateCache extends AbstractActor {
       return;
     }
 
-    boolean isBaseLoaded = currentRates.containsKey(request.getBase());
+    boolean isBaseLoaded = currentRates.containsKey(base);
     if (request.responseExpected() && isBaseLoaded) {
-      getSender().tell(currentRates.get(request.getBase()), getSelf());
+      getSender().tell(answer(base, request), getSelf());
     } else {
 
-      if (failedCache.getIfPresent(request.getBase().toUpperCase()) != null) {
+      if (failedCache.getIfPresent(base) != null) {
         getSender()
             .tell(
                 new Status.Failure(
@@ -99,29 +158,69 @@ public class RateCache extends AbstractActor {
                 getSelf());
       }
 
-      if (!inFlight.contains(request.getBase())) {
-        rateSource.tell(request, getSelf());
-        log.info("[base={}] First request for currency rates. Fetching now.", request.getBase());
-        inFlight.add(request.getBase());
+      if (!inFlight.contains(base)) {
+        log.info("[base={}] First request for currency rates. Fetching now.", base);
+        fetch(base, request);
       }
 
       if (request.responseExpected()) {
-        scheduleRetryRetrieveRates(request.getBase(), 0);
+        scheduleRetryRetrieveRates(request, 0, System.nanoTime());
       }
     }
   }
 
+  private void fetch(String base, GetRatesRequest request) {
+    rateSource.tell(request, getSelf());
+    inFlight.add(base);
+  }
+
   private void updateCurrentRates(CurrencyRates rates) {
-    if (failedCache.getIfPresent(rates.getBaseCurrency().toUpperCase()) != null) {
-      failedCache.invalidate(rates.getBaseCurrency().toUpperCase());
+    failedCache.invalidate(rates.getBaseCurrency());
+
+    inFlight.remove(rates.getBaseCurrency());
+    CurrencyRates cached = currentRates.get(rates.getBaseCurrency());
+    if (cached != null
+        && rates.getProvider().equals(ReplayProvider.TYPE)
+        && rates.getVersion() <= cached.getVersion()) {
+      // A recording no newer than the rates cached, replayed while the live providers are down;
+      // recording it would make it the newest version
+      log.debug(
+          "[base={}] Kept version {} over a replayed recording of version {}",
+          rates.getBaseCurrency(),
+          cached.getVersion(),
+          rates.getVersion());
+      return;
+    }
+    RateHistory.RecordedRates recorded =
+        histories
+            .computeIfAbsent(rates.getBaseCurrency(), base -> new RateHistory(deltaHistory))
+            .record(rates);
+    if (recorded == null) {
+      // The same rates again, e.g. replicated to this node as well as sent to it
+      return;
     }
 
     log.info(
-        "[base={}] Updated current rates from provider {}",
+        "[base={}] Updated current rates from provider {} (version {})",
         rates.getBaseCurrency(),
-        rates.getProvider());
-    currentRates.put(rates.getBaseCurrency(), rates);
-    inFlight.remove(rates.getBaseCurrency());
+        rates.getProvider(),
+        recorded.rates.getVersion());
+    currentRates.put(rates.getBaseCurrency(), recorded.rates);
+    getContext()
+        .getSystem()
+        .eventStream()
+        .publish(new RatesUpdated(recorded.rates, recorded.delta));
+  }
+
+  /**
+   * The reply to a request for a loaded base: all of its rates, or only the changes if the request
+   * gives the version the client has.
+   */
+  private Object answer(String base, GetRatesRequest request) {
+    if (request.getSinceVersion() == null) {
+      return currentRates.get(base);
+    }
+    return histories.get(base).since(request.getSinceVersion());
   }
 
   private void handleControl(ControlCode code) {
@@ -132,37 +231,68 @@ public class RateCache extends AbstractActor {
     }
   }
 
-  private void scheduleRetryRetrieveRates(String base, int attemptNum) {
+  /**
+   * Takes on changed settings without dropping the cached rates: the rate source gets the new
+   * providers, and the refreshes are rescheduled if their interval changed.
+   */
+  private void changeSettings(SettingsChanged settings) {
+    if (!settings.getRefreshInterval().equals(refreshInterval)) {
+      log.info(
+          "Refresh interval changed from {} to {}", refreshInterval, settings.getRefreshInterval());
+      refreshInterval = settings.getRefreshInterval();
+      refreshSchedule.cancel();
+      scheduleRefresh();
+    }
+    rateSource.tell(settings, getSelf());
+  }
+
+  private void scheduleRetryRetrieveRates(
+      GetRatesRequest request, int attemptNum, long waitingSince) {
     getContext()
         .system()
         .scheduler()
         .scheduleOnce(
             Duration.ofMillis(100),
             getSelf(),
-            new RetryRatesRequest(base, attemptNum),
+            new RetryRatesRequest(request, attemptNum, waitingSince),
             getContext().dispatcher(),
             getSender());
   }
 
+  /**
+   * Answers a request which waited for its base to load; the wait is its {@code cache-wait} span. A
+   * request waits until its deadline, and fetches the base again if the fetch it was waiting for
+   * was abandoned by the request that started it.
+   */
   private void retryRetrieveRates(RetryRatesRequest req) {
-    String base = req.getBase();
+    String base = CurrencyCodes.key(req.getBase());
     if (currentRates.containsKey(base)) {
-      getSender().tell(currentRates.get(base), getSelf());
-    } else if (failedCache.getIfPresent(base.toUpperCase()) != null) {
+      req.getRequest().getTrace().span("cache-wait", req.getWaitingSince());
+      getSender().tell(answer(base, req.getRequest()), getSelf());
+    } else if (failedCache.getIfPresent(base) != null) {
+      req.getRequest().getTrace().span("cache-wait failed", req.getWaitingSince());
       getSender()
           .tell(
               new Status.Failure(
                   new IllegalArgumentException("Could not find given currency's rates")),
               getSelf());
-    } else {
-      if (req.getAttemptNum() < 50) {
-        scheduleRetryRetrieveRates(base, req.getAttemptNum() + 1);
+    } else if (req.getRequest().getTrace().isOverdue()) {
+      log.debug("[base={}] Stopped waiting for rates past the request's deadline", base);
+    } else if (req.getRequest().getTrace().hasDeadline() || req.getAttemptNum() < 50) {
+      if (!inFlight.contains(base)) {
+        fetch(base, req.getRequest());
       }
+      scheduleRetryRetrieveRates(req.getRequest(), req.getAttemptNum() + 1, req.getWaitingSince());
     }
   }
 
   private void processRetrievalFail(GetRateFailedResponse response) throws ExecutionException {
+    if (response.isAbandoned()) {
+      // Nothing is known to be wrong with the base; the next request for it fetches it again
+      inFlight.remove(CurrencyCodes.key(response.getBase()));
+      return;
+    }
     // 'get' is a misleading name here, this actually loads the base into the fail cache
-    failedCache.put(response.getBase().toUpperCase(), FAIL);
+    failedCache.put(CurrencyCodes.key(response.getBase()), FAIL);
   }
 }
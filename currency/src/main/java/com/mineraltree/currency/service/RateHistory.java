@@ -0,0 +1,83 @@
+package com.mineraltree.currency.service;
+
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * The recent versions of one base's rates, kept as the deltas between consecutive versions. Lets
+ * the cache tell a client only what changed since the version the client already has.
+ */
+class RateHistory {
+
+  private final int maxDeltas;
+  private final Deque<CurrencyRatesDelta> deltas = new ArrayDeque<>();
+  private CurrencyRates current;
+
+  /** @param maxDeltas how many updates back a client can be and still receive a delta */
+  RateHistory(int maxDeltas) {
+    this.maxDeltas = maxDeltas;
+  }
+
+  /**
+   * Records a new version of the rates. Versions are made to increase even if the provider's clock
+   * went backwards or did not version the rates. Rates identical to the current rates, version
+   * included, are a copy (a clustered node can receive the same rates twice) and are ignored.
+   *
+   * @return the rates as recorded (with the final version), and the delta from the previous
+   *     version; or {@code null} if the rates were already recorded
+   */
+  RecordedRates record(CurrencyRates rates) {
+    if (current == null) {
+      current = rates;
+      return new RecordedRates(rates, CurrencyRatesDelta.full(rates));
+    }
+    if (rates.getVersion() == current.getVersion() && rates.getRates().equals(current.getRates())) {
+      return null;
+    }
+    CurrencyRates versioned =
+        rates.getVersion() > current.getVersion()
+            ? rates
+            : rates.withVersion(current.getVersion() + 1);
+    CurrencyRatesDelta delta = CurrencyRatesDelta.between(current, versioned);
+    deltas.addLast(delta);
+    if (deltas.size() > maxDeltas) {
+      deltas.removeFirst();
+    }
+    current = versioned;
+    return new RecordedRates(versioned, delta);
+  }
+
+  /**
+   * Returns the changes from {@code version} to the current rates, or all the current rates if
+   * {@code version} is not one of the recent versions.
+   */
+  CurrencyRatesDelta since(long version) {
+    if (version == current.getVersion()) {
+      return CurrencyRatesDelta.between(current, current);
+    }
+    Iterator<CurrencyRatesDelta> it = deltas.iterator();
+    while (it.hasNext()) {
+      CurrencyRatesDelta delta = it.next();
+      if (delta.getFromVersion() == version) {
+        while (it.hasNext()) {
+          delta = delta.followedBy(it.next());
+        }
+        return delta;
+      }
+    }
+    return CurrencyRatesDelta.full(current);
+  }
+
+  static class RecordedRates {
+    final CurrencyRates rates;
+    final CurrencyRatesDelta delta;
+
+    RecordedRates(CurrencyRates rates, CurrencyRatesDelta delta) {
+      this.rates = rates;
+      this.delta = delta;
+    }
+  }
+}
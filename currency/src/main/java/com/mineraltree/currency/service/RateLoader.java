@@ -3,14 +3,20 @@ package com.mineraltree.currency.service;
 import akka.actor.AbstractActor;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.dispatch.RequiresMessageQueue;
 import akka.event.Logging;
 import akka.event.LoggingAdapter;
 import akka.japi.pf.ReceiveBuilder;
 import com.mineraltree.currency.ControlCode;
 import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.GetRatesRequest;
 import com.mineraltree.currency.RatesUnavailable;
+import com.mineraltree.currency.SettingsChanged;
 import com.mineraltree.currency.api.CurrencyProcessor;
 import com.mineraltree.currency.providers.BaseProvider;
+import com.mineraltree.currency.providers.ProviderQuota;
+import com.mineraltree.utils.Trace;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -19,15 +25,27 @@ import java.util.List;
  * rates from the configured provider(s) and returns them to the requester. This will attempt to
  * fetch the rates from the first configured provider and then, if that fails, fall back to
  * alternative providers until one succeeds.
+ *
+ * <p>Providers are tried in the order their {@link ProviderQuota quotas} allow: those running low
+ * on their budget of calls after the others, none whose budget is spent, and for a base not loaded
+ * yet none nearly out of budget. Refreshes are skipped to stretch the refresh interval while the
+ * calls are ahead of the pace the budget allows.
  */
-public class RateLoader extends AbstractActor {
+public class RateLoader extends AbstractActor
+    implements RequiresMessageQueue<RatePriorityMailbox.Semantics> {
 
   private LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
 
-  private final List<BaseProvider> providers;
+  private List<BaseProvider> providers;
   private final String base;
   private Iterator<BaseProvider> providerSelector;
   private BaseProvider activeProvider;
+  /** The trace of the request the current lookup is for */
+  private Trace trace;
+  /** Whether the base has loaded, so fetches are refreshes. Set by the lookup's callback. */
+  private volatile boolean loaded;
+
+  private int refreshes;
 
   public static Props mkProps(String base, List<CurrencyProcessor> providers) {
     return Props.create(RateLoader.class, base, providers);
@@ -41,22 +59,33 @@ public class RateLoader extends AbstractActor {
       throw new IllegalArgumentException(
           "No providers configured. At least one exchange rate provider must be configured");
     }
-    activeProvider = providerSelector.next();
+    resetActiveProvider();
   }
 
   @Override
   public Receive createReceive() {
     return ReceiveBuilder.create()
+        .match(GetRatesRequest.class, request -> startLoading(request.getTrace()))
         .match(RatesUnavailable.class, this::getNextProvider)
         .match(ControlCode.class, this::handleControlCode)
+        .match(SettingsChanged.class, this::changeProviders)
         .build();
   }
 
   private void handleControlCode(ControlCode code) {
     switch (code) {
       case REFRESH:
+        List<BaseProvider> budgeted = budgetedProviders();
+        int stretch = budgeted.isEmpty() ? 1 : budgeted.get(0).getQuota().refreshStretch();
+        if (++refreshes % stretch == 0) {
+          startLoading(Trace.start());
+        } else {
+          log.debug("[base={}] Refresh skipped to stay within the provider's budget", base);
+        }
+        break;
+
       case GET_CURRENT:
-        loadCurrentRates();
+        startLoading(Trace.start());
         break;
 
       case PROVIDER_RESET:
@@ -69,13 +98,53 @@ public class RateLoader extends AbstractActor {
     }
   }
 
+  /**
+   * Switches to the new providers. A lookup already under way finishes with the provider it started
+   * with, and the next lookup starts at the first of the new providers.
+   */
+  @SuppressWarnings("unchecked")
+  private void changeProviders(SettingsChanged settings) {
+    if (settings.getProviders().isEmpty()) {
+      log.warning("[base={}] Ignoring a change to no providers", base);
+      return;
+    }
+    providers = (List<BaseProvider>) (List<?>) settings.getProviders();
+    resetActiveProvider();
+  }
+
+  /**
+   * Starts a lookup with the first provider the budgets allow. Each provider tried is a span of
+   * {@code trace}. A request already past its deadline is not looked up at all; once started, a
+   * lookup runs to the end (within each provider's timeout) even if the request that started it
+   * gives up, since the rates it fetches serve every request for the base.
+   */
+  private void startLoading(Trace trace) {
+    if (trace.isOverdue()) {
+      log.debug("[base={}] Dropping a lookup past its deadline", base);
+      getSender().tell(new GetRateFailedResponse(base, true), getSelf());
+      return;
+    }
+    this.trace = trace;
+    resetActiveProvider();
+    if (activeProvider == null) {
+      log.warning("[base={}] No provider has the budget left to fetch rates", base);
+      getSender().tell(new GetRateFailedResponse(base), getSelf());
+      return;
+    }
+    loadCurrentRates();
+  }
+
   private void loadCurrentRates() {
     final ActorRef replyTo = getSender();
     final ActorRef self = getSelf();
+    final Trace trace = this.trace;
+    final String span = "provider " + activeProvider.getProviderName();
+    final long start = System.nanoTime();
     activeProvider
-        .getCurrencyRates(base)
+        .getCurrencyRates(base, trace)
         .whenComplete(
             (rate, err) -> {
+              trace.span(err == null ? span : span + " failed", start);
               if (null != err) {
                 log.debug(
                     "[base={}, provider={}] Rate lookup failed: {}",
@@ -84,11 +153,10 @@ public class RateLoader extends AbstractActor {
                     err);
                 self.tell(new RatesUnavailable(err), replyTo);
               } else {
-                // We got successful rates, tell the requester and reset the active provider
-                // so the next request starts at the beginning
+                // The next lookup starts again with the first provider
                 log.debug("[base={}] Rates retrieved successfully", base);
+                loaded = true;
                 replyTo.tell(rate, self);
-                resetActiveProvider();
               }
             });
   }
@@ -115,7 +183,22 @@ public class RateLoader extends AbstractActor {
   }
 
   private void resetActiveProvider() {
-    providerSelector = providers.iterator();
-    activeProvider = providerSelector.next();
+    providerSelector = budgetedProviders().iterator();
+    activeProvider = providerSelector.hasNext() ? providerSelector.next() : null;
+  }
+
+  /** The providers to try, in order, as their budgets allow */
+  private List<BaseProvider> budgetedProviders() {
+    List<BaseProvider> preferred = new ArrayList<>(providers.size());
+    List<BaseProvider> others = new ArrayList<>();
+    for (BaseProvider provider : providers) {
+      ProviderQuota quota = provider.getQuota();
+      if (quota.isExhausted() || (!loaded && !quota.allowsNewBases())) {
+        continue;
+      }
+      (quota.isPreferred() ? preferred : others).add(provider);
+    }
+    preferred.addAll(others);
+    return preferred;
   }
 }
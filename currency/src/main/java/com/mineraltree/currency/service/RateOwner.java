@@ -0,0 +1,179 @@
+package com.mineraltree.currency.service;
+
+import akka.actor.AbstractActorWithTimers;
+import akka.actor.ActorRef;
+import akka.actor.Props;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+import akka.cluster.sharding.ShardRegion;
+import akka.event.Logging;
+import akka.event.LoggingAdapter;
+import akka.japi.pf.ReceiveBuilder;
+import com.mineraltree.currency.ControlCode;
+import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.SettingsChanged;
+import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import com.mineraltree.currency.dto.CurrencyRates;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The single owner of one base currency's rates within a cluster. Runs as a cluster sharded entity
+ * (the entity id is the base currency code), so exactly one node fetches each base from the
+ * providers no matter how many nodes serve it. The owner refreshes its base on its own timer and
+ * publishes every set of rates it fetches to {@link ClusteredRateSource#RATES_TOPIC}, so every node
+ * can answer requests for the base from its local cache.
+ *
+ * <p>An owner takes the providers and refresh interval of the node it runs on: the current ones as
+ * it starts, and then each {@link SettingsChanged} published on the node's event stream as the
+ * node's configuration changes. Providers cannot be sent between nodes, but every node watches the
+ * same configuration, so every owner takes on a change.
+ */
+public class RateOwner extends AbstractActorWithTimers {
+
+  private static final String REFRESH_TIMER = "refresh";
+
+  private LoggingAdapter log = Logging.getLogger(getContext().getSystem(), this);
+
+  private final Supplier<SettingsChanged> settings;
+  private Duration refreshInterval;
+  private final List<ActorRef> waiting = new ArrayList<>();
+  private final ActorRef mediator = DistributedPubSub.get(getContext().getSystem()).mediator();
+  private String base;
+  private ActorRef loader;
+  private CurrencyRates currentRates;
+  private boolean fetching;
+
+  public static Props mkProps(List<CurrencyProcessor> providers, Duration refreshInterval) {
+    SettingsChanged settings = new SettingsChanged(providers, refreshInterval);
+    return mkProps(() -> settings);
+  }
+
+  /** @param settings the node's current providers and refresh interval, read as an owner starts */
+  public static Props mkProps(Supplier<SettingsChanged> settings) {
+    return Props.create(RateOwner.class, settings);
+  }
+
+  /** Routes each rate request to the owner of its base currency */
+  public static ShardRegion.MessageExtractor messageExtractor(int numberOfShards) {
+    return new ShardRegion.HashCodeMessageExtractor(numberOfShards) {
+      @Override
+      public String entityId(Object message) {
+        if (message instanceof GetRatesRequest) {
+          return CurrencyCodes.key(((GetRatesRequest) message).getBase());
+        }
+        return null;
+      }
+    };
+  }
+
+  RateOwner(Supplier<SettingsChanged> settings) {
+    this.settings = settings;
+  }
+
+  @Override
+  public void preStart() throws Exception {
+    super.preStart();
+    SettingsChanged current = settings.get();
+    refreshInterval = current.getRefreshInterval();
+    getContext().getSystem().eventStream().subscribe(getSelf(), SettingsChanged.class);
+    base = getSelf().path().name();
+    loader =
+        getContext()
+            .actorOf(
+                RateLoader.mkProps(base, current.getProviders())
+                    .withDispatcher(getContext().props().dispatcher()),
+                "loader");
+    getTimers().startPeriodicTimer(REFRESH_TIMER, ControlCode.REFRESH, refreshInterval);
+  }
+
+  @Override
+  public void postStop() throws Exception {
+    getContext().getSystem().eventStream().unsubscribe(getSelf());
+    super.postStop();
+  }
+
+  @Override
+  public Receive createReceive() {
+    return ReceiveBuilder.create()
+        .match(GetRatesRequest.class, this::getRates)
+        .match(CurrencyRates.class, this::updateRates)
+        .match(GetRateFailedResponse.class, this::fetchFailed)
+        .match(ControlCode.class, this::handleControlCode)
+        .match(SettingsChanged.class, this::changeSettings)
+        .build();
+  }
+
+  private void getRates(GetRatesRequest request) {
+    if (request.getTrace().isOverdue()) {
+      log.debug("[base={}] Dropping a request past its deadline", base);
+      return;
+    }
+    // The rates are kept fresh by the refreshes; fetching them again for a request would undo the
+    // stretching of refreshes the budgets call for
+    if (currentRates != null) {
+      getSender().tell(currentRates, getSelf());
+      return;
+    }
+    waiting.add(getSender());
+    if (!fetching) {
+      log.debug("[base={}] Fetching rates for the cluster", base);
+      fetching = true;
+      loader.tell(ControlCode.GET_CURRENT, getSelf());
+    }
+  }
+
+  /**
+   * Passes the refresh on to the loader, which may skip it to stay within the providers' budgets. A
+   * skipped refresh has no reply, so it does not hold up requests waiting for a fetch.
+   */
+  private void handleControlCode(ControlCode code) {
+    if (code == ControlCode.REFRESH) {
+      if (!fetching) {
+        loader.tell(ControlCode.REFRESH, getSelf());
+      }
+    } else {
+      unhandled(code);
+    }
+  }
+
+  /**
+   * Keeps the rates: the loader takes on the new providers, and refreshes follow the new interval
+   */
+  private void changeSettings(SettingsChanged changed) {
+    loader.tell(changed, getSelf());
+    if (!changed.getRefreshInterval().equals(refreshInterval)) {
+      refreshInterval = changed.getRefreshInterval();
+      getTimers().startPeriodicTimer(REFRESH_TIMER, ControlCode.REFRESH, refreshInterval);
+    }
+  }
+
+  private void updateRates(CurrencyRates rates) {
+    fetching = false;
+    currentRates = rates;
+    reply(rates);
+    mediator.tell(
+        new DistributedPubSubMediator.Publish(ClusteredRateSource.RATES_TOPIC, rates), getSelf());
+  }
+
+  private void fetchFailed(GetRateFailedResponse response) {
+    fetching = false;
+    if (currentRates != null) {
+      // Stale rates are better than none; the next refresh will try the providers again
+      reply(currentRates);
+    } else {
+      reply(response);
+    }
+  }
+
+  private void reply(Object message) {
+    for (ActorRef requester : waiting) {
+      requester.tell(message, getSelf());
+    }
+    waiting.clear();
+  }
+}
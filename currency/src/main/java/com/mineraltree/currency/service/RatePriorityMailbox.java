@@ -0,0 +1,158 @@
+package com.mineraltree.currency.service;
+
+import static com.mineraltree.utils.Ensure.verify;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.DeadLetter;
+import akka.actor.Status;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.RatesUnavailable;
+import com.mineraltree.currency.RetryRatesRequest;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.typesafe.config.Config;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import scala.Option;
+
+/**
+ * The mailbox of the {@link RateCache} and {@link RateLoader} actors. Messages are processed in
+ * order of priority, and in the order they arrived within a priority: first the results of fetching
+ * rates (which answer any number of waiting requests), then control codes and anything else, then
+ * requests, and last retried requests.
+ *
+ * <p>Requests are bounded by the configured {@code capacity}. A request beyond it fails at once
+ * with a {@link RejectedExecutionException}, so the requester doesn't wait for a reply that could
+ * only come after its timeout. Results and control codes are never turned away.
+ *
+ * <p>Actors get this mailbox by requiring {@link Semantics}; {@code
+ * akka.actor.mailbox.requirements} binds that to the mailbox configuration.
+ */
+public class RatePriorityMailbox
+    implements MailboxType, ProducesMessageQueue<RatePriorityMailbox.RateQueue> {
+
+  /** Marks actors (through {@code RequiresMessageQueue}) which need this mailbox */
+  public interface Semantics {}
+
+  private static final int RESULTS = 0;
+  private static final int CONTROL = 1;
+  private static final int REQUESTS = 2;
+  private static final int RETRIES = 3;
+
+  private final int capacity;
+
+  /** Created by Akka from the mailbox configuration */
+  public RatePriorityMailbox(ActorSystem.Settings settings, Config config) {
+    this.capacity = verify(config.getInt("capacity"), c -> c > 0, "capacity", "Must be positive");
+  }
+
+  @Override
+  public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+    return new RateQueue(capacity, system.isDefined() ? system.get().deadLetters() : null);
+  }
+
+  private static int priorityOf(Object message) {
+    if (message instanceof CurrencyRates
+        || message instanceof GetRateFailedResponse
+        || message instanceof RatesUnavailable) {
+      return RESULTS;
+    } else if (message instanceof GetRatesRequest) {
+      return REQUESTS;
+    } else if (message instanceof RetryRatesRequest) {
+      return RETRIES;
+    }
+    // Control codes, and anything unexpected so it is never held up or turned away
+    return CONTROL;
+  }
+
+  /** One FIFO queue per priority */
+  static class RateQueue implements MessageQueue, Semantics {
+    private final int capacity;
+    private final ActorRef deadLetters;
+
+    private final List<Queue<Envelope>> queues = new ArrayList<>(RETRIES + 1);
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    RateQueue(int capacity, ActorRef deadLetters) {
+      this.capacity = capacity;
+      this.deadLetters = deadLetters;
+      for (int priority = 0; priority <= RETRIES; priority++) {
+        queues.add(new ConcurrentLinkedQueue<>());
+      }
+    }
+
+    @Override
+    public void enqueue(ActorRef receiver, Envelope handle) {
+      int priority = priorityOf(handle.message());
+      if (priority >= REQUESTS && requests.incrementAndGet() > capacity) {
+        requests.decrementAndGet();
+        reject(receiver, handle);
+        return;
+      }
+      queues.get(priority).add(handle);
+      size.incrementAndGet();
+    }
+
+    private void reject(ActorRef receiver, Envelope handle) {
+      Object message = handle.message();
+      boolean awaitsReply =
+          message instanceof RetryRatesRequest
+              || (message instanceof GetRatesRequest
+                  && ((GetRatesRequest) message).responseExpected());
+      if (awaitsReply && handle.sender() != null && !handle.sender().equals(ActorRef.noSender())) {
+        handle
+            .sender()
+            .tell(
+                new Status.Failure(
+                    new RejectedExecutionException(
+                        "Too many rate requests waiting, " + receiver.path().name() + " is full")),
+                receiver);
+      } else if (deadLetters != null) {
+        deadLetters.tell(new DeadLetter(message, handle.sender(), receiver), handle.sender());
+      }
+    }
+
+    @Override
+    public Envelope dequeue() {
+      for (int priority = 0; priority < queues.size(); priority++) {
+        Envelope handle = queues.get(priority).poll();
+        if (handle != null) {
+          size.decrementAndGet();
+          if (priority >= REQUESTS) {
+            requests.decrementAndGet();
+          }
+          return handle;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public int numberOfMessages() {
+      return size.get();
+    }
+
+    @Override
+    public boolean hasMessages() {
+      return size.get() > 0;
+    }
+
+    @Override
+    public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+      Envelope handle;
+      while ((handle = dequeue()) != null) {
+        deadLetters.enqueue(owner, handle);
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.mineraltree.currency.service;
+
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import akka.NotUsed;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.japi.Pair;
+import akka.stream.Materializer;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.BroadcastHub;
+import akka.stream.javadsl.Keep;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.mineraltree.currency.RatesUpdated;
+import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.api.RateUpdates;
+import com.mineraltree.currency.dto.CurrencyCodes;
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+import com.typesafe.config.Config;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streams rate updates to any number of subscribers. Every {@link RatesUpdated} event the rate
+ * cache publishes is fed into a single broadcast hub, and each subscriber takes its bases from the
+ * hub through its own small buffer. A subscriber which cannot keep up overflows its buffer and is
+ * disconnected, so it never slows down the updates to everyone else.
+ */
+public class RateUpdateHub implements RateUpdates {
+
+  private static final Logger log = LoggerFactory.getLogger(RateUpdateHub.class);
+
+  private final CurrencyProcessor currentRates;
+  private final Source<RatesUpdated, NotUsed> updates;
+  private final int subscriberBuffer;
+
+  /**
+   * @param currentRates supplies the snapshot each subscription starts with
+   * @param settings the {@code rate-updates} configuration block
+   */
+  public RateUpdateHub(
+      ActorSystem system,
+      Materializer materializer,
+      CurrencyProcessor currentRates,
+      Config settings) {
+    this.currentRates = verifyNotNull(currentRates, "currentRates");
+    this.subscriberBuffer = settings.getInt("subscriber-buffer");
+
+    // The rate cache publishes its updates on the event stream, which feeds them into the hub.
+    // Updates are dropped only if the hub itself falls behind, which means every subscriber is
+    // stalled; their buffers will have overflowed well before that.
+    int hubBuffer = settings.getInt("hub-buffer");
+    Pair<ActorRef, Source<RatesUpdated, NotUsed>> hub =
+        Source.<RatesUpdated>actorRef(hubBuffer, OverflowStrategy.dropHead())
+            .toMat(BroadcastHub.of(RatesUpdated.class, hubBuffer), Keep.both())
+            .run(materializer);
+    system.eventStream().subscribe(hub.first(), RatesUpdated.class);
+    this.updates = hub.second();
+    // Without any consumer the hub would hold on to updates and replay them to the next subscriber
+    updates.runWith(Sink.ignore(), materializer);
+  }
+
+  @Override
+  public Source<CurrencyRatesDelta, NotUsed> subscribe(Set<String> bases) {
+    Set<String> wanted = new TreeSet<>();
+    for (String base : bases) {
+      wanted.add(CurrencyCodes.key(base));
+    }
+
+    Source<RatesUpdated, NotUsed> snapshot =
+        Source.from(wanted)
+            .mapAsync(
+                wanted.size(),
+                base ->
+                    currentRates
+                        .getCurrencyRates(base)
+                        .handle((rates, error) -> Optional.ofNullable(rates)))
+            .filter(Optional::isPresent)
+            .map(Optional::get)
+            .map(rates -> new RatesUpdated(rates, CurrencyRatesDelta.full(rates)));
+
+    Source<RatesUpdated, NotUsed> live =
+        updates
+            .filter(update -> wanted.contains(update.getRates().getBaseCurrency()))
+            .buffer(subscriberBuffer, OverflowStrategy.fail())
+            .watchTermination(
+                (notUsed, done) -> {
+                  done.whenComplete(
+                      (ignored, error) -> {
+                        if (error != null) {
+                          log.info("Rate update subscriber for {} dropped: {}", wanted, error);
+                        }
+                      });
+                  return notUsed;
+                });
+
+    return snapshot.concat(live).statefulMapConcat(DeltaChain::new);
+  }
+
+  /**
+   * Makes sure each delta sent to a subscriber applies to the rates last sent to it. An update may
+   * already be in the snapshot (it raced the subscription), and the delta of an update does not
+   * chain on if the subscriber missed one before it; the first is skipped and the second replaced
+   * by all the rates.
+   */
+  private static class DeltaChain
+      implements akka.japi.function.Function<RatesUpdated, Iterable<CurrencyRatesDelta>> {
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Long> sentVersions = new HashMap<>();
+
+    @Override
+    public Iterable<CurrencyRatesDelta> apply(RatesUpdated update) {
+      String base = update.getRates().getBaseCurrency();
+      long version = update.getRates().getVersion();
+      Long sent = sentVersions.get(base);
+      if (sent != null && version <= sent) {
+        return Collections.emptyList();
+      }
+      sentVersions.put(base, version);
+      CurrencyRatesDelta delta = update.getDelta();
+      boolean chains =
+          sent == null ? delta.isFull() : !delta.isFull() && delta.getFromVersion() == (long) sent;
+      return Collections.singletonList(chains ? delta : CurrencyRatesDelta.full(update.getRates()));
+    }
+  }
+}
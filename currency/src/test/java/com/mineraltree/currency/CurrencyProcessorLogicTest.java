@@ -0,0 +1,64 @@
+package com.mineraltree.currency;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.mineraltree.utils.Trace;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CurrencyProcessorLogicTest {
+
+  private ActorSystem system;
+  private TestKit supplier;
+  private CurrencyProcessorLogic logic;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("processor-test");
+    supplier = new TestKit(system);
+    logic =
+        new CurrencyProcessorLogic(supplier.getRef(), system.dispatcher(), Duration.ofSeconds(10));
+  }
+
+  @AfterEach
+  void stopSystem() {
+    TestKit.shutdownActorSystem(system);
+  }
+
+  @Test
+  void testFailsAtDeadlineRatherThanAskTimeout() {
+    long start = System.nanoTime();
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                logic
+                    .getCurrencyRates("USD", Trace.start(null, Duration.ofMillis(200)))
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof DeadlineExceeded);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    supplier.expectMsgClass(GetRatesRequest.class);
+  }
+
+  @Test
+  void testOverdueRequestNotSent() {
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                logic
+                    .getCurrencyRates("USD", Trace.start(null, Duration.ZERO))
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof DeadlineExceeded);
+    supplier.expectNoMessage(Duration.ofMillis(200));
+  }
+}
@@ -0,0 +1,74 @@
+package com.mineraltree.currency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.actor.ActorSystem;
+import akka.actor.Status;
+import akka.testkit.javadsl.TestKit;
+import com.google.common.collect.ImmutableList;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.service.Readiness;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RatePreloaderTest {
+
+  private ActorSystem system;
+  private TestKit loader;
+  private RatePreloader preloader;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("preload-test");
+    loader = new TestKit(system);
+    preloader =
+        new RatePreloader(
+            loader.getRef(),
+            system.scheduler(),
+            system.dispatcher(),
+            Duration.ofSeconds(5),
+            Duration.ofMillis(100));
+  }
+
+  @AfterEach
+  void stopSystem() {
+    TestKit.shutdownActorSystem(system);
+  }
+
+  @Test
+  void testNotReadyUntilPreloadingSucceeds() throws Exception {
+    Readiness readiness = new Readiness(() -> {});
+    readiness.require("rates-preloaded");
+    preloader.preload(ImmutableList.of("USD")).thenRun(() -> readiness.complete("rates-preloaded"));
+
+    // Every provider is down
+    for (int i = 0; i < 3; i++) {
+      assertEquals("USD", loader.expectMsgClass(GetRatesRequest.class).getBase());
+      loader.reply(new Status.Failure(new RuntimeException("No provider answered")));
+    }
+    assertFalse(readiness.isReady());
+
+    // Then one comes back
+    assertEquals("USD", loader.expectMsgClass(GetRatesRequest.class).getBase());
+    loader.reply(usdRates());
+    long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+    while (!readiness.isReady() && System.nanoTime() < until) {
+      Thread.sleep(10);
+    }
+    assertTrue(readiness.isReady());
+    loader.expectNoMessage(Duration.ofMillis(300));
+  }
+
+  private static CurrencyRates usdRates() {
+    CurrencyRates.Builder builder = new CurrencyRates.Builder();
+    builder.setBaseCurrency("USD");
+    builder.setProvider("TEST");
+    builder.addRate("EUR", 0.91);
+    return builder.build();
+  }
+}
@@ -0,0 +1,114 @@
+package com.mineraltree.currency.providers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+
+class ProviderQuotaTest {
+
+  private final MutableClock clock = new MutableClock(Instant.parse("2024-03-16T00:00:00Z"));
+
+  private static Config settings(String stateFile) {
+    return ConfigFactory.parseString(
+        "window = month, prefer-others-at = 0.8, new-bases-until = 0.9, persist-every = 1 hour,"
+            + " nodes = 1, state-file = \""
+            + stateFile
+            + "\"");
+  }
+
+  @Test
+  void testBudgetThresholds() {
+    ProviderQuota quota = new ProviderQuotas(settings(""), clock).forProvider("FIXER", 100);
+    record(quota, 79);
+    assertTrue(quota.isPreferred());
+    record(quota, 1);
+    assertFalse(quota.isPreferred());
+    assertTrue(quota.allowsNewBases());
+    record(quota, 10);
+    assertFalse(quota.allowsNewBases());
+    assertFalse(quota.isExhausted());
+    record(quota, 10);
+    assertTrue(quota.isExhausted());
+
+    // A new month starts counting again
+    clock.now = Instant.parse("2024-04-01T00:00:00Z");
+    assertEquals(0, quota.getUsed());
+    assertTrue(quota.isPreferred());
+  }
+
+  @Test
+  void testBudgetSharedByNodes() {
+    ProviderQuotas quotas =
+        new ProviderQuotas(
+            ConfigFactory.parseString("nodes = 3").withFallback(settings("")), clock);
+    assertEquals(333, quotas.forProvider("FIXER", 1000).getBudget());
+    assertEquals(0, quotas.forProvider("OPENEXCHANGE", 0).getBudget());
+  }
+
+  @Test
+  void testRefreshStretchedWhenAheadOfPace() {
+    ProviderQuota quota = new ProviderQuotas(settings(""), clock).forProvider("FIXER", 1000);
+    // Half way through March, so about 500 calls are on pace
+    record(quota, 400);
+    assertEquals(1, quota.refreshStretch());
+    record(quota, 600);
+    assertEquals(2, quota.refreshStretch());
+    assertEquals(1, ProviderQuota.unlimited("OPENEXCHANGE").refreshStretch());
+  }
+
+  @Test
+  void testCountsSurviveRestart() throws Exception {
+    File stateFile = new File(Files.createTempDirectory("quota").toFile(), "quota.properties");
+    ProviderQuotas quotas = new ProviderQuotas(settings(stateFile.getPath()), clock);
+    record(quotas.forProvider("FIXER", 100), 42);
+    quotas.save();
+
+    ProviderQuotas restarted = new ProviderQuotas(settings(stateFile.getPath()), clock);
+    assertEquals(42, restarted.forProvider("FIXER", 100).getUsed());
+    assertEquals(0, restarted.forProvider("OPENEXCHANGE", 100).getUsed());
+
+    clock.now = clock.now.plus(Duration.ofDays(31));
+    ProviderQuotas nextMonth = new ProviderQuotas(settings(stateFile.getPath()), clock);
+    assertEquals(0, nextMonth.forProvider("FIXER", 100).getUsed());
+  }
+
+  private static void record(ProviderQuota quota, int calls) {
+    for (int i = 0; i < calls; i++) {
+      quota.record();
+    }
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
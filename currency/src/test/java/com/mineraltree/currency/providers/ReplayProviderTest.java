@@ -0,0 +1,69 @@
+package com.mineraltree.currency.providers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.typesafe.config.ConfigFactory;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+
+class ReplayProviderTest {
+
+  private static ObjectNode fixerResponse(String base, double eur) {
+    ObjectNode response = Marshal.MAPPER.createObjectNode();
+    response.put("success", true);
+    response.put("base", base);
+    response.putObject("rates").put("EUR", eur).put("JPY", 151.2);
+    return response;
+  }
+
+  @Test
+  void testReplaysLatestRecording() throws Exception {
+    RecordedPayloads recordings =
+        new RecordedPayloads(Files.createTempDirectory("recordings").resolve("fixer"));
+    ReplayProvider replay =
+        new ReplayProvider(ConfigFactory.parseString("type = REPLAY"), recordings);
+
+    recordings.write("usd", fixerResponse("USD", 0.91));
+    CurrencyRates rates = replay.getCurrencyRates("USD").toCompletableFuture().get();
+    assertEquals("USD", rates.getBaseCurrency());
+    assertEquals("REPLAY", rates.getProvider());
+    assertEquals(ImmutableMap.of("EUR", 0.91, "JPY", 151.2), rates.getRates());
+    // Versioned by when it was recorded, however often it is replayed
+    assertEquals(
+        Files.getLastModifiedTime(recordings.getDirectory().resolve("USD.json")).toMillis(),
+        rates.getVersion());
+    assertEquals(
+        rates.getVersion(),
+        replay.getCurrencyRates("USD").toCompletableFuture().get().getVersion());
+
+    recordings.write("USD", fixerResponse("USD", 0.93));
+    // Make sure the new recording has another time than the one mapped, however coarse the
+    // file system's timestamps
+    Files.setLastModifiedTime(
+        recordings.getDirectory().resolve("USD.json"), FileTime.fromMillis(0));
+    CurrencyRates replaced = replay.getCurrencyRates("USD").toCompletableFuture().get();
+    assertEquals(Double.valueOf(0.93), replaced.getRates().get("EUR"));
+    assertEquals(0, replaced.getVersion());
+  }
+
+  @Test
+  void testMissingRecordingFails() throws Exception {
+    ReplayProvider replay =
+        new ReplayProvider(
+            ConfigFactory.parseString("type = REPLAY"),
+            new RecordedPayloads(Files.createTempDirectory("recordings")));
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () -> replay.getCurrencyRates("GBP").toCompletableFuture().get());
+    assertTrue(e.getCause() instanceof IllegalArgumentException);
+  }
+}
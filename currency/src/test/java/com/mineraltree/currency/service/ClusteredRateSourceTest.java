@@ -0,0 +1,225 @@
+package com.mineraltree.currency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.cluster.pubsub.DistributedPubSub;
+import akka.cluster.pubsub.DistributedPubSubMediator;
+import akka.cluster.sharding.ClusterSharding;
+import akka.cluster.sharding.ClusterShardingSettings;
+import akka.cluster.sharding.ShardRegion;
+import akka.http.javadsl.model.Query;
+import akka.pattern.PatternsCS;
+import akka.testkit.javadsl.TestKit;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.SettingsChanged;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.providers.BaseProvider;
+import com.mineraltree.utils.Trace;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Runs two cluster nodes in one JVM and checks that each base is fetched by one node only */
+class ClusteredRateSourceTest {
+
+  private static final Config NODE_CONFIG =
+      ConfigFactory.parseString(
+              "akka.loglevel = WARNING\n"
+                  + "akka.actor.provider = cluster\n"
+                  + "akka.actor.warn-about-java-serializer-usage = off\n"
+                  + "akka.remote.netty.tcp.hostname = 127.0.0.1\n"
+                  + "akka.remote.netty.tcp.port = 0\n"
+                  + "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n"
+                  + "akka.cluster.pub-sub.gossip-interval = 100 ms\n")
+          .withFallback(ConfigFactory.load());
+
+  private final CountingProvider provider = new CountingProvider();
+  private final AtomicReference<SettingsChanged> settings =
+      new AtomicReference<>(new SettingsChanged(ImmutableList.of(provider), Duration.ofHours(1)));
+  private ActorSystem nodeA;
+  private ActorSystem nodeB;
+  private ActorRef cacheA;
+  private ActorRef cacheB;
+
+  @BeforeEach
+  void startCluster() {
+    nodeA = ActorSystem.create("currency-service", NODE_CONFIG);
+    nodeB = ActorSystem.create("currency-service", NODE_CONFIG);
+    Cluster.get(nodeA).join(Cluster.get(nodeA).selfAddress());
+    Cluster.get(nodeB).join(Cluster.get(nodeA).selfAddress());
+    new TestKit(nodeA)
+        .awaitCond(
+            Duration.ofSeconds(20),
+            () ->
+                Cluster.get(nodeA).state().members().size() == 2
+                    && Cluster.get(nodeB).state().members().size() == 2
+                    && isAllUp(nodeA)
+                    && isAllUp(nodeB));
+
+    cacheA = startNode(nodeA);
+    cacheB = startNode(nodeB);
+    awaitRegionsReady(nodeA);
+    awaitRegionsReady(nodeB);
+  }
+
+  /**
+   * Waits until the shard coordinator is running and knows both regions. Until then a request can
+   * sit in the region's buffer for longer than the cache waits for its rates.
+   */
+  private static void awaitRegionsReady(ActorSystem node) {
+    ActorRef region = ClusterSharding.get(node).shardRegion("rate-owner");
+    TestKit probe = new TestKit(node);
+    probe.awaitCond(
+        Duration.ofSeconds(20),
+        Duration.ofMillis(200),
+        () -> {
+          region.tell(ShardRegion.getCurrentRegionsInstance(), probe.getRef());
+          Object reply = probe.receiveOne(Duration.ofSeconds(2));
+          return reply instanceof ShardRegion.CurrentRegions
+              && ((ShardRegion.CurrentRegions) reply).getRegions().size() == 2;
+        });
+  }
+
+  private static boolean isAllUp(ActorSystem node) {
+    for (Member member : Cluster.get(node).state().getMembers()) {
+      if (member.status() != MemberStatus.up()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private ActorRef startNode(ActorSystem node) {
+    ActorRef region =
+        ClusterSharding.get(node)
+            .start(
+                "rate-owner",
+                RateOwner.mkProps(settings::get),
+                ClusterShardingSettings.create(node),
+                RateOwner.messageExtractor(10));
+    return node.actorOf(
+        RateCache.mkProps(ClusteredRateSource.mkProps(region), Duration.ofHours(1)), "top-cache");
+  }
+
+  @AfterEach
+  void stopCluster() {
+    TestKit.shutdownActorSystem(nodeB);
+    TestKit.shutdownActorSystem(nodeA);
+  }
+
+  @Test
+  void testEachBaseFetchedOnce() throws Exception {
+    assertEquals("USD", getRates(cacheA, "USD").getBaseCurrency());
+    assertEquals("USD", getRates(cacheB, "USD").getBaseCurrency());
+    assertEquals("EUR", getRates(cacheB, "EUR").getBaseCurrency());
+    assertEquals("EUR", getRates(cacheA, "eur").getBaseCurrency());
+
+    assertEquals(1, provider.callsFor("USD"));
+    assertEquals(1, provider.callsFor("EUR"));
+  }
+
+  @Test
+  void testRatesReplicatedToOtherNodes() throws Exception {
+    TestKit subscriber = new TestKit(nodeB);
+    DistributedPubSub.get(nodeB)
+        .mediator()
+        .tell(
+            new DistributedPubSubMediator.Subscribe(
+                ClusteredRateSource.RATES_TOPIC, subscriber.getRef()),
+            subscriber.getRef());
+    subscriber.expectMsgClass(DistributedPubSubMediator.SubscribeAck.class);
+
+    // Wait until node A has learned that node B has subscribers to the topic
+    TestKit probeA = new TestKit(nodeA);
+    probeA.awaitCond(
+        Duration.ofSeconds(10),
+        () -> {
+          DistributedPubSub.get(nodeA)
+              .mediator()
+              .tell(DistributedPubSubMediator.Count$.MODULE$, probeA.getRef());
+          return probeA.expectMsgClass(Integer.class) == 2;
+        });
+
+    getRates(cacheA, "GBP");
+
+    CurrencyRates replicated = subscriber.expectMsgClass(CurrencyRates.class);
+    assertEquals("GBP", replicated.getBaseCurrency());
+  }
+
+  @Test
+  void testOwnersTakeChangedSettings() throws Exception {
+    getRates(cacheA, "USD");
+    getRates(cacheB, "CHF");
+
+    // As each node does when its configuration changes
+    CountingProvider replacement = new CountingProvider();
+    settings.set(new SettingsChanged(ImmutableList.of(replacement), Duration.ofMillis(200)));
+    nodeA.eventStream().publish(settings.get());
+    nodeB.eventStream().publish(settings.get());
+
+    // The owners, wherever they run, refresh from the new provider at the new interval
+    new TestKit(nodeA)
+        .awaitCond(
+            Duration.ofSeconds(10),
+            () -> replacement.callsFor("USD") > 0 && replacement.callsFor("CHF") > 0);
+    // As do owners started after the change
+    getRates(cacheA, "JPY");
+    assertEquals(0, provider.callsFor("JPY"));
+    assertEquals(1, replacement.callsFor("JPY"));
+  }
+
+  private static CurrencyRates getRates(ActorRef cache, String base) throws Exception {
+    return (CurrencyRates)
+        PatternsCS.ask(cache, new GetRatesRequest(base), 10_000)
+            .toCompletableFuture()
+            .get(10, TimeUnit.SECONDS);
+  }
+
+  /** Answers every base with a fixed rate and counts how often each base was requested */
+  private static class CountingProvider extends BaseProvider {
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+
+    CountingProvider() {
+      super(ConfigFactory.parseString("type = COUNTING, endpoint = \"http://localhost/\""), null);
+    }
+
+    int callsFor(String base) {
+      return calls.getOrDefault(base, new AtomicInteger()).get();
+    }
+
+    @Override
+    public CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
+      calls.computeIfAbsent(base, b -> new AtomicInteger()).incrementAndGet();
+      CurrencyRates.Builder builder = new CurrencyRates.Builder();
+      builder.setBaseCurrency(base);
+      builder.setProvider(getProviderName());
+      builder.addRate("XAU", 0.001);
+      return CompletableFuture.completedFuture(builder.build());
+    }
+
+    @Override
+    protected void extractRatesFromResponse(CurrencyRates.Builder builder, ObjectNode tree) {}
+
+    @Override
+    protected Query getRequestParameters() {
+      return Query.EMPTY;
+    }
+  }
+}
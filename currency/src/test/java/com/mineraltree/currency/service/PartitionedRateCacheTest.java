@@ -0,0 +1,114 @@
+package com.mineraltree.currency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.PatternsCS;
+import akka.testkit.javadsl.TestKit;
+import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.dto.CurrencyRates;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PartitionedRateCacheTest {
+
+  private static final String[] BASES = {"USD", "EUR", "GBP", "JPY", "CHF", "CAD", "AUD", "SEK"};
+
+  private ActorSystem system;
+  private TestKit fetches;
+  private ActorRef cache;
+
+  @BeforeEach
+  void startCache() {
+    system = ActorSystem.create("partition-test");
+    fetches = new TestKit(system);
+    cache =
+        system.actorOf(
+            PartitionedRateCache.mkProps(
+                RateCache.mkProps(
+                    Props.create(ReportingSource.class, fetches.getRef()), Duration.ofHours(1)),
+                4),
+            "top-cache");
+  }
+
+  @AfterEach
+  void stopCache() {
+    TestKit.shutdownActorSystem(system);
+  }
+
+  @Test
+  void testFailedPartitionRestartsAlone() throws Exception {
+    // Find two bases cached by different partitions
+    ActorRef firstPartition = fetch(BASES[0]);
+    String otherBase = null;
+    ActorRef otherPartition = null;
+    for (int i = 1; i < BASES.length && otherPartition == null; i++) {
+      ActorRef partition = fetch(BASES[i]);
+      if (!partition.equals(firstPartition)) {
+        otherBase = BASES[i];
+        otherPartition = partition;
+      }
+    }
+    assertNotEquals(null, otherPartition, "All bases went to one partition");
+
+    // A base is cached by its partition: asking again does not fetch it
+    getRates(BASES[0]);
+    fetches.expectNoMessage(Duration.ofMillis(200));
+
+    // A base no partition can read fails the partition it is sent to
+    firstPartition.tell(new GetRateFailedResponse(null), ActorRef.noSender());
+
+    // The failed partition lost its rates and fetches them again; the other kept its own
+    assertEquals(firstPartition, fetch(BASES[0]));
+    getRates(otherBase);
+    fetches.expectNoMessage(Duration.ofMillis(200));
+  }
+
+  /** Gets the rates of a base which is not cached, returning the partition which fetched it */
+  private ActorRef fetch(String base) throws Exception {
+    getRates(base);
+    assertEquals(base, fetches.expectMsgClass(String.class));
+    return fetches.getLastSender();
+  }
+
+  private CurrencyRates getRates(String base) throws Exception {
+    return (CurrencyRates)
+        PatternsCS.ask(cache, new GetRatesRequest(base), 5_000)
+            .toCompletableFuture()
+            .get(5, TimeUnit.SECONDS);
+  }
+
+  /** The rate source of each partition: tells the test which partition fetched which base */
+  static class ReportingSource extends AbstractActor {
+    private final ActorRef fetches;
+
+    ReportingSource(ActorRef fetches) {
+      this.fetches = fetches;
+    }
+
+    @Override
+    public Receive createReceive() {
+      return receiveBuilder()
+          .match(
+              GetRatesRequest.class,
+              request -> {
+                fetches.tell(request.getBase(), getContext().getParent());
+                CurrencyRates.Builder builder = new CurrencyRates.Builder();
+                builder.setBaseCurrency(request.getBase());
+                builder.setProvider("TEST");
+                builder.addRate("XAU", 0.001);
+                getContext().getParent().tell(builder.build(), getSelf());
+              })
+          .matchAny(message -> {})
+          .build();
+    }
+  }
+}
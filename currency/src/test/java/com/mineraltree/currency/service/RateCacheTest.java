@@ -0,0 +1,123 @@
+package com.mineraltree.currency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.RatesUpdated;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.providers.ReplayProvider;
+import com.mineraltree.utils.Trace;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RateCacheTest {
+
+  private ActorSystem system;
+  private TestKit source;
+  private TestKit client;
+  private ActorRef cache;
+
+  @BeforeEach
+  void startCache() {
+    system = ActorSystem.create("cache-test");
+    source = new TestKit(system);
+    client = new TestKit(system);
+    cache =
+        system.actorOf(
+            RateCache.mkProps(
+                Props.create(ForwardingSource.class, source.getRef()), Duration.ofHours(1)));
+  }
+
+  @AfterEach
+  void stopCache() {
+    TestKit.shutdownActorSystem(system);
+  }
+
+  @Test
+  void testOverdueRequestDropped() {
+    cache.tell(request(Duration.ZERO), client.getRef());
+
+    source.expectNoMessage(Duration.ofMillis(300));
+    client.expectNoMessage(Duration.ZERO);
+  }
+
+  @Test
+  void testWaitingRequestFetchesAgainAfterAbandonedFetch() {
+    TestKit starter = new TestKit(system);
+    cache.tell(request(Duration.ofSeconds(5)), starter.getRef());
+    source.expectMsgClass(GetRatesRequest.class);
+    // Waits for the fetch the first request started
+    cache.tell(request(Duration.ofSeconds(5)), client.getRef());
+    source.expectNoMessage(Duration.ofMillis(300));
+
+    // The fetch is given up, as when the request which started it is overdue
+    cache.tell(new GetRateFailedResponse("USD", true), ActorRef.noSender());
+    assertEquals("USD", source.expectMsgClass(GetRatesRequest.class).getBase());
+
+    cache.tell(usdRates(), ActorRef.noSender());
+    assertEquals("USD", client.expectMsgClass(CurrencyRates.class).getBaseCurrency());
+    assertEquals("USD", starter.expectMsgClass(CurrencyRates.class).getBaseCurrency());
+  }
+
+  @Test
+  void testOlderReplayedRatesKeepLiveRates() {
+    TestKit updates = new TestKit(system);
+    system.eventStream().subscribe(updates.getRef(), RatesUpdated.class);
+    cache.tell(rates("FIXER", 2_000), ActorRef.noSender());
+    assertEquals(2_000, updates.expectMsgClass(RatesUpdated.class).getRates().getVersion());
+
+    // The live providers are down, and the fallback replays an older recording, again and again
+    cache.tell(rates(ReplayProvider.TYPE, 1_000), ActorRef.noSender());
+    cache.tell(rates(ReplayProvider.TYPE, 1_000), ActorRef.noSender());
+    updates.expectNoMessage(Duration.ofMillis(300));
+    cache.tell(request(Duration.ofSeconds(5)), client.getRef());
+    CurrencyRates answered = client.expectMsgClass(CurrencyRates.class);
+    assertEquals("FIXER", answered.getProvider());
+    assertEquals(2_000, answered.getVersion());
+
+    // A newer recording is taken
+    cache.tell(rates(ReplayProvider.TYPE, 3_000), ActorRef.noSender());
+    assertEquals(3_000, updates.expectMsgClass(RatesUpdated.class).getRates().getVersion());
+  }
+
+  private static GetRatesRequest request(Duration budget) {
+    return new GetRatesRequest("USD", true, null, Trace.start(null, budget));
+  }
+
+  private static CurrencyRates usdRates() {
+    return rates("TEST", 1);
+  }
+
+  private static CurrencyRates rates(String provider, long version) {
+    CurrencyRates.Builder builder = new CurrencyRates.Builder();
+    builder.setBaseCurrency("USD");
+    builder.setProvider(provider);
+    builder.setVersion(version);
+    builder.addRate("EUR", 0.91);
+    return builder.build();
+  }
+
+  /** The cache's rate source: passes what the cache sends it on to the test */
+  static class ForwardingSource extends AbstractActor {
+    private final ActorRef target;
+
+    ForwardingSource(ActorRef target) {
+      this.target = target;
+    }
+
+    @Override
+    public Receive createReceive() {
+      return receiveBuilder()
+          .match(GetRatesRequest.class, request -> target.tell(request, getSelf()))
+          .build();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package com.mineraltree.currency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.dto.CurrencyRatesDelta;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class RateHistoryTest {
+
+  @Test
+  void testDeltasComposeSinceKnownVersion() {
+    RateHistory history = new RateHistory(5);
+    history.record(rates(100, ImmutableMap.of("EUR", 0.9, "GBP", 0.8, "JPY", 110.0)));
+    history.record(rates(200, ImmutableMap.of("EUR", 0.91, "GBP", 0.8, "JPY", 110.0)));
+    history.record(rates(300, ImmutableMap.of("EUR", 0.91, "GBP", 0.79)));
+
+    CurrencyRatesDelta delta = history.since(100);
+    assertFalse(delta.isFull());
+    assertEquals(100L, (long) delta.getFromVersion());
+    assertEquals(300L, delta.getVersion());
+    assertEquals(ImmutableMap.of("EUR", 0.91, "GBP", 0.79), delta.getChanged());
+    assertEquals(ImmutableSet.of("JPY"), delta.getRemoved());
+
+    assertTrue(history.since(300).getChanged().isEmpty());
+  }
+
+  @Test
+  void testUnknownVersionGetsFullRates() {
+    RateHistory history = new RateHistory(1);
+    history.record(rates(100, ImmutableMap.of("EUR", 0.9)));
+    history.record(rates(200, ImmutableMap.of("EUR", 0.91)));
+    history.record(rates(300, ImmutableMap.of("EUR", 0.92)));
+
+    assertTrue(history.since(100).isFull());
+    assertTrue(history.since(42).isFull());
+    assertEquals(ImmutableMap.of("EUR", 0.92), history.since(42).getChanged());
+  }
+
+  @Test
+  void testVersionsOnlyIncrease() {
+    RateHistory history = new RateHistory(5);
+    CurrencyRates first = rates(100, ImmutableMap.of("EUR", 0.9));
+    history.record(first);
+
+    assertNull(history.record(first));
+    assertEquals(101L, history.record(rates(50, ImmutableMap.of("EUR", 0.91))).rates.getVersion());
+    assertEquals(102L, history.record(rates(101, ImmutableMap.of("EUR", 0.92))).rates.getVersion());
+  }
+
+  private static CurrencyRates rates(long version, Map<String, Double> values) {
+    CurrencyRates.Builder builder = new CurrencyRates.Builder();
+    builder.setBaseCurrency("USD");
+    builder.setProvider("TEST");
+    builder.setVersion(version);
+    builder.addAllRates(values);
+    return builder.build();
+  }
+}
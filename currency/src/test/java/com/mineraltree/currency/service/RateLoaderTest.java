@@ -0,0 +1,146 @@
+package com.mineraltree.currency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.http.javadsl.model.Query;
+import akka.testkit.javadsl.TestKit;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import com.mineraltree.currency.ControlCode;
+import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.api.CurrencyProcessor;
+import com.mineraltree.currency.dto.CurrencyRates;
+import com.mineraltree.currency.providers.BaseProvider;
+import com.mineraltree.currency.providers.ProviderQuota;
+import com.mineraltree.utils.Trace;
+import com.typesafe.config.ConfigFactory;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RateLoaderTest {
+
+  private final List<String> calls = new CopyOnWriteArrayList<>();
+  /** Well within its budget */
+  private final StubProvider fresh = new StubProvider("FRESH", quota(0.1, 1));
+  /** Past the share of its budget after which it fetches no new bases, and ahead of pace */
+  private final StubProvider spent = new StubProvider("SPENT", quota(0.95, 2));
+
+  private ActorSystem system;
+  private TestKit requester;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("loader-test");
+    requester = new TestKit(system);
+  }
+
+  @AfterEach
+  void stopSystem() {
+    TestKit.shutdownActorSystem(system);
+  }
+
+  @Test
+  void testProvidersTriedInBudgetOrder() {
+    ActorRef loader = loader(spent, fresh);
+
+    // A new base is not fetched from the provider low on budget, though it is configured first
+    loader.tell(ControlCode.GET_CURRENT, requester.getRef());
+    assertEquals("FRESH", requester.expectMsgClass(CurrencyRates.class).getProvider());
+    assertEquals(ImmutableList.of("FRESH"), calls);
+
+    // Once loaded, it is the fallback of the provider with budget to spare
+    fresh.failing = true;
+    loader.tell(ControlCode.GET_CURRENT, requester.getRef());
+    assertEquals("SPENT", requester.expectMsgClass(CurrencyRates.class).getProvider());
+    assertEquals(ImmutableList.of("FRESH", "FRESH", "SPENT"), calls);
+  }
+
+  @Test
+  void testNewBaseRefusedWhenBudgetLow() {
+    ActorRef loader = loader(spent);
+
+    loader.tell(ControlCode.GET_CURRENT, requester.getRef());
+    requester.expectMsgClass(GetRateFailedResponse.class);
+    assertEquals(ImmutableList.of(), calls);
+  }
+
+  @Test
+  void testRefreshesStretchedWhenAheadOfPace() {
+    ActorRef loader = loader(spent, fresh);
+    loader.tell(ControlCode.GET_CURRENT, requester.getRef());
+    requester.expectMsgClass(CurrencyRates.class);
+
+    // The first provider to try is ahead of pace by 2, so every other refresh is skipped
+    spentPreferred();
+    loader.tell(ControlCode.REFRESH, requester.getRef());
+    requester.expectNoMessage(Duration.ofMillis(200));
+    loader.tell(ControlCode.REFRESH, requester.getRef());
+    assertEquals("SPENT", requester.expectMsgClass(CurrencyRates.class).getProvider());
+    assertEquals(ImmutableList.of("FRESH", "SPENT"), calls);
+  }
+
+  private ActorRef loader(CurrencyProcessor... providers) {
+    return system.actorOf(RateLoader.mkProps("USD", ImmutableList.copyOf(providers)));
+  }
+
+  /** Has the provider low on budget tried first, as when the other is even lower */
+  private void spentPreferred() {
+    when(spent.getQuota().isPreferred()).thenReturn(true);
+    when(fresh.getQuota().isPreferred()).thenReturn(false);
+  }
+
+  /** A quota at {@code usage} of its budget, with the thresholds of the default configuration */
+  private static ProviderQuota quota(double usage, int refreshStretch) {
+    ProviderQuota quota = mock(ProviderQuota.class);
+    when(quota.usage()).thenReturn(usage);
+    when(quota.isPreferred()).thenReturn(usage < 0.8);
+    when(quota.allowsNewBases()).thenReturn(usage < 0.9);
+    when(quota.isExhausted()).thenReturn(usage >= 1);
+    when(quota.refreshStretch()).thenReturn(refreshStretch);
+    return quota;
+  }
+
+  /** Answers every base with a fixed rate, or fails while {@code failing}, and logs its calls */
+  private class StubProvider extends BaseProvider {
+    private volatile boolean failing;
+
+    StubProvider(String name, ProviderQuota quota) {
+      super(ConfigFactory.parseString("type = " + name), null);
+      setQuota(quota);
+    }
+
+    @Override
+    public CompletionStage<CurrencyRates> getCurrencyRates(String base, Trace trace) {
+      calls.add(getProviderName());
+      CompletableFuture<CurrencyRates> result = new CompletableFuture<>();
+      if (failing) {
+        result.completeExceptionally(new RuntimeException(getProviderName() + " is down"));
+      } else {
+        CurrencyRates.Builder builder = new CurrencyRates.Builder();
+        builder.setBaseCurrency(base);
+        builder.setProvider(getProviderName());
+        builder.addRate("XAU", 0.001);
+        result.complete(builder.build());
+      }
+      return result;
+    }
+
+    @Override
+    protected void extractRatesFromResponse(CurrencyRates.Builder builder, ObjectNode tree) {}
+
+    @Override
+    protected Query getRequestParameters() {
+      return Query.EMPTY;
+    }
+  }
+}
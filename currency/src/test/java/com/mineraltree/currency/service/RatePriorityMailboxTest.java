@@ -0,0 +1,77 @@
+package com.mineraltree.currency.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.actor.ActorSystem;
+import akka.actor.Status;
+import akka.dispatch.Envelope;
+import akka.testkit.javadsl.TestKit;
+import com.mineraltree.currency.ControlCode;
+import com.mineraltree.currency.GetRateFailedResponse;
+import com.mineraltree.currency.GetRatesRequest;
+import com.mineraltree.currency.RetryRatesRequest;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RatePriorityMailboxTest {
+
+  private ActorSystem system;
+  private TestKit requester;
+  private TestKit owner;
+
+  @BeforeEach
+  void startSystem() {
+    system = ActorSystem.create("mailbox-test");
+    requester = new TestKit(system);
+    owner = new TestKit(system);
+  }
+
+  @AfterEach
+  void stopSystem() {
+    TestKit.shutdownActorSystem(system);
+  }
+
+  @Test
+  void testResultsBeforeControlBeforeRequests() {
+    RatePriorityMailbox.RateQueue queue = new RatePriorityMailbox.RateQueue(10, null);
+    GetRatesRequest first = new GetRatesRequest("USD");
+    GetRatesRequest second = new GetRatesRequest("EUR");
+    RetryRatesRequest retry = new RetryRatesRequest(first, 0);
+    GetRateFailedResponse failed = new GetRateFailedResponse("XXX");
+
+    enqueue(queue, retry);
+    enqueue(queue, first);
+    enqueue(queue, ControlCode.REFRESH);
+    enqueue(queue, second);
+    enqueue(queue, failed);
+
+    assertEquals(5, queue.numberOfMessages());
+    assertEquals(failed, queue.dequeue().message());
+    assertEquals(ControlCode.REFRESH, queue.dequeue().message());
+    assertEquals(first, queue.dequeue().message());
+    assertEquals(second, queue.dequeue().message());
+    assertEquals(retry, queue.dequeue().message());
+    assertNull(queue.dequeue());
+  }
+
+  @Test
+  void testRequestsBeyondCapacityFailFast() {
+    RatePriorityMailbox.RateQueue queue = new RatePriorityMailbox.RateQueue(1, null);
+    enqueue(queue, new GetRatesRequest("USD"));
+    enqueue(queue, new GetRatesRequest("EUR"));
+    // Never turned away
+    enqueue(queue, new GetRateFailedResponse("XXX"));
+
+    Status.Failure failure = requester.expectMsgClass(Status.Failure.class);
+    assertTrue(failure.cause() instanceof RejectedExecutionException);
+    assertEquals(2, queue.numberOfMessages());
+  }
+
+  private void enqueue(RatePriorityMailbox.RateQueue queue, Object message) {
+    queue.enqueue(owner.getRef(), Envelope.apply(message, requester.getRef(), system));
+  }
+}
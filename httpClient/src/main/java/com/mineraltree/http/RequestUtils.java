@@ -1,14 +1,29 @@
 package com.mineraltree.http;
 
 import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.actor.Scheduler;
+import akka.dispatch.Dispatchers;
 import akka.http.javadsl.Http;
 import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.Query;
+import akka.http.javadsl.model.Uri;
+import akka.http.javadsl.model.headers.RawHeader;
 import akka.stream.ActorMaterializer;
+import akka.stream.ActorMaterializerSettings;
 import akka.stream.Materializer;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.utils.HttpHeaderKey;
+import com.mineraltree.utils.Trace;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import scala.concurrent.ExecutionContextExecutor;
 
 /**
  * Helper utilities for dealing with HTTP request/response actions. Provides some syntactic sugar
@@ -18,14 +33,126 @@ public class RequestUtils {
 
   private final Http http;
   private final Materializer materializer;
+  private final ExecutionContextExecutor executor;
+  private final Scheduler scheduler;
 
   public RequestUtils(ActorSystem system) {
-    materializer = ActorMaterializer.create(system);
+    this(system, Dispatchers.DefaultDispatcherId());
+  }
+
+  /**
+   * @param dispatcherId the dispatcher which reads the responses and runs everything chained onto
+   *     them, so slow or blocking response handling is kept off the other dispatchers
+   */
+  public RequestUtils(ActorSystem system, String dispatcherId) {
+    materializer =
+        ActorMaterializer.create(
+            ActorMaterializerSettings.create(system).withDispatcher(dispatcherId), system);
+    executor = system.dispatchers().lookup(dispatcherId);
     http = Http.get(system);
+    scheduler = system.scheduler();
   }
 
   public CompletionStage<WrappedResponse> singleRequest(HttpRequest request) {
-    return http.singleRequest(request).thenApply(r -> new WrappedResponse(r, materializer));
+    return http.singleRequest(request)
+        .thenApplyAsync(r -> new WrappedResponse(r, materializer), executor);
+  }
+
+  /**
+   * Sends a request to another of our services as part of the work traced by {@code trace}: the
+   * trace id goes with the request in the {@link HttpHeaderKey#TRACEID} header, and the time until
+   * the response headers arrive is recorded as an {@code http} span.
+   *
+   * <p>If the trace has a deadline the request gets only the time remaining: the budget is sent in
+   * the {@link HttpHeaderKey#TIMEOUT} header, and the request fails with a {@link TimeoutException}
+   * if the response has not arrived by the deadline.
+   */
+  public CompletionStage<WrappedResponse> singleRequest(HttpRequest request, Trace trace) {
+    return singleRequest(request, trace, true);
+  }
+
+  /**
+   * As {@link #singleRequest(HttpRequest, Trace)}, without the trace headers when {@code
+   * passOnTrace} is false: for third parties, which have no use for our trace ids and deadlines.
+   */
+  public CompletionStage<WrappedResponse> singleRequest(
+      HttpRequest request, Trace trace, boolean passOnTrace) {
+    long start = System.nanoTime();
+    String span = "http " + request.method().value() + " " + request.getUri().host().address();
+    HttpRequest sending =
+        passOnTrace
+            ? request.addHeader(RawHeader.create(HttpHeaderKey.TRACEID.getKey(), trace.getId()))
+            : request;
+    CompletionStage<HttpResponse> sent;
+    if (trace.hasDeadline()) {
+      Duration remaining = trace.remaining();
+      if (passOnTrace) {
+        sending =
+            sending.addHeader(
+                RawHeader.create(
+                    HttpHeaderKey.TIMEOUT.getKey(),
+                    String.valueOf(Math.max(remaining.toMillis(), 0))));
+      }
+      sent = withDeadline(sending, remaining);
+    } else {
+      sent = http.singleRequest(sending);
+    }
+    return sent.whenComplete(
+            (response, error) ->
+                trace.span(
+                    error == null ? span + " " + response.status().intValue() : span + " failed",
+                    start))
+        .thenApplyAsync(r -> new WrappedResponse(r, materializer), executor);
+  }
+
+  /**
+   * Sends the request, failing it once {@code remaining} is up. A response arriving after that has
+   * its entity discarded, so its connection goes back to the pool.
+   */
+  private CompletionStage<HttpResponse> withDeadline(HttpRequest request, Duration remaining) {
+    CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+    if (remaining.isNegative() || remaining.isZero()) {
+      result.completeExceptionally(new TimeoutException("Deadline passed before the request"));
+      return result;
+    }
+    Cancellable timeout =
+        scheduler.scheduleOnce(
+            remaining,
+            () ->
+                result.completeExceptionally(
+                    new TimeoutException(
+                        "No response from " + request.getUri() + " before the deadline")),
+            executor);
+    http.singleRequest(request)
+        .whenComplete(
+            (response, error) -> {
+              timeout.cancel();
+              if (error != null) {
+                result.completeExceptionally(error);
+              } else if (!result.complete(response)) {
+                response.discardEntityBytes(materializer);
+              }
+            });
+    return result;
+  }
+
+  /**
+   * Opens a pooled connection to the host of {@code uri} ahead of the first real request, so DNS,
+   * TCP and TLS setup are done while the service is starting. Sends a HEAD request for the root of
+   * the host, not {@code uri} itself: an API's endpoints may count every call against a paid plan,
+   * while its root is free. The response, error or not, is discarded.
+   *
+   * @return completes when the response arrives; never fails
+   */
+  public CompletionStage<Void> warmUp(String uri) {
+    return http.singleRequest(HttpRequest.HEAD(rootOf(uri).toString()))
+        .thenAccept(response -> response.discardEntityBytes(materializer))
+        .exceptionally(error -> null);
+  }
+
+  /** The root of the host of {@code uri}: its scheme and authority, with the path "/" */
+  static Uri rootOf(String uri) {
+    return Uri.create(uri).path("/").query(Query.EMPTY).fragment(Optional.empty());
   }
 
   public ObjectNode makeObjectNode() {
@@ -0,0 +1,125 @@
+package com.mineraltree.http;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.extractRequest;
+import static akka.http.javadsl.server.Directives.onSuccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.ConnectHttp;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.Route;
+import akka.stream.ActorMaterializer;
+import akka.stream.Materializer;
+import com.mineraltree.utils.HttpHeaderKey;
+import com.mineraltree.utils.Trace;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RequestUtilsTest {
+
+  private final List<HttpRequest> received = new CopyOnWriteArrayList<>();
+  /** Never completes, so a request to the server is answered only once it is shut down */
+  private final CompletableFuture<String> answer = new CompletableFuture<>();
+
+  private ActorSystem system;
+  private RequestUtils requestUtils;
+  private String uri;
+
+  @BeforeEach
+  void startServer() throws Exception {
+    system = ActorSystem.create("request-test");
+    Materializer materializer = ActorMaterializer.create(system);
+    Route route =
+        extractRequest(
+            request -> {
+              received.add(request);
+              return request.getUri().path().equals("/slow")
+                  ? onSuccess(answer, body -> complete(body))
+                  : complete("rates");
+            });
+    int port =
+        Http.get(system)
+            .bindAndHandle(
+                route.flow(system, materializer), ConnectHttp.toHost("127.0.0.1", 0), materializer)
+            .toCompletableFuture()
+            .get(5, TimeUnit.SECONDS)
+            .localAddress()
+            .getPort();
+    uri = "http://127.0.0.1:" + port;
+    requestUtils = new RequestUtils(system);
+  }
+
+  @AfterEach
+  void stopServer() {
+    system.terminate();
+  }
+
+  @Test
+  void testFailsAtDeadline() throws Exception {
+    // Connect first, so the deadline is spent waiting for the response
+    requestUtils.singleRequest(HttpRequest.GET(uri + "/rates")).toCompletableFuture().get();
+    received.clear();
+
+    long start = System.nanoTime();
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                requestUtils
+                    .singleRequest(
+                        HttpRequest.GET(uri + "/slow"),
+                        Trace.start("caller-1", Duration.ofMillis(300)))
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof TimeoutException);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+
+    // The server was told who is asking, and how long it had
+    HttpRequest request = received.get(0);
+    assertEquals("caller-1", request.getHeader(HttpHeaderKey.TRACEID.getKey()).get().value());
+    long timeout = Long.parseLong(request.getHeader(HttpHeaderKey.TIMEOUT.getKey()).get().value());
+    assertTrue(timeout > 0 && timeout <= 300, Long.toString(timeout));
+  }
+
+  @Test
+  void testOverdueRequestNotSent() {
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () ->
+                requestUtils
+                    .singleRequest(HttpRequest.GET(uri + "/slow"), Trace.start(null, Duration.ZERO))
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof TimeoutException);
+    assertTrue(received.isEmpty());
+  }
+
+  @Test
+  void testTraceKeptFromThirdParties() throws Exception {
+    requestUtils
+        .singleRequest(
+            HttpRequest.GET(uri + "/rates"), Trace.start("caller-2", Duration.ofSeconds(5)), false)
+        .toCompletableFuture()
+        .get(5, TimeUnit.SECONDS)
+        .assertStatus(StatusCodes.OK);
+
+    HttpRequest request = received.get(0);
+    assertFalse(request.getHeader(HttpHeaderKey.TRACEID.getKey()).isPresent());
+    assertFalse(request.getHeader(HttpHeaderKey.TIMEOUT.getKey()).isPresent());
+  }
+}
@@ -0,0 +1,178 @@
+package com.mineraltree.perf.load;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import com.mineraltree.api.marshal.Marshal;
+import com.mineraltree.perf.stub.StubBehavior;
+import com.mineraltree.perf.stub.StubProviderServer;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.io.File;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the throughput and latency of the complete currency service over HTTP. Starts the stub
+ * rate provider in-process and the service in a child JVM pointed at it (see {@code
+ * perf/profiles/local-stub}), then runs the scenarios listed in {@code benchmark.conf} one after
+ * the other.
+ *
+ * <p>Results are printed as a table and written as JSON to {@code benchmark.output-dir}, named
+ * after {@code benchmark.label}, so runs against different builds can be compared directly. Since
+ * the stub is seeded and the scenarios are fixed, differences between two reports taken on the same
+ * machine come from the service.
+ *
+ * <p>Usually run through {@code gradle :perf:benchmark -Plabel=<name>}. Takes an optional path of a
+ * configuration file whose settings override {@code benchmark.conf}.
+ */
+public class BenchmarkSuite {
+
+  private static final Logger log = LoggerFactory.getLogger(BenchmarkSuite.class);
+
+  private static final DateTimeFormatter FILE_TIMESTAMP =
+      DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(ZoneOffset.UTC);
+
+  private final Config config;
+  private final ActorSystem system;
+  private final String target;
+  private final File outputDir;
+
+  private StubProviderServer stub;
+  private StubBehavior defaultBehavior;
+  private ServiceProcess service;
+
+  private BenchmarkSuite(Config config, ActorSystem system) {
+    this.config = config.getConfig("benchmark");
+    this.system = system;
+    this.target = this.config.getString("target");
+    this.outputDir = new File(this.config.getString("output-dir"));
+  }
+
+  private List<ScenarioResult> runAll() throws Exception {
+    if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+      throw new IllegalStateException("Cannot create " + outputDir);
+    }
+    if (config.getBoolean("stub.embedded")) {
+      stub = new StubProviderServer(system, config.getConfig("stub.config"));
+      stub.start().toCompletableFuture().get(30, TimeUnit.SECONDS);
+      defaultBehavior = stub.getBehavior();
+    }
+    if (config.getBoolean("service.launch")) {
+      service =
+          new ServiceProcess(
+              config.getConfig("service"), target, new File(outputDir, "service.log"));
+    }
+
+    LoadGenerator generator =
+        new LoadGenerator(
+            system, ActorMaterializer.create(system), target, config.getInt("max-outstanding"));
+    List<String> only =
+        config.getString("only").isEmpty()
+            ? null
+            : Arrays.asList(config.getString("only").split(","));
+
+    List<ScenarioResult> results = new ArrayList<>();
+    boolean serviceRunning = false;
+    try {
+      for (Config scenarioConfig : config.getConfigList("scenarios")) {
+        Scenario scenario = new Scenario(scenarioConfig);
+        if (only != null && !only.contains(scenario.getName())) {
+          continue;
+        }
+        boolean restart =
+            scenarioConfig.hasPath("restart-service")
+                && scenarioConfig.getBoolean("restart-service");
+        Double startupMillis = null;
+        if (service != null && (restart || !serviceRunning)) {
+          service.stop();
+          startupMillis = service.start();
+          serviceRunning = true;
+        }
+        applyStubBehavior(scenario);
+        ScenarioResult result = generator.run(scenario);
+        if (restart && startupMillis != null) {
+          result.setStartupMillis(startupMillis);
+        }
+        results.add(result);
+        log.info(result.toTableRow());
+        Thread.sleep(config.getDuration("pause", TimeUnit.MILLISECONDS));
+      }
+    } finally {
+      if (service != null) {
+        service.stop();
+      }
+    }
+    return results;
+  }
+
+  /** Applies the scenario's stub overrides on top of the configured default behavior */
+  private void applyStubBehavior(Scenario scenario) {
+    if (stub == null) {
+      if (!scenario.getStubBehavior().isEmpty()) {
+        log.warn(
+            "Scenario '{}' changes the stub behavior but the stub is not embedded; ignored",
+            scenario.getName());
+      }
+      return;
+    }
+    stub.setBehavior(defaultBehavior.withOverrides(scenario.getStubBehavior()));
+    stub.reset();
+  }
+
+  private File writeReport(List<ScenarioResult> results) throws Exception {
+    Report report = new Report(config.getString("label"), results);
+    File file =
+        new File(outputDir, report.label + "-" + FILE_TIMESTAMP.format(Instant.now()) + ".json");
+    Marshal.MAPPER.writerWithDefaultPrettyPrinter().writeValue(file, report);
+    return file;
+  }
+
+  /** The JSON report of one benchmark run */
+  private static class Report {
+    private final String label;
+    private final String timestamp = Instant.now().toString();
+    private final String javaVersion = System.getProperty("java.version");
+    private final int processors = Runtime.getRuntime().availableProcessors();
+    private final List<ScenarioResult> scenarios;
+
+    Report(String label, List<ScenarioResult> scenarios) {
+      this.label = label;
+      this.scenarios = scenarios;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Config config = ConfigFactory.parseResources(BenchmarkSuite.class, "/benchmark.conf");
+    if (args.length > 0) {
+      config = ConfigFactory.parseFile(new File(args[0])).withFallback(config);
+    }
+    config = ConfigFactory.systemProperties().withFallback(config).resolve();
+
+    ActorSystem system = ActorSystem.create("benchmark", config);
+    int exitCode = 0;
+    try {
+      BenchmarkSuite suite = new BenchmarkSuite(config, system);
+      List<ScenarioResult> results = suite.runAll();
+
+      System.out.println();
+      System.out.println(ScenarioResult.tableHeader());
+      results.forEach(result -> System.out.println(result.toTableRow()));
+      System.out.println();
+      System.out.println("Report written to " + suite.writeReport(results));
+    } catch (Exception e) {
+      log.error("Benchmark failed", e);
+      exitCode = 1;
+    } finally {
+      system.terminate();
+      system.getWhenTerminated().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+    System.exit(exitCode);
+  }
+}
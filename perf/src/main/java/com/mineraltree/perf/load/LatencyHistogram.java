@@ -0,0 +1,97 @@
+package com.mineraltree.perf.load;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets. Values are recorded in microseconds with
+ * better than 1% precision, from 1 microsecond up to several days, in a fixed amount of memory.
+ * Recording is safe from any thread and never blocks, so it does not distort the measurements of a
+ * load test that completes requests on many threads at once.
+ */
+class LatencyHistogram {
+
+  /**
+   * Each power of 2 is split into 128 buckets, so a bucket is narrower than 1/128 (0.8%) of any
+   * value in it
+   */
+  private static final int SUB_BUCKET_BITS = 7;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  /** Values below this are recorded exactly */
+  private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+
+  private static final int MAX_SHIFT = 36;
+  private static final int BUCKET_COUNT = LINEAR_LIMIT + MAX_SHIFT * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong total = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /** Records a single latency measured in microseconds */
+  void record(long micros) {
+    long value = Math.max(0, micros);
+    counts.incrementAndGet(indexOf(value));
+    total.incrementAndGet();
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  long getCount() {
+    return total.get();
+  }
+
+  long getMaxMicros() {
+    return max.get();
+  }
+
+  /**
+   * Returns the latency, in microseconds, which {@code percentile} percent of the recorded values
+   * do not exceed.
+   *
+   * @param percentile a value in the range 0..100, for example 99.9
+   */
+  long getPercentileMicros(double percentile) {
+    long count = total.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueIn(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  static int indexOf(long value) {
+    if (value < LINEAR_LIMIT) {
+      return (int) value;
+    }
+    int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    if (shift > MAX_SHIFT) {
+      return BUCKET_COUNT - 1;
+    }
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return LINEAR_LIMIT + (shift - 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long lowestValueIn(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int offset = index - LINEAR_LIMIT;
+    int shift = offset / SUB_BUCKETS + 1;
+    return (long) (offset % SUB_BUCKETS + SUB_BUCKETS) << shift;
+  }
+
+  static long highestValueIn(int index) {
+    if (index < LINEAR_LIMIT) {
+      return index;
+    }
+    int shift = (index - LINEAR_LIMIT) / SUB_BUCKETS + 1;
+    return lowestValueIn(index) + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,212 @@
+package com.mineraltree.perf.load;
+
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.model.HttpRequest;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.headers.RawHeader;
+import akka.stream.Materializer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives {@code /currencyConverter/allConversionRates} with the Akka HTTP client according to a
+ * {@link Scenario}. Every response body is read in full, so the measured latency is the time until
+ * the client has the complete payload.
+ *
+ * <p>Open-loop latencies are measured from the time a request was <em>scheduled</em> to be sent,
+ * not from when it actually went out. Otherwise a stalled service would simply cause fewer requests
+ * to be sent and the stall would be hidden from the percentiles (coordinated omission).
+ */
+class LoadGenerator {
+
+  private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+  private static final String RATES_PATH = "/currencyConverter/allConversionRates?base=";
+
+  private final ActorSystem system;
+  private final Materializer materializer;
+  private final String target;
+  private final int maxOutstanding;
+
+  /**
+   * @param target the root URL of the service, for example {@code http://127.0.0.1:8080}
+   * @param maxOutstanding the most requests an open-loop scenario may have in flight. Arrivals
+   *     beyond this are counted as {@code dropped} instead of queuing without limit in the client.
+   */
+  LoadGenerator(ActorSystem system, Materializer materializer, String target, int maxOutstanding) {
+    this.system = verifyNotNull(system, "system");
+    this.materializer = verifyNotNull(materializer, "materializer");
+    this.target = verifyNotEmpty(target, "target");
+    this.maxOutstanding = maxOutstanding;
+  }
+
+  /** Runs the scenario, including its warmup, and returns what was measured after the warmup */
+  ScenarioResult run(Scenario scenario) throws InterruptedException {
+    Run run = new Run(scenario);
+    log.info(
+        "Running scenario '{}' ({}) for {} after {} warmup",
+        scenario.getName(),
+        scenario.getMode(),
+        scenario.getDuration(),
+        scenario.getWarmup());
+    if (scenario.getMode() == Scenario.Mode.CLOSED) {
+      runClosedLoop(run);
+    } else {
+      runOpenLoop(run);
+    }
+    return run.finish();
+  }
+
+  /** Each client sends its next request as soon as the previous one has completed */
+  private void runClosedLoop(Run run) throws InterruptedException {
+    CompletableFuture<?>[] clients = new CompletableFuture<?>[run.scenario.getConcurrency()];
+    for (int i = 0; i < clients.length; i++) {
+      clients[i] = new CompletableFuture<>();
+      sendUntilEnd(run, clients[i]);
+    }
+    awaitQuietly(CompletableFuture.allOf(clients), run);
+  }
+
+  private void sendUntilEnd(Run run, CompletableFuture<?> done) {
+    long start = System.nanoTime();
+    if (start >= run.endNanos) {
+      done.complete(null);
+      return;
+    }
+    send(run, run.scenario.nextBase(), start)
+        .whenComplete((ignored, throwable) -> sendUntilEnd(run, done));
+  }
+
+  /** Requests are started on a fixed schedule, whether or not earlier ones have completed */
+  private void runOpenLoop(Run run) throws InterruptedException {
+    long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / run.scenario.getRatePerSecond());
+    long intended = run.startNanos;
+    while (intended < run.endNanos) {
+      long wait = intended - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      if (run.outstanding.get() >= maxOutstanding) {
+        run.dropped(intended);
+      } else {
+        run.outstanding.incrementAndGet();
+        send(run, run.scenario.nextBase(), intended)
+            .whenComplete((ignored, throwable) -> run.outstanding.decrementAndGet());
+      }
+      intended += intervalNanos;
+    }
+    while (run.outstanding.get() > 0 && System.nanoTime() < run.endNanos + run.drainNanos) {
+      Thread.sleep(10);
+    }
+    if (run.outstanding.get() > 0) {
+      log.warn(
+          "Scenario '{}' ended with {} requests still in flight",
+          run.scenario.getName(),
+          run.outstanding.get());
+    }
+  }
+
+  /**
+   * Sends one request and records its outcome.
+   *
+   * @param startNanos the time the request counts as started, used to compute its latency
+   */
+  private CompletionStage<Long> send(Run run, String base, long startNanos) {
+    HttpRequest request = HttpRequest.GET(target + RATES_PATH + base);
+    if (run.scenario.getAccept() != null) {
+      request = request.addHeader(RawHeader.create("Accept", run.scenario.getAccept()));
+    }
+    return Http.get(system)
+        .singleRequest(request)
+        .thenCompose(
+            response ->
+                response
+                    .entity()
+                    .getDataBytes()
+                    .runFold(0L, (total, bytes) -> total + bytes.size(), materializer)
+                    .thenApply(
+                        size -> {
+                          run.completed(startNanos, statusOf(response), size);
+                          return size;
+                        }))
+        .exceptionally(
+            throwable -> {
+              run.completed(startNanos, "failed", 0);
+              return 0L;
+            });
+  }
+
+  private static String statusOf(HttpResponse response) {
+    return String.valueOf(response.status().intValue());
+  }
+
+  private static void awaitQuietly(CompletableFuture<?> future, Run run)
+      throws InterruptedException {
+    long timeout = run.endNanos + run.drainNanos - System.nanoTime();
+    try {
+      future.get(Math.max(0, timeout), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      log.warn("Scenario '{}' did not drain cleanly: {}", run.scenario.getName(), e.toString());
+    }
+  }
+
+  /** The measurements of a single scenario run */
+  private static class Run {
+    private final Scenario scenario;
+    private final long startNanos;
+    private final long measureFromNanos;
+    private final long endNanos;
+    /** How long to wait for requests still in flight when the scenario's time is up */
+    private final long drainNanos = TimeUnit.SECONDS.toNanos(30);
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final Map<String, AtomicLong> statuses = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong lastCompletionNanos = new AtomicLong(Long.MIN_VALUE);
+
+    Run(Scenario scenario) {
+      this.scenario = scenario;
+      this.startNanos = System.nanoTime();
+      this.measureFromNanos = startNanos + scenario.getWarmup().toNanos();
+      this.endNanos = measureFromNanos + scenario.getDuration().toNanos();
+    }
+
+    void completed(long requestStartNanos, String status, long size) {
+      if (requestStartNanos < measureFromNanos) {
+        return;
+      }
+      long now = System.nanoTime();
+      latencies.record(TimeUnit.NANOSECONDS.toMicros(now - requestStartNanos));
+      statuses.computeIfAbsent(status, s -> new AtomicLong()).incrementAndGet();
+      bytes.addAndGet(size);
+      lastCompletionNanos.accumulateAndGet(now, Math::max);
+    }
+
+    void dropped(long requestStartNanos) {
+      if (requestStartNanos >= measureFromNanos) {
+        statuses.computeIfAbsent("dropped", s -> new AtomicLong()).incrementAndGet();
+      }
+    }
+
+    ScenarioResult finish() {
+      // Requests started near the end may complete after it; the window covers them too
+      long elapsed = Math.max(endNanos, lastCompletionNanos.get()) - measureFromNanos;
+      return new ScenarioResult(scenario, elapsed, latencies, statuses, bytes.get());
+    }
+  }
+}
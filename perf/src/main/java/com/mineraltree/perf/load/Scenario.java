@@ -0,0 +1,144 @@
+package com.mineraltree.perf.load;
+
+import static com.mineraltree.utils.Ensure.verify;
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigValue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One load pattern of the benchmark suite. A scenario drives the rate endpoint either closed-loop
+ * (a fixed number of concurrent clients, each sending its next request when the previous one
+ * completes) or open-loop (requests are sent at a fixed arrival rate regardless of how fast the
+ * service answers), with a weighted mix of base currencies.
+ */
+class Scenario {
+
+  enum Mode {
+    CLOSED,
+    OPEN
+  }
+
+  /** Source of never-before-requested bases, shared by all scenarios in a run */
+  private static final AtomicInteger NEW_BASE_SEQUENCE = new AtomicInteger();
+
+  private final String name;
+  private final Mode mode;
+  private final int concurrency;
+  private final double ratePerSecond;
+  private final Duration warmup;
+  private final Duration duration;
+  private final List<String> weightedBases;
+  private final double newBaseFraction;
+  private final Map<String, String> stubBehavior;
+  private final String accept;
+
+  Scenario(Config config) {
+    this.name = verifyNotEmpty(config.getString("name"), "name");
+    this.mode = Mode.valueOf(config.getString("mode").toUpperCase());
+    this.concurrency = config.hasPath("concurrency") ? config.getInt("concurrency") : 1;
+    this.ratePerSecond = config.hasPath("rate") ? config.getDouble("rate") : 0.0;
+    this.warmup = config.hasPath("warmup") ? config.getDuration("warmup") : Duration.ZERO;
+    this.duration = config.getDuration("duration");
+    this.newBaseFraction =
+        config.hasPath("new-base-fraction") ? config.getDouble("new-base-fraction") : 0.0;
+    this.weightedBases = readBaseMix(config);
+    this.accept = config.hasPath("accept") ? config.getString("accept") : null;
+    this.stubBehavior = new TreeMap<>();
+    if (config.hasPath("stub-behavior")) {
+      for (Map.Entry<String, ConfigValue> entry : config.getConfig("stub-behavior").entrySet()) {
+        stubBehavior.put(entry.getKey(), String.valueOf(entry.getValue().unwrapped()));
+      }
+    }
+
+    verify(concurrency, c -> c > 0, "concurrency", "Must be positive");
+    verify(newBaseFraction, f -> f >= 0.0 && f <= 1.0, "new-base-fraction", "Must be 0..1");
+    if (mode == Mode.OPEN) {
+      verify(ratePerSecond, r -> r > 0.0, "rate", "Open-loop scenarios require a rate");
+    }
+    if (newBaseFraction < 1.0) {
+      verifyNotEmpty(weightedBases, "bases");
+    }
+  }
+
+  /**
+   * Expands a {@code bases { USD = 4, EUR = 1 }} block into a list where each base appears as often
+   * as its weight, so picking uniformly from the list honors the weights.
+   */
+  private static List<String> readBaseMix(Config config) {
+    if (!config.hasPath("bases")) {
+      return Collections.emptyList();
+    }
+    List<String> bases = new ArrayList<>();
+    Config mix = config.getConfig("bases");
+    for (String base : mix.root().keySet()) {
+      for (int i = 0; i < mix.getInt(base); i++) {
+        bases.add(base);
+      }
+    }
+    return Collections.unmodifiableList(bases);
+  }
+
+  /** Picks the base currency for the next request */
+  String nextBase() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (newBaseFraction > 0.0 && random.nextDouble() < newBaseFraction) {
+      return newBase();
+    }
+    return weightedBases.get(random.nextInt(weightedBases.size()));
+  }
+
+  /**
+   * Returns a 3 letter code which has not been requested yet in this run (until all 17576 codes are
+   * used up). These are always cache misses for the service.
+   */
+  private static String newBase() {
+    int index = NEW_BASE_SEQUENCE.getAndIncrement() % (26 * 26 * 26);
+    return new String(
+        new char[] {
+          (char) ('A' + index / 676), (char) ('A' + (index / 26) % 26), (char) ('A' + index % 26)
+        });
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Mode getMode() {
+    return mode;
+  }
+
+  int getConcurrency() {
+    return concurrency;
+  }
+
+  double getRatePerSecond() {
+    return ratePerSecond;
+  }
+
+  Duration getWarmup() {
+    return warmup;
+  }
+
+  Duration getDuration() {
+    return duration;
+  }
+
+  /** The {@code Accept} header to send, or {@code null} to send none (and get JSON) */
+  String getAccept() {
+    return accept;
+  }
+
+  /** Stub behavior overrides to apply while the scenario runs (empty if none) */
+  Map<String, String> getStubBehavior() {
+    return stubBehavior;
+  }
+}
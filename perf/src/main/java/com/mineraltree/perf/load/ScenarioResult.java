@@ -0,0 +1,103 @@
+package com.mineraltree.perf.load;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What was measured during one scenario. Serialized as-is (through its fields) into the benchmark
+ * report, so that the reports of two builds can be compared field by field.
+ */
+class ScenarioResult {
+
+  private final String scenario;
+  private final String mode;
+  private final int concurrency;
+  private final double targetRate;
+  private final double seconds;
+  private final long requests;
+  private final double throughput;
+  private final long okResponses;
+  private final Map<String, Long> statuses;
+  private final double p50Millis;
+  private final double p90Millis;
+  private final double p99Millis;
+  private final double p999Millis;
+  private final double maxMillis;
+  private final long bytes;
+  /** How long the service took to become ready, if it was started for this scenario */
+  private Double startupMillis;
+
+  ScenarioResult(
+      Scenario scenario,
+      long elapsedNanos,
+      LatencyHistogram latencies,
+      Map<String, AtomicLong> statusCounts,
+      long bytes) {
+    this.scenario = scenario.getName();
+    this.mode = scenario.getMode().name();
+    this.concurrency = scenario.getMode() == Scenario.Mode.CLOSED ? scenario.getConcurrency() : 0;
+    this.targetRate = scenario.getRatePerSecond();
+    this.seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+    this.requests = latencies.getCount();
+    this.throughput = seconds > 0 ? requests / seconds : 0.0;
+
+    Map<String, Long> counts = new TreeMap<>();
+    statusCounts.forEach((status, count) -> counts.put(status, count.get()));
+    this.statuses = Collections.unmodifiableMap(counts);
+    this.okResponses = counts.getOrDefault("200", 0L);
+
+    this.p50Millis = toMillis(latencies.getPercentileMicros(50.0));
+    this.p90Millis = toMillis(latencies.getPercentileMicros(90.0));
+    this.p99Millis = toMillis(latencies.getPercentileMicros(99.0));
+    this.p999Millis = toMillis(latencies.getPercentileMicros(99.9));
+    this.maxMillis = toMillis(latencies.getMaxMicros());
+    this.bytes = bytes;
+  }
+
+  private static double toMillis(long micros) {
+    return micros / 1000.0;
+  }
+
+  void setStartupMillis(double startupMillis) {
+    this.startupMillis = startupMillis;
+  }
+
+  /** Header for {@link #toTableRow()} */
+  static String tableHeader() {
+    return String.format(
+        "%-22s %-6s %7s %10s %9s %9s %9s %9s %9s %9s  %s",
+        "scenario",
+        "mode",
+        "load",
+        "req/s",
+        "ok %",
+        "p50 ms",
+        "p90 ms",
+        "p99 ms",
+        "p99.9 ms",
+        "max ms",
+        "statuses");
+  }
+
+  /** A single line summary, aligned with {@link #tableHeader()} */
+  String toTableRow() {
+    String load = concurrency > 0 ? "c=" + concurrency : String.format("%.0f/s", targetRate);
+    double okPercent = requests > 0 ? 100.0 * okResponses / requests : 0.0;
+    return String.format(
+        "%-22s %-6s %7s %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f  %s",
+        scenario,
+        mode,
+        load,
+        throughput,
+        okPercent,
+        p50Millis,
+        p90Millis,
+        p99Millis,
+        p999Millis,
+        maxMillis,
+        statuses);
+  }
+}
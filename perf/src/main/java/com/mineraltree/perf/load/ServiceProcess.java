@@ -0,0 +1,117 @@
+package com.mineraltree.perf.load;
+
+import static com.mineraltree.utils.Ensure.verifyNotEmpty;
+
+import com.typesafe.config.Config;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the currency service in a child JVM, so it is measured with its own heap, threads and JIT
+ * state, exactly as it would run when deployed. The service output goes to a log file rather than
+ * the console to keep logging from competing with the benchmark output.
+ */
+class ServiceProcess {
+
+  private static final Logger log = LoggerFactory.getLogger(ServiceProcess.class);
+
+  private final String classpath;
+  private final List<String> jvmOptions;
+  private final File profileDir;
+  private final String target;
+  private final long startupTimeoutMillis;
+  private final File logFile;
+
+  private Process process;
+
+  /**
+   * @param config the {@code benchmark.service} configuration block
+   * @param target the root URL the service will be reachable at once started
+   * @param logFile where the output of the service is appended
+   */
+  ServiceProcess(Config config, String target, File logFile) {
+    this.classpath = verifyNotEmpty(config.getString("classpath"), "benchmark.service.classpath");
+    this.jvmOptions = config.getStringList("jvm-options");
+    this.profileDir = new File(config.getString("profile")).getAbsoluteFile();
+    this.target = target;
+    this.startupTimeoutMillis = config.getDuration("startup-timeout", TimeUnit.MILLISECONDS);
+    this.logFile = logFile;
+  }
+
+  /**
+   * Launches the service and waits until it reports itself ready.
+   *
+   * @return the number of milliseconds between launching the JVM and the service being ready
+   */
+  double start() throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.addAll(jvmOptions);
+    command.add("-Dmt.app.url=file://" + new File(profileDir, "application.conf").getPath());
+    command.add("-cp");
+    command.add(classpath);
+    command.add("com.mineraltree.currency.CurrencyServiceMain");
+
+    ProcessBuilder builder =
+        new ProcessBuilder(command)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.appendTo(logFile));
+    builder
+        .environment()
+        .put("MT_SECRET_SOURCE", new File(profileDir, "secrets.conf").getAbsolutePath());
+
+    long launched = System.nanoTime();
+    process = builder.start();
+    long deadline = launched + TimeUnit.MILLISECONDS.toNanos(startupTimeoutMillis);
+    while (!isReady()) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException("The service exited during startup, see " + logFile);
+      }
+      if (System.nanoTime() > deadline) {
+        stop();
+        throw new IllegalStateException("The service did not start in time, see " + logFile);
+      }
+      Thread.sleep(20);
+    }
+    double startupMillis = (System.nanoTime() - launched) / 1_000_000.0;
+    log.info("Service ready at {} after {} ms", target, Math.round(startupMillis));
+    return startupMillis;
+  }
+
+  /**
+   * The server answers as soon as it is bound, but until its rates have preloaded the readiness
+   * probe answers 503 and a benchmark would measure the rejections; only a 200 means started
+   */
+  private boolean isReady() {
+    try {
+      HttpURLConnection connection =
+          (HttpURLConnection) new URL(target + "/health/ready").openConnection();
+      connection.setConnectTimeout(200);
+      connection.setReadTimeout(1000);
+      int status = connection.getResponseCode();
+      connection.disconnect();
+      return status == HttpURLConnection.HTTP_OK;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  void stop() throws InterruptedException {
+    if (process == null) {
+      return;
+    }
+    process.destroy();
+    if (!process.waitFor(10, TimeUnit.SECONDS)) {
+      process.destroyForcibly().waitFor();
+    }
+    process = null;
+  }
+}
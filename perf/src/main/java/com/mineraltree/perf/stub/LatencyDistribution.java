@@ -0,0 +1,50 @@
+package com.mineraltree.perf.stub;
+
+import java.util.Random;
+
+/** The shapes of simulated upstream response latency supported by the stub provider server. */
+public enum LatencyDistribution {
+  /** Every response takes exactly the median latency */
+  FIXED {
+    @Override
+    double sampleMillis(Random random, StubBehavior behavior) {
+      return behavior.getMedianMillis();
+    }
+  },
+  /** Latency is spread evenly between the configured minimum and maximum */
+  UNIFORM {
+    @Override
+    double sampleMillis(Random random, StubBehavior behavior) {
+      return behavior.getMinMillis()
+          + random.nextDouble() * (behavior.getMaxMillis() - behavior.getMinMillis());
+    }
+  },
+  /** Memoryless latency with the median setting used as the mean */
+  EXPONENTIAL {
+    @Override
+    double sampleMillis(Random random, StubBehavior behavior) {
+      return -behavior.getMedianMillis() * Math.log(1.0 - random.nextDouble());
+    }
+  },
+  /** Long-tailed latency, the closest match to what the real providers show */
+  LOGNORMAL {
+    @Override
+    double sampleMillis(Random random, StubBehavior behavior) {
+      return behavior.getMedianMillis() * Math.exp(behavior.getSigma() * random.nextGaussian());
+    }
+  };
+
+  abstract double sampleMillis(Random random, StubBehavior behavior);
+
+  /**
+   * Picks the latency for a single response.
+   *
+   * @param random the random source assigned to the request
+   * @param behavior the current behavior settings supplying the distribution parameters
+   * @return the latency in milliseconds, clamped to the configured minimum and maximum
+   */
+  public long sample(Random random, StubBehavior behavior) {
+    double sample = sampleMillis(random, behavior);
+    return (long) Math.max(behavior.getMinMillis(), Math.min(behavior.getMaxMillis(), sample));
+  }
+}
@@ -0,0 +1,251 @@
+package com.mineraltree.perf.stub;
+
+import static com.mineraltree.utils.Ensure.verify;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes how the stub provider server behaves: how long it takes to answer, how often it fails
+ * or hangs, and how big its responses are. Instances are immutable; the server swaps in a new
+ * instance when the behavior is changed at runtime.
+ */
+public class StubBehavior {
+
+  private final long seed;
+  private final LatencyDistribution distribution;
+  private final long medianMillis;
+  private final double sigma;
+  private final long minMillis;
+  private final long maxMillis;
+  private final double errorRate;
+  private final double timeoutRate;
+  private final long timeoutHoldMillis;
+  private final int payloadSize;
+  private final double rateJitter;
+
+  private StubBehavior(Builder builder) {
+    this.seed = builder.seed;
+    this.distribution = verifyNotNull(builder.distribution, "distribution");
+    this.medianMillis = verify(builder.medianMillis, v -> v >= 0, "median", "Cannot be negative");
+    this.sigma = verify(builder.sigma, v -> v >= 0, "sigma", "Cannot be negative");
+    this.minMillis = verify(builder.minMillis, v -> v >= 0, "min", "Cannot be negative");
+    this.maxMillis = verify(builder.maxMillis, v -> v >= minMillis, "max", "Must be >= min");
+    this.errorRate = verifyFraction(builder.errorRate, "errorRate");
+    this.timeoutRate = verifyFraction(builder.timeoutRate, "timeoutRate");
+    this.timeoutHoldMillis =
+        verify(builder.timeoutHoldMillis, v -> v >= 0, "timeoutHold", "Cannot be negative");
+    this.payloadSize = verify(builder.payloadSize, v -> v > 0, "payloadSize", "Must be positive");
+    this.rateJitter = verifyFraction(builder.rateJitter, "rateJitter");
+  }
+
+  private static double verifyFraction(double value, String name) {
+    return verify(value, v -> v >= 0.0 && v <= 1.0, name, "Must be between 0 and 1");
+  }
+
+  /** Reads the behavior from a configuration block such as {@code stub.behavior} */
+  public static StubBehavior fromConfig(Config config) {
+    Config latency = config.getConfig("latency");
+    return new Builder()
+        .setSeed(config.getLong("seed"))
+        .setDistribution(LatencyDistribution.valueOf(latency.getString("distribution")))
+        .setMedianMillis(latency.getDuration("median", TimeUnit.MILLISECONDS))
+        .setSigma(latency.getDouble("sigma"))
+        .setMinMillis(latency.getDuration("min", TimeUnit.MILLISECONDS))
+        .setMaxMillis(latency.getDuration("max", TimeUnit.MILLISECONDS))
+        .setErrorRate(config.getDouble("error-rate"))
+        .setTimeoutRate(config.getDouble("timeout-rate"))
+        .setTimeoutHoldMillis(config.getDuration("timeout-hold", TimeUnit.MILLISECONDS))
+        .setPayloadSize(config.getInt("payload-size"))
+        .setRateJitter(config.getDouble("rate-jitter"))
+        .build();
+  }
+
+  /**
+   * Returns a copy of this behavior with the given settings replaced. Used by the stub's admin
+   * endpoint so a running load test can inject failures (e.g. {@code errorRate=1.0} for an outage)
+   * without restarting anything. Durations are given in milliseconds.
+   *
+   * @throws IllegalArgumentException if a setting name is not recognized or its value is invalid
+   */
+  public StubBehavior withOverrides(Map<String, String> overrides) {
+    Builder builder = toBuilder();
+    for (Map.Entry<String, String> entry : overrides.entrySet()) {
+      String value = entry.getValue();
+      switch (entry.getKey()) {
+        case "seed":
+          builder.setSeed(Long.parseLong(value));
+          break;
+        case "distribution":
+          builder.setDistribution(LatencyDistribution.valueOf(value.toUpperCase()));
+          break;
+        case "median":
+          builder.setMedianMillis(Long.parseLong(value));
+          break;
+        case "sigma":
+          builder.setSigma(Double.parseDouble(value));
+          break;
+        case "min":
+          builder.setMinMillis(Long.parseLong(value));
+          break;
+        case "max":
+          builder.setMaxMillis(Long.parseLong(value));
+          break;
+        case "errorRate":
+          builder.setErrorRate(Double.parseDouble(value));
+          break;
+        case "timeoutRate":
+          builder.setTimeoutRate(Double.parseDouble(value));
+          break;
+        case "timeoutHold":
+          builder.setTimeoutHoldMillis(Long.parseLong(value));
+          break;
+        case "payloadSize":
+          builder.setPayloadSize(Integer.parseInt(value));
+          break;
+        case "rateJitter":
+          builder.setRateJitter(Double.parseDouble(value));
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "Unknown stub behavior setting '" + entry.getKey() + "'");
+      }
+    }
+    return builder.build();
+  }
+
+  public Builder toBuilder() {
+    return new Builder()
+        .setSeed(seed)
+        .setDistribution(distribution)
+        .setMedianMillis(medianMillis)
+        .setSigma(sigma)
+        .setMinMillis(minMillis)
+        .setMaxMillis(maxMillis)
+        .setErrorRate(errorRate)
+        .setTimeoutRate(timeoutRate)
+        .setTimeoutHoldMillis(timeoutHoldMillis)
+        .setPayloadSize(payloadSize)
+        .setRateJitter(rateJitter);
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public LatencyDistribution getDistribution() {
+    return distribution;
+  }
+
+  public long getMedianMillis() {
+    return medianMillis;
+  }
+
+  public double getSigma() {
+    return sigma;
+  }
+
+  public long getMinMillis() {
+    return minMillis;
+  }
+
+  public long getMaxMillis() {
+    return maxMillis;
+  }
+
+  public double getErrorRate() {
+    return errorRate;
+  }
+
+  public double getTimeoutRate() {
+    return timeoutRate;
+  }
+
+  public Duration getTimeoutHold() {
+    return Duration.ofMillis(timeoutHoldMillis);
+  }
+
+  public int getPayloadSize() {
+    return payloadSize;
+  }
+
+  public double getRateJitter() {
+    return rateJitter;
+  }
+
+  public static class Builder {
+    private long seed;
+    private LatencyDistribution distribution = LatencyDistribution.FIXED;
+    private long medianMillis;
+    private double sigma;
+    private long minMillis;
+    private long maxMillis;
+    private double errorRate;
+    private double timeoutRate;
+    private long timeoutHoldMillis;
+    private int payloadSize = 166;
+    private double rateJitter;
+
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder setDistribution(LatencyDistribution distribution) {
+      this.distribution = distribution;
+      return this;
+    }
+
+    public Builder setMedianMillis(long medianMillis) {
+      this.medianMillis = medianMillis;
+      return this;
+    }
+
+    public Builder setSigma(double sigma) {
+      this.sigma = sigma;
+      return this;
+    }
+
+    public Builder setMinMillis(long minMillis) {
+      this.minMillis = minMillis;
+      return this;
+    }
+
+    public Builder setMaxMillis(long maxMillis) {
+      this.maxMillis = maxMillis;
+      return this;
+    }
+
+    public Builder setErrorRate(double errorRate) {
+      this.errorRate = errorRate;
+      return this;
+    }
+
+    public Builder setTimeoutRate(double timeoutRate) {
+      this.timeoutRate = timeoutRate;
+      return this;
+    }
+
+    public Builder setTimeoutHoldMillis(long timeoutHoldMillis) {
+      this.timeoutHoldMillis = timeoutHoldMillis;
+      return this;
+    }
+
+    public Builder setPayloadSize(int payloadSize) {
+      this.payloadSize = payloadSize;
+      return this;
+    }
+
+    public Builder setRateJitter(double rateJitter) {
+      this.rateJitter = rateJitter;
+      return this;
+    }
+
+    public StubBehavior build() {
+      return new StubBehavior(this);
+    }
+  }
+}
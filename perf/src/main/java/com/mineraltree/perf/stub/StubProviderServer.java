@@ -0,0 +1,395 @@
+package com.mineraltree.perf.stub;
+
+import static akka.http.javadsl.server.Directives.complete;
+import static akka.http.javadsl.server.Directives.completeWithFuture;
+import static akka.http.javadsl.server.Directives.get;
+import static akka.http.javadsl.server.Directives.handleExceptions;
+import static akka.http.javadsl.server.Directives.parameterMap;
+import static akka.http.javadsl.server.Directives.path;
+import static akka.http.javadsl.server.Directives.pathPrefix;
+import static akka.http.javadsl.server.Directives.post;
+import static akka.http.javadsl.server.Directives.put;
+import static akka.http.javadsl.server.Directives.route;
+import static com.mineraltree.utils.Ensure.verifyNotNull;
+
+import akka.actor.ActorSystem;
+import akka.http.javadsl.ConnectHttp;
+import akka.http.javadsl.Http;
+import akka.http.javadsl.ServerBinding;
+import akka.http.javadsl.model.ContentTypes;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.StatusCode;
+import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.server.ExceptionHandler;
+import akka.http.javadsl.server.Route;
+import akka.stream.ActorMaterializer;
+import akka.util.ByteString;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mineraltree.api.marshal.Marshal;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import scala.concurrent.duration.FiniteDuration;
+
+/**
+ * A stand-in for the Fixer and OpenExchange rate providers. Serves each provider's {@code latest}
+ * endpoint in that provider's response format for any base currency, with configurable latency,
+ * error and timeout behavior (see {@link StubBehavior}). This allows the complete service to be run
+ * and load tested on a single machine without API keys or upstream quota.
+ *
+ * <p>Endpoints:
+ *
+ * <ul>
+ *   <li>{@code GET /api/latest?access_key=..&base=..} - the Fixer format
+ *   <li>{@code GET /api/latest.json?app_id=..&base=..} - the OpenExchange format
+ *   <li>{@code GET /stub/behavior} - returns the current behavior settings
+ *   <li>{@code PUT /stub/behavior?errorRate=0.5&...} - changes behavior settings while running
+ *   <li>{@code GET /stub/stats} - returns counts of the responses served so far
+ *   <li>{@code POST /stub/reset} - clears the counters and restarts the random sequence
+ * </ul>
+ */
+public class StubProviderServer {
+
+  private static final Logger log = LoggerFactory.getLogger(StubProviderServer.class);
+
+  /** Spreads request sequence numbers across the seed space */
+  private static final long SEQUENCE_MIX = 0x9E3779B97F4A7C15L;
+
+  private final ActorSystem system;
+  private final Config stubConfig;
+  private final String fixerAccessKey;
+  private final String openExchangeAppId;
+  private final AtomicReference<StubBehavior> behavior;
+  private final AtomicLong sequence = new AtomicLong();
+  private final Map<String, AtomicLong> stats = new ConcurrentHashMap<>();
+  /** Serialized success responses, reused while rates are not being jittered */
+  private final Map<String, ByteString> payloadCache = new ConcurrentHashMap<>();
+
+  /**
+   * Creates the stub server. Call {@link #start()} to begin listening.
+   *
+   * @param system the actor system to run the server within
+   * @param stubConfig the {@code stub} configuration block (see {@code stub-provider.conf})
+   */
+  public StubProviderServer(ActorSystem system, Config stubConfig) {
+    this.system = verifyNotNull(system, "system");
+    this.stubConfig = verifyNotNull(stubConfig, "stubConfig");
+    this.fixerAccessKey = stubConfig.getString("fixer-access-key");
+    this.openExchangeAppId = stubConfig.getString("openexchange-app-id");
+    this.behavior =
+        new AtomicReference<>(StubBehavior.fromConfig(stubConfig.getConfig("behavior")));
+  }
+
+  /** Binds the listening port. The returned stage completes once the server accepts requests. */
+  public CompletionStage<ServerBinding> start() {
+    ActorMaterializer materializer = ActorMaterializer.create(system);
+    return Http.get(system)
+        .bindAndHandle(
+            getRoute().flow(system, materializer),
+            ConnectHttp.toHost(stubConfig.getString("listen"), stubConfig.getInt("port")),
+            materializer)
+        .thenApply(
+            binding -> {
+              log.info("Stub rate provider listening on {}", binding.localAddress());
+              return binding;
+            });
+  }
+
+  public StubBehavior getBehavior() {
+    return behavior.get();
+  }
+
+  /** Replaces the behavior of the server. Takes effect for the next request received. */
+  public void setBehavior(StubBehavior newBehavior) {
+    behavior.set(verifyNotNull(newBehavior, "behavior"));
+    payloadCache.clear();
+  }
+
+  /** Returns a snapshot of the response counters, keyed by {@code format.outcome} */
+  public Map<String, Long> getStats() {
+    Map<String, Long> snapshot = new TreeMap<>();
+    stats.forEach((key, count) -> snapshot.put(key, count.get()));
+    return snapshot;
+  }
+
+  /** Clears the counters and restarts the random sequence so a run can be exactly repeated */
+  public void reset() {
+    sequence.set(0);
+    stats.clear();
+  }
+
+  Route getRoute() {
+    return handleExceptions(
+        ExceptionHandler.newBuilder()
+            .match(
+                IllegalArgumentException.class,
+                e -> complete(StatusCodes.BAD_REQUEST, e.getMessage()))
+            .build(),
+        () ->
+            route(
+                pathPrefix(
+                    "api",
+                    () ->
+                        route(
+                            path("latest", () -> get(() -> handleLatest(ProviderFormat.FIXER))),
+                            path(
+                                "latest.json",
+                                () -> get(() -> handleLatest(ProviderFormat.OPENEXCHANGE))))),
+                pathPrefix("stub", this::handleAdmin)));
+  }
+
+  private Route handleAdmin() {
+    return route(
+        path(
+            "behavior",
+            () ->
+                route(
+                    get(() -> completeJson(StatusCodes.OK, behavior.get())),
+                    put(
+                        () ->
+                            parameterMap(
+                                params -> {
+                                  setBehavior(behavior.get().withOverrides(params));
+                                  log.info("Stub behavior changed: {}", params);
+                                  return completeJson(StatusCodes.OK, behavior.get());
+                                })))),
+        path("stats", () -> get(() -> completeJson(StatusCodes.OK, getStats()))),
+        path(
+            "reset",
+            () ->
+                post(
+                    () -> {
+                      reset();
+                      return complete(StatusCodes.NO_CONTENT);
+                    })));
+  }
+
+  private Route handleLatest(ProviderFormat format) {
+    return parameterMap(
+        params -> {
+          String key = params.get(format.keyParameter);
+          String expectedKey = format == ProviderFormat.FIXER ? fixerAccessKey : openExchangeAppId;
+          if (!expectedKey.equals(key)) {
+            count(format, "unauthorized");
+            return complete(format.unauthorized());
+          }
+          String base = params.getOrDefault("base", format.defaultBase);
+          if (!base.matches("[A-Za-z]{3}")) {
+            count(format, "invalid-base");
+            return complete(format.invalidBase(base));
+          }
+          return completeWithFuture(respond(format, base.toUpperCase(Locale.ROOT)));
+        });
+  }
+
+  /** Decides the fate of a single request and produces its (possibly delayed) response */
+  private CompletionStage<HttpResponse> respond(ProviderFormat format, String base) {
+    StubBehavior current = behavior.get();
+    Random random = new Random(current.getSeed() + sequence.getAndIncrement() * SEQUENCE_MIX);
+    double fate = random.nextDouble();
+
+    if (fate < current.getTimeoutRate()) {
+      count(format, "timeout");
+      return delay(format.timeout(), current.getTimeoutHold().toMillis());
+    }
+    long latency = current.getDistribution().sample(random, current);
+    if (fate < current.getTimeoutRate() + current.getErrorRate()) {
+      count(format, "error");
+      return delay(format.failure(), latency);
+    }
+    count(format, "success");
+    return delay(
+        HttpResponse.create()
+            .withStatus(StatusCodes.OK)
+            .withEntity(ContentTypes.APPLICATION_JSON, successPayload(format, base, random)),
+        latency);
+  }
+
+  private ByteString successPayload(ProviderFormat format, String base, Random random) {
+    StubBehavior current = behavior.get();
+    if (current.getRateJitter() > 0.0) {
+      return format.success(base, current, random);
+    }
+    return payloadCache.computeIfAbsent(
+        format + ":" + base, b -> format.success(base, current, random));
+  }
+
+  private CompletionStage<HttpResponse> delay(HttpResponse response, long delayMillis) {
+    if (delayMillis <= 0) {
+      return CompletableFuture.completedFuture(response);
+    }
+    CompletableFuture<HttpResponse> delayed = new CompletableFuture<>();
+    system
+        .scheduler()
+        .scheduleOnce(
+            FiniteDuration.create(delayMillis, TimeUnit.MILLISECONDS),
+            () -> delayed.complete(response),
+            system.dispatcher());
+    return delayed;
+  }
+
+  private void count(ProviderFormat format, String outcome) {
+    stats.computeIfAbsent(format.name() + "." + outcome, k -> new AtomicLong()).incrementAndGet();
+  }
+
+  private static Route completeJson(StatusCode status, Object payload) {
+    return complete(
+        HttpResponse.create()
+            .withStatus(status)
+            .withEntity(ContentTypes.APPLICATION_JSON, toJson(payload)));
+  }
+
+  private static ByteString toJson(Object payload) {
+    try {
+      return ByteString.fromArray(Marshal.MAPPER.writeValueAsBytes(payload));
+    } catch (JsonProcessingException e) {
+      throw new IllegalStateException("Cannot serialize stub response", e);
+    }
+  }
+
+  /** The response formats of the providers the stub can impersonate */
+  private enum ProviderFormat {
+    /** Fixer reports most failures with a 200 status and {@code "success": false} */
+    FIXER("access_key", "EUR") {
+      @Override
+      ByteString success(String base, StubBehavior behavior, Random random) {
+        ObjectNode root = Marshal.MAPPER.createObjectNode();
+        root.put("success", true);
+        root.put("timestamp", System.currentTimeMillis() / 1000);
+        root.put("base", base);
+        root.put("date", LocalDate.now(ZoneOffset.UTC).toString());
+        addRates(root, base, behavior, random);
+        return toJson(root);
+      }
+
+      @Override
+      HttpResponse failure() {
+        return fixerError(104, "usage_limit_reached");
+      }
+
+      @Override
+      HttpResponse unauthorized() {
+        return fixerError(101, "invalid_access_key");
+      }
+
+      @Override
+      HttpResponse invalidBase(String base) {
+        return fixerError(201, "invalid_base_currency");
+      }
+
+      private HttpResponse fixerError(int code, String type) {
+        ObjectNode root = Marshal.MAPPER.createObjectNode();
+        root.put("success", false);
+        ObjectNode error = root.putObject("error");
+        error.put("code", code);
+        error.put("type", type);
+        return HttpResponse.create()
+            .withStatus(StatusCodes.OK)
+            .withEntity(ContentTypes.APPLICATION_JSON, toJson(root));
+      }
+    },
+
+    /** OpenExchange reports failures with an HTTP error status and a JSON description */
+    OPENEXCHANGE("app_id", "USD") {
+      @Override
+      ByteString success(String base, StubBehavior behavior, Random random) {
+        ObjectNode root = Marshal.MAPPER.createObjectNode();
+        root.put("disclaimer", "Stub data for testing only");
+        root.put("license", "None");
+        root.put("timestamp", System.currentTimeMillis() / 1000);
+        root.put("base", base);
+        addRates(root, base, behavior, random);
+        return toJson(root);
+      }
+
+      @Override
+      HttpResponse failure() {
+        return openExchangeError(StatusCodes.SERVICE_UNAVAILABLE, "service_unavailable");
+      }
+
+      @Override
+      HttpResponse unauthorized() {
+        return openExchangeError(StatusCodes.UNAUTHORIZED, "invalid_app_id");
+      }
+
+      @Override
+      HttpResponse invalidBase(String base) {
+        return openExchangeError(StatusCodes.BAD_REQUEST, "invalid_base");
+      }
+
+      private HttpResponse openExchangeError(StatusCode status, String message) {
+        ObjectNode root = Marshal.MAPPER.createObjectNode();
+        root.put("error", true);
+        root.put("status", status.intValue());
+        root.put("message", message);
+        return HttpResponse.create()
+            .withStatus(status)
+            .withEntity(ContentTypes.APPLICATION_JSON, toJson(root));
+      }
+    };
+
+    private final String keyParameter;
+    private final String defaultBase;
+
+    ProviderFormat(String keyParameter, String defaultBase) {
+      this.keyParameter = keyParameter;
+      this.defaultBase = defaultBase;
+    }
+
+    abstract ByteString success(String base, StubBehavior behavior, Random random);
+
+    abstract HttpResponse failure();
+
+    abstract HttpResponse unauthorized();
+
+    abstract HttpResponse invalidBase(String base);
+
+    /** The response sent once a simulated hang is over. Callers have normally given up by then */
+    HttpResponse timeout() {
+      return HttpResponse.create().withStatus(StatusCodes.GATEWAY_TIMEOUT);
+    }
+
+    static void addRates(ObjectNode root, String base, StubBehavior behavior, Random random) {
+      ObjectNode rates = root.putObject("rates");
+      StubRates.ratesFor(base, behavior.getPayloadSize(), behavior.getRateJitter(), random)
+          .forEach(rates::put);
+    }
+  }
+
+  /**
+   * Starts a standalone stub server. Optionally takes the path of a configuration file whose
+   * settings override the defaults in {@code stub-provider.conf}.
+   */
+  public static void main(String[] args) {
+    Config config = ConfigFactory.parseResources(StubProviderServer.class, "/stub-provider.conf");
+    if (args.length > 0) {
+      config = ConfigFactory.parseFile(new File(args[0])).withFallback(config);
+    }
+    config = config.resolve();
+
+    ActorSystem system = ActorSystem.create("stub-provider", config);
+    new StubProviderServer(system, config.getConfig("stub"))
+        .start()
+        .exceptionally(
+            throwable -> {
+              log.error("Unable to start stub provider server", throwable);
+              system.terminate();
+              return null;
+            });
+  }
+}
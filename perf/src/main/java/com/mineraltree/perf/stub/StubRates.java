@@ -0,0 +1,96 @@
+package com.mineraltree.perf.stub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Produces plausible, repeatable exchange rates for any base currency. Every currency code is given
+ * a fixed value (derived from the code itself) and a rate is the ratio of two values, so rates are
+ * consistent with each other regardless of which base is requested.
+ */
+class StubRates {
+
+  /** The quote currencies the real providers return, in the order they are returned */
+  private static final List<String> KNOWN_CODES =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              "AED", "AFN", "ALL", "AMD", "ANG", "AOA", "ARS", "AUD", "AWG", "AZN", "BAM", "BBD",
+              "BDT", "BGN", "BHD", "BIF", "BMD", "BND", "BOB", "BRL", "BSD", "BTC", "BTN", "BWP",
+              "BYN", "BZD", "CAD", "CDF", "CHF", "CLF", "CLP", "CNY", "COP", "CRC", "CUC", "CUP",
+              "CVE", "CZK", "DJF", "DKK", "DOP", "DZD", "EGP", "ERN", "ETB", "EUR", "FJD", "FKP",
+              "GBP", "GEL", "GGP", "GHS", "GIP", "GMD", "GNF", "GTQ", "GYD", "HKD", "HNL", "HRK",
+              "HTG", "HUF", "IDR", "ILS", "IMP", "INR", "IQD", "IRR", "ISK", "JEP", "JMD", "JOD",
+              "JPY", "KES", "KGS", "KHR", "KMF", "KPW", "KRW", "KWD", "KYD", "KZT", "LAK", "LBP",
+              "LKR", "LRD", "LSL", "LYD", "MAD", "MDL", "MGA", "MKD", "MMK", "MNT", "MOP", "MRU",
+              "MUR", "MVR", "MWK", "MXN", "MYR", "MZN", "NAD", "NGN", "NIO", "NOK", "NPR", "NZD",
+              "OMR", "PAB", "PEN", "PGK", "PHP", "PKR", "PLN", "PYG", "QAR", "RON", "RSD", "RUB",
+              "RWF", "SAR", "SBD", "SCR", "SDG", "SEK", "SGD", "SHP", "SLL", "SOS", "SRD", "STN",
+              "SVC", "SYP", "SZL", "THB", "TJS", "TMT", "TND", "TOP", "TRY", "TTD", "TWD", "TZS",
+              "UAH", "UGX", "USD", "UYU", "UZS", "VES", "VND", "VUV", "WST", "XAF", "XAG", "XAU",
+              "XCD", "XDR", "XOF", "XPD", "XPF", "XPT", "YER", "ZAR", "ZMW", "ZWL"));
+
+  private StubRates() {}
+
+  /**
+   * Returns the quote currency codes for a response with {@code size} entries. The real codes are
+   * used first; larger payloads are padded with synthetic codes so payload size can be varied
+   * independently of the real currency list.
+   */
+  static List<String> quoteCodes(int size) {
+    if (size <= KNOWN_CODES.size()) {
+      return KNOWN_CODES.subList(0, size);
+    }
+    List<String> codes = new ArrayList<>(KNOWN_CODES);
+    for (int i = 0; codes.size() < size && i < 26 * 26 * 26; i++) {
+      String synthetic =
+          new String(
+              new char[] {
+                (char) ('A' + i / 676), (char) ('A' + (i / 26) % 26), (char) ('A' + i % 26)
+              });
+      if (!KNOWN_CODES.contains(synthetic)) {
+        codes.add(synthetic);
+      }
+    }
+    return codes;
+  }
+
+  /**
+   * Computes the rates of every quote currency against {@code base}.
+   *
+   * @param base the base currency code (any 3 letter code is accepted)
+   * @param size the number of quote currencies to return
+   * @param jitter maximum relative random movement applied to each rate (0 for fixed rates)
+   * @param random the random source used for the jitter
+   */
+  static Map<String, Double> ratesFor(String base, int size, double jitter, Random random) {
+    double baseValue = valueOf(base.toUpperCase(Locale.ROOT));
+    Map<String, Double> rates = new LinkedHashMap<>();
+    for (String code : quoteCodes(size)) {
+      double rate = valueOf(code) / baseValue;
+      if (jitter > 0.0) {
+        rate *= 1.0 + jitter * (2.0 * random.nextDouble() - 1.0);
+      }
+      // Providers publish 6 decimal places
+      rates.put(code, Math.round(rate * 1_000_000.0) / 1_000_000.0);
+    }
+    return rates;
+  }
+
+  /** The value of one unit of {@code code} in an imaginary reference currency */
+  private static double valueOf(String code) {
+    if ("USD".equals(code)) {
+      return 1.0;
+    }
+    // Spread values over several orders of magnitude like real currencies (0.0001 .. 10)
+    long hash = code.hashCode() * 0x9E3779B97F4A7C15L;
+    double mantissa = 1.0 + ((hash >>> 11) % 9000) / 1000.0;
+    int exponent = (int) ((hash >>> 40) % 5) - 4;
+    return mantissa * Math.pow(10, exponent);
+  }
+}
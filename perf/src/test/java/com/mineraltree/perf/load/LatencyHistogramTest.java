@@ -0,0 +1,53 @@
+package com.mineraltree.perf.load;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  @Test
+  void testBucketsWithinOnePercent() {
+    for (long value = 0; value < 256; value++) {
+      assertEquals(value, LatencyHistogram.lowestValueIn(LatencyHistogram.indexOf(value)));
+      assertEquals(value, LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(value)));
+    }
+    int previous = LatencyHistogram.indexOf(255);
+    for (long value = 256; value < 1L << 40; value += 1 + value / 1000) {
+      int index = LatencyHistogram.indexOf(value);
+      assertTrue(index >= previous, Long.toString(value));
+      long lowest = LatencyHistogram.lowestValueIn(index);
+      long highest = LatencyHistogram.highestValueIn(index);
+      assertTrue(lowest <= value && value <= highest, Long.toString(value));
+      assertTrue((highest - lowest) * 100 < lowest, Long.toString(value));
+      previous = index;
+    }
+    // Adjacent buckets leave no gaps
+    assertEquals(LatencyHistogram.highestValueIn(1000) + 1, LatencyHistogram.lowestValueIn(1001));
+  }
+
+  @Test
+  void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getPercentileMicros(99));
+    for (long micros = 1; micros <= 10_000; micros++) {
+      histogram.record(micros);
+    }
+
+    assertEquals(10_000, histogram.getCount());
+    assertEquals(10_000, histogram.getMaxMicros());
+    assertEquals(1, histogram.getPercentileMicros(0));
+    assertWithinOnePercent(5_000, histogram.getPercentileMicros(50));
+    assertWithinOnePercent(9_900, histogram.getPercentileMicros(99));
+    assertWithinOnePercent(9_990, histogram.getPercentileMicros(99.9));
+    // Never more than the largest value recorded
+    assertEquals(10_000, histogram.getPercentileMicros(100));
+  }
+
+  private static void assertWithinOnePercent(long expected, long actual) {
+    assertTrue(
+        actual >= expected && (actual - expected) * 100 <= expected,
+        expected + " but was " + actual);
+  }
+}
@@ -0,0 +1,91 @@
+package com.mineraltree.secret;
+
+import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the secrets read from another vault, and refreshes them in the background. Only the first
+ * read of a secret goes to the other vault; after that reads return the kept secrets at once, and
+ * each secret is read again every {@code refreshInterval} on a background thread. Rotated secrets
+ * are therefore picked up without a restart and without any caller waiting for the vault. If a
+ * refresh fails, the secrets read before are kept until a refresh succeeds. Closing the vault stops
+ * its refresh thread.
+ */
+public class CachingVault implements SecretVault, AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(CachingVault.class);
+
+  private final SecretVault vault;
+  private final Duration refreshInterval;
+  private final ScheduledExecutorService refresher;
+  private final Map<String, Config> secrets = new ConcurrentHashMap<>();
+
+  public CachingVault(SecretVault vault, Duration refreshInterval) {
+    this(
+        vault,
+        refreshInterval,
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "secret-refresh");
+              thread.setDaemon(true);
+              return thread;
+            }));
+  }
+
+  /** Constructor for testing */
+  CachingVault(SecretVault vault, Duration refreshInterval, ScheduledExecutorService refresher) {
+    this.vault = vault;
+    this.refreshInterval = refreshInterval;
+    this.refresher = refresher;
+  }
+
+  @Override
+  public Config getSecrets(String secretId) {
+    Config cached = secrets.get(secretId);
+    if (cached != null) {
+      return cached;
+    }
+    return secrets.computeIfAbsent(
+        secretId,
+        id -> {
+          Config loaded = vault.getSecrets(id);
+          if (!refresher.isShutdown()) {
+            long interval = refreshInterval.toMillis();
+            refresher.scheduleWithFixedDelay(
+                () -> refresh(id), interval, interval, TimeUnit.MILLISECONDS);
+          }
+          return loaded;
+        });
+  }
+
+  /**
+   * Stops refreshing the secrets. The secrets already read are still returned as they are, and any
+   * others are read from the vault without being kept fresh.
+   */
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+  }
+
+  /** Reads a secret from the vault again, keeping the old one if that fails */
+  void refresh(String secretId) {
+    try {
+      Config loaded = vault.getSecrets(secretId);
+      // Unchanged secrets keep the same instance, so callers can tell when they change
+      if (!loaded.equals(secrets.get(secretId))) {
+        secrets.put(secretId, loaded);
+        log.info("Secret {} changed", secretId);
+      }
+    } catch (RuntimeException e) {
+      log.warn(
+          "Refreshing secret {} failed, keeping the current value: {}", secretId, e.toString());
+    }
+  }
+}
@@ -4,6 +4,8 @@ import com.mineraltree.extern.Environment;
 import com.mineraltree.secret.provider.AwsVault;
 import com.mineraltree.secret.provider.FileVault;
 import com.typesafe.config.Config;
+import java.time.Duration;
+import java.util.function.Supplier;
 
 /**
  * Manages access to the secret vault. This vault stores secrets that are required by the service
@@ -11,7 +13,7 @@ import com.typesafe.config.Config;
  */
 public class SecretService {
 
-  private static SecretVault vault;
+  private static CachingVault vault;
   static Environment environment = new Environment();
   static Externs externs = new Externs();
 
@@ -28,10 +30,13 @@ public class SecretService {
   private static final String ENVIRONMENT_OVERRIDE_VAR = "MT_SECRET_SOURCE";
   private static final String CONFIG_SETTING_KEY = "secretSource";
   private static final String CONFIG_AWS = "AWS";
+  private static final String CONFIG_REFRESH_KEY = "secretRefresh";
+  private static final Duration DEFAULT_REFRESH = Duration.ofMinutes(5);
 
   /**
    * Initializes the secret vault retrieval location. This method {@code must} be called once during
-   * application startup.
+   * application startup. Secrets are kept once read and refreshed in the background every {@code
+   * secretRefresh} (5 minutes unless configured); see {@link CachingVault}.
    */
   public static synchronized void initializeVault(Config config) {
 
@@ -45,10 +50,60 @@ public class SecretService {
       sourceLocation = config.getString(CONFIG_SETTING_KEY);
     }
 
+    SecretVault source;
     if (null == sourceLocation || sourceLocation.equalsIgnoreCase(CONFIG_AWS)) {
-      vault = externs.makeAwsVault(config);
+      source = externs.makeAwsVault(config);
     } else {
-      vault = externs.makeFileVault(sourceLocation);
+      source = externs.makeFileVault(sourceLocation);
+    }
+    Duration refresh =
+        config.hasPath(CONFIG_REFRESH_KEY)
+            ? config.getDuration(CONFIG_REFRESH_KEY)
+            : DEFAULT_REFRESH;
+    vault = new CachingVault(source, refresh);
+  }
+
+  /**
+   * Closes the vault, stopping its refreshes, so the service can be initialized again. For tests,
+   * which initialize the service once each.
+   */
+  static synchronized void reset() {
+    if (null != vault) {
+      vault.close();
+      vault = null;
+    }
+  }
+
+  /**
+   * Returns {@code config} with the secrets of {@code secretId} as its fallback, always with the
+   * current secrets. The two are merged again only when the secrets have been refreshed with new
+   * values, so asking for it costs nothing otherwise.
+   */
+  public static Supplier<Config> withSecrets(Config config, String secretId) {
+    SecretVault current = getVault();
+    return new Supplier<Config>() {
+      private volatile Merged merged;
+
+      @Override
+      public Config get() {
+        Config latest = current.getSecrets(secretId);
+        Merged last = merged;
+        if (last == null || last.secrets != latest) {
+          last = new Merged(latest, config.withFallback(latest));
+          merged = last;
+        }
+        return last.config;
+      }
+    };
+  }
+
+  private static class Merged {
+    final Config secrets;
+    final Config config;
+
+    Merged(Config secrets, Config config) {
+      this.secrets = secrets;
+      this.config = config;
     }
   }
 
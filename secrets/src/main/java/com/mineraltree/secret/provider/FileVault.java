@@ -9,12 +9,14 @@ import java.nio.file.Paths;
 
 /**
  * A file based secret vault. This vault is intended for testing purposes though it is possible,
- * with sufficient precautions, to use this safely as a primary secret vault.
+ * with sufficient precautions, to use this safely as a primary secret vault. The file is read again
+ * when it has been modified, so secrets can be rotated by rewriting it.
  */
 public class FileVault implements SecretVault {
 
-  private final Config rootSecrets;
   private final Path configFileName;
+  private Config rootSecrets;
+  private long lastModified;
 
   public FileVault(String filePathname) {
     configFileName = Paths.get(filePathname);
@@ -22,15 +24,25 @@ public class FileVault implements SecretVault {
       throw new IllegalArgumentException(
           "Cannot initialize secret vault from file '" + filePathname + "'. File not found");
     }
-    rootSecrets = ConfigFactory.parseFile(configFileName.toFile());
+    readIfModified();
   }
 
   @Override
   public Config getSecrets(String secretId) {
-    if (!rootSecrets.hasPath(secretId)) {
+    Config secrets = readIfModified();
+    if (!secrets.hasPath(secretId)) {
       throw new IllegalArgumentException(
           "Missing Secret with ID=" + secretId + " in configuration file " + configFileName);
     }
-    return rootSecrets.getConfig(secretId);
+    return secrets.getConfig(secretId);
+  }
+
+  private synchronized Config readIfModified() {
+    long modified = configFileName.toFile().lastModified();
+    if (rootSecrets == null || modified != lastModified) {
+      rootSecrets = ConfigFactory.parseFile(configFileName.toFile());
+      lastModified = modified;
+    }
+    return rootSecrets;
   }
 }
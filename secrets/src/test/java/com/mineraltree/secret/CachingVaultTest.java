@@ -0,0 +1,101 @@
+package com.mineraltree.secret;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.mineraltree.secret.provider.FileVault;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CachingVaultTest {
+
+  // Refreshes are run by the test rather than on a schedule
+  private final ScheduledExecutorService refresher = mock(ScheduledExecutorService.class);
+  private File secretsFile;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    secretsFile = File.createTempFile("secrets", ".conf");
+    writeKey("first");
+  }
+
+  @AfterEach
+  void deleteFile() {
+    secretsFile.delete();
+  }
+
+  @Test
+  void testRotatedSecretPickedUpOnRefresh() throws IOException {
+    CachingVault vault =
+        new CachingVault(new FileVault(secretsFile.getPath()), Duration.ofMinutes(1), refresher);
+    Config first = vault.getSecrets("keys");
+    assertEquals("first", first.getString("fixer.access-key"));
+    assertSame(first, vault.getSecrets("keys"));
+
+    vault.refresh("keys");
+    assertSame(first, vault.getSecrets("keys"));
+
+    writeKey("second");
+    // Make sure the modification time differs on file systems with coarse timestamps
+    secretsFile.setLastModified(secretsFile.lastModified() + 2000);
+    vault.refresh("keys");
+    assertEquals("second", vault.getSecrets("keys").getString("fixer.access-key"));
+  }
+
+  @Test
+  void testFailedRefreshKeepsSecrets() {
+    AtomicInteger reads = new AtomicInteger();
+    SecretVault flaky =
+        id -> {
+          if (reads.incrementAndGet() > 1) {
+            throw new IllegalStateException("Vault unavailable");
+          }
+          return new FileVault(secretsFile.getPath()).getSecrets(id);
+        };
+    CachingVault vault = new CachingVault(flaky, Duration.ofMinutes(1), refresher);
+    vault.getSecrets("keys");
+
+    vault.refresh("keys");
+    assertEquals("first", vault.getSecrets("keys").getString("fixer.access-key"));
+    assertEquals(2, reads.get());
+  }
+
+  @Test
+  void testCloseStopsRefreshes() {
+    SecretVault fixed = id -> ConfigFactory.parseString("fixer.access-key = first");
+    CachingVault vault = new CachingVault(fixed, Duration.ofMinutes(1), refresher);
+    vault.getSecrets("keys");
+    verify(refresher)
+        .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+
+    vault.close();
+    verify(refresher).shutdownNow();
+    when(refresher.isShutdown()).thenReturn(true);
+    assertEquals("first", vault.getSecrets("keys").getString("fixer.access-key"));
+    assertEquals("first", vault.getSecrets("other-keys").getString("fixer.access-key"));
+    verify(refresher)
+        .scheduleWithFixedDelay(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+  }
+
+  private void writeKey(String key) throws IOException {
+    Files.write(
+        secretsFile.toPath(),
+        ("keys { fixer.access-key = \"" + key + "\" }").getBytes(StandardCharsets.UTF_8));
+  }
+}
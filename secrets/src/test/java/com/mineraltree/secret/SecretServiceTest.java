@@ -14,7 +14,6 @@ import com.mineraltree.secret.provider.FileVault;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 import junit.framework.AssertionFailedError;
-import org.joor.Reflect;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -26,9 +25,9 @@ class SecretServiceTest {
   @BeforeEach
   void setUpTest() {
 
-    // Force the static 'vault' member to null so we can call initialize
+    // Close the vault of the last test case so we can call initialize
     // lotsa times (for each test case)
-    Reflect.on(SecretService.class).set("vault", null);
+    SecretService.reset();
 
     SecretService.environment = mockEnv;
     SecretService.externs = mockExterns;